@@ -84,6 +84,13 @@ public class Application implements Runnable, SystemListener {
         game.resume();
     }
 
+    /**
+     * @return the game that this application runs, once it has been started
+     */
+    protected Game getGame() {
+        return game;
+    }
+
     @Override
     public void handleError(final String errorMsg, final Throwable t) {
         game.handleError(Optional.fromNullable(errorMsg), t);
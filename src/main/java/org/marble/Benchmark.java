@@ -0,0 +1,248 @@
+package org.marble;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+
+import org.marble.engine.GraphicsEngine;
+import org.marble.level.LevelLoader;
+import org.marble.level.MetaLevel;
+import org.marble.level.StressLevelGenerator;
+
+/**
+ * Measures how the game scales with the size of a level. Levels of increasing
+ * size are generated by a {@link StressLevelGenerator} and played one after
+ * another, and the load time, heap usage, frame time and physics step time of
+ * each level are printed, along with how many static entities of the main
+ * view were culled in whole regions or drawn, on average.
+ * 
+ * <p>
+ * Frame times only include the work done by the game each frame, and not the
+ * time spent waiting for the display, so they aren't limited by vertical
+ * synchronization.
+ * 
+ * <p>
+ * Large levels are normally streamed, so that only the entities around the
+ * player are built and simulated. That would hide how the engines scale, so
+ * streaming is disabled unless the benchmark is asked to measure it. The
+ * number of active entities is printed for each level either way.
+ * 
+ * <p>
+ * Adaptive quality is turned off for the run, without changing the persisted
+ * setting, so that every level is measured at the same graphics quality. The
+ * quality reduction is printed for each level to show that it stayed at 0.
+ */
+public class Benchmark extends Application {
+    // The level sizes that are measured if none are specified
+    private static final ImmutableList<Integer> DEFAULT_ENTITY_COUNTS =
+            ImmutableList.of(100, 1000, 10000, 100000);
+
+    // How many frames are measured on each level
+    private static final int MEASURED_FRAMES = 300;
+
+    // The seed of the generated levels, so that runs are comparable
+    private static final long SEED = 0;
+
+    // The argument that makes the benchmark stream large levels
+    private static final String STREAMING_OPTION = "--streaming";
+
+    // How many frames are skipped after a level has been loaded, to let
+    // shaders be compiled and the ball come to rest
+    private static final int WARMUP_FRAMES = 60;
+
+    // The total number of static entities of the measured frames that were
+    // culled in whole regions
+    private long culledCount;
+
+    // The sizes of the levels that haven't been measured yet
+    private final Iterator<Integer> entityCounts;
+
+    // The size of the level that is being measured
+    private int entityCount;
+
+    // The number of frames since the level was loaded, or -1 while it is
+    // being loaded
+    private int frames = -1;
+
+    // The total time of the measured frames, in nanoseconds
+    private long frameTime;
+
+    // The level that is being measured, if any
+    private Optional<MetaLevel> level = Optional.absent();
+
+    // When loading the level was started, in nanoseconds
+    private long loadStart;
+
+    // How long loading the level took, in seconds
+    private float loadTime;
+
+    // The longest of the measured frames, in nanoseconds
+    private long maxFrameTime;
+
+    // The heap usage right after the level was loaded, in bytes
+    private long memoryUsed;
+
+    // The total time of the physics steps of the measured frames, in seconds
+    private float physicsTime;
+
+    // Whether large levels are streamed like they are in the game
+    private final boolean streaming;
+
+    // The total number of static entities of the measured frames that were
+    // drawn
+    private long visibleCount;
+
+    /**
+     * Creates a new benchmark.
+     * 
+     * @param entityCounts
+     *            The sizes of the levels to measure, in order.
+     * @param streaming
+     *            Whether large levels should be streamed, like they are in the
+     *            game, instead of being loaded in full.
+     */
+    public Benchmark(final List<Integer> entityCounts,
+            final boolean streaming) {
+        this.entityCounts = ImmutableList.copyOf(entityCounts).iterator();
+        this.streaming = streaming;
+    }
+
+    @Override
+    public void initialize() {
+        super.initialize();
+        getGame().setStreamingEnabled(streaming);
+        getGame().getAdaptiveQuality().setEnabled(false);
+        System.out.println(String.format(
+                "%10s %10s %10s %10s %12s %12s %14s %10s %10s %10s",
+                "entities", "active", "load (s)", "heap (MB)", "frame (ms)",
+                "max (ms)", "physics (ms)", "culled", "visible", "reduction"));
+    }
+
+    @Override
+    public void update() {
+        final long frameStart = System.nanoTime();
+        super.update();
+        final long elapsed = System.nanoTime() - frameStart;
+
+        final Game game = getGame();
+        if (!level.isPresent()) {
+            // Let the menu finish loading before loading anything else
+            if (game.getCurrentLevel().isPresent()) {
+                startNextLevel();
+            }
+            return;
+        }
+        if (game.getCurrentLevel().orNull() != level.get())
+            return;
+
+        if (frames < 0) {
+            loadTime = (System.nanoTime() - loadStart) / 1e9f;
+            System.gc();
+            final Runtime runtime = Runtime.getRuntime();
+            memoryUsed = runtime.totalMemory() - runtime.freeMemory();
+        } else if (frames >= WARMUP_FRAMES) {
+            frameTime += elapsed;
+            maxFrameTime = Math.max(maxFrameTime, elapsed);
+            physicsTime += game.getPhysicsEngine().getStepTime();
+            final GraphicsEngine graphics = game.getGraphicsEngine();
+            culledCount += graphics.getCulledCount(graphics.getViewPort());
+            visibleCount += graphics.getVisibleCount(graphics.getViewPort());
+        }
+        frames++;
+
+        if (frames == WARMUP_FRAMES + MEASURED_FRAMES) {
+            System.out.println(String.format(
+                    "%10d %10d %10.2f %10d %12.2f %12.2f %14.2f %10d %10d %10d",
+                    entityCount, game.getEntityManager()
+                            .getActiveEntityCount(), loadTime, memoryUsed
+                            / (1024 * 1024), frameTime / 1e6
+                            / MEASURED_FRAMES, maxFrameTime / 1e6,
+                    physicsTime * 1000 / MEASURED_FRAMES, culledCount
+                            / MEASURED_FRAMES, visibleCount / MEASURED_FRAMES,
+                    game.getAdaptiveQuality().getReduction().getValue()));
+            startNextLevel();
+        }
+    }
+
+    /**
+     * Generates and starts playing the next level to measure, or quits if
+     * all of them have been measured.
+     */
+    private void startNextLevel() {
+        final Game game = getGame();
+        if (!entityCounts.hasNext()) {
+            level = Optional.absent();
+            game.quit();
+            return;
+        }
+
+        entityCount = entityCounts.next();
+        final MetaLevel next;
+        try {
+            next = writeLevel(entityCount);
+        } catch (final IOException e) {
+            game.handleError(e);
+            game.quit();
+            return;
+        }
+
+        level = Optional.of(next);
+        frames = -1;
+        frameTime = 0;
+        maxFrameTime = 0;
+        physicsTime = 0;
+        culledCount = 0;
+        visibleCount = 0;
+        loadStart = System.nanoTime();
+        game.playLevel(next);
+    }
+
+    /**
+     * Runs the benchmark.
+     * 
+     * @param args
+     *            The sizes of the levels to measure; by default, levels of
+     *            100 up to 100,000 entities are measured. If
+     *            <code>--streaming</code> is given, large levels are
+     *            streamed like they are in the game.
+     */
+    public static void main(final String[] args) {
+        final ImmutableList.Builder<Integer> builder = ImmutableList.builder();
+        boolean streaming = false;
+        for (final String arg : args) {
+            if (arg.equals(STREAMING_OPTION)) {
+                streaming = true;
+            } else {
+                builder.add(Integer.valueOf(arg));
+            }
+        }
+        final ImmutableList<Integer> entityCounts = builder.build();
+        new Benchmark(entityCounts.isEmpty() ? DEFAULT_ENTITY_COUNTS
+                : entityCounts, streaming).run();
+    }
+
+    /**
+     * Writes a generated level to a temporary file, so that it is loaded like
+     * any other level.
+     */
+    private static MetaLevel writeLevel(final int entityCount)
+            throws IOException {
+        final File file =
+                File.createTempFile("stress-" + entityCount + "-", ".level");
+        file.deleteOnExit();
+        new File(file.getPath() + LevelLoader.COMPILED_SUFFIX).deleteOnExit();
+        Files.write(StressLevelGenerator.withEntityCount(entityCount, SEED)
+                .generateSource(), file, Charsets.UTF_8);
+        return new MetaLevel("Stress test (" + entityCount + " entities)",
+                file.toURI().toURL(), Optional.<URL> absent(),
+                UUID.randomUUID());
+    }
+}
@@ -2,9 +2,16 @@ package org.marble;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.List;
 import java.util.Properties;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -17,29 +24,40 @@ import com.jme3.input.KeyInput;
 import com.jme3.input.controls.ActionListener;
 import com.jme3.input.controls.KeyTrigger;
 import com.jme3.light.AmbientLight;
+import com.jme3.material.Material;
 import com.jme3.math.ColorRGBA;
 import com.jme3.math.FastMath;
 import com.jme3.math.Transform;
+import com.jme3.math.Vector3f;
 import com.jme3.niftygui.NiftyJmeDisplay;
 import com.jme3.post.FilterPostProcessor;
 import com.jme3.post.filters.BloomFilter;
+import com.jme3.renderer.Camera;
 import com.jme3.renderer.ViewPort;
+import com.jme3.scene.Geometry;
 import com.jme3.scene.LightNode;
+import com.jme3.scene.Node;
 import com.jme3.scene.Spatial;
+import com.jme3.scene.shape.Box;
 import com.jme3.system.JmeContext;
 import com.jme3.system.Timer;
 import com.jme3.texture.Texture;
 import com.jme3.util.SkyFactory;
 
+import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import de.lessvoid.nifty.Nifty;
 import de.lessvoid.nifty.screen.ScreenController;
 
+import org.apache.commons.lang3.tuple.Pair;
 import org.json.JSONException;
 
 import org.codehaus.jparsec.error.Location;
@@ -55,15 +73,28 @@ import org.marble.engine.InputEngine;
 import org.marble.engine.PhysicsEngine;
 import org.marble.entity.Entity;
 import org.marble.entity.EntityManager;
+import org.marble.frp.CompositeReactive;
 import org.marble.frp.FRPUtils;
+import org.marble.frp.Reactive;
 import org.marble.frp.ReactiveListener;
 import org.marble.frp.mutable.MutableReactive;
+import org.marble.graphics.AdaptiveQuality;
 import org.marble.graphics.AlignedChaseCamera;
+import org.marble.graphics.GpuParticleEmitter;
+import org.marble.graphics.WoodGrain;
 import org.marble.graphics.filter.DepthOfFieldFilter;
+import org.marble.graphics.filter.GeometryPrepass;
 import org.marble.graphics.filter.SSAOFilter;
 import org.marble.input.PlayerInput;
+import org.marble.level.CompiledLevel;
+import org.marble.level.LevelCache;
 import org.marble.level.LevelLoadException;
 import org.marble.level.LevelLoader;
+import org.marble.level.LevelPrefetcher;
+import org.marble.level.LevelStreamer;
+import org.marble.level.LevelWatcher;
+import org.marble.level.LoadProgress;
+import org.marble.level.LoadedLevel;
 import org.marble.level.MetaLevel;
 import org.marble.level.MetaLevelPack;
 import org.marble.level.StatisticalMetaLevel;
@@ -74,6 +105,7 @@ import org.marble.ui.GameScreen;
 import org.marble.ui.HighscoreScreen;
 import org.marble.ui.LevelPackScreen;
 import org.marble.ui.LevelScreen;
+import org.marble.ui.LoadingScreen;
 import org.marble.ui.LossScreen;
 import org.marble.ui.PauseScreen;
 import org.marble.ui.SettingsScreen;
@@ -91,8 +123,29 @@ public class Game {
 
     public static final float LOST_POINTS_PER_SEC = 5;
 
+    // The number of rings sampled by the depth of field filter
+    private static final int DOF_RINGS = 3;
+
+    // How often the file of the current level is checked for changes when
+    // hot reloading, in seconds
+    private static final float HOT_RELOAD_INTERVAL = 1;
+
+    // How many steps the graphics quality may be automatically reduced
+    private static final int MAX_QUALITY_REDUCTION = 4;
+
+    // How much free heap space is required to prefetch a level
+    private static final long PREFETCH_HEADROOM = 128L * 1024 * 1024;
+
+    // Where the player ball starts on each level
+    private static final Vector3f START_POSITION = new Vector3f(0, 0, 2);
+
+    // How many entities a level must have to be streamed
+    private static final int STREAMING_THRESHOLD = 1000;
+
     private static Logger log = Logger.getLogger(Game.class.getName());
 
+    // Reduces graphics quality when frames take too long
+    private final AdaptiveQuality adaptiveQuality;
     // The global ambient light
     private Spatial ambientLight;
     // The platform-specific asset manager
@@ -123,14 +176,52 @@ public class Game {
     // The manager of game entities
     private final EntityManager entityManager;
 
+    // How large (2^n) generated environment textures should be
+    private final Reactive<Integer> environmentTextureSize;
+
+    // How many seconds the last update took, without the frame rate limiter
+    private float frameWorkTime = 0;
+
     // Handles rendering.
     private final GraphicsEngine graphicsEngine;
 
+    // The time until the file of the current level is checked for changes
+    // again
+    private float hotReloadCountdown = HOT_RELOAD_INTERVAL;
+
     // Handles keyboard input.
     private final InputEngine inputEngine;
 
+    // Geometry generated by the entities of previously loaded levels
+    private final LevelCache levelCache = new LevelCache(
+            LevelCache.DEFAULT_DIRECTORY);
+
+    // Runs level loads in the background, one at a time
+    private final ExecutorService levelLoadExecutor = Executors
+            .newSingleThreadExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("level-loader").setDaemon(true).build());
+
     // Entities that are present in our world.
-    private final LevelLoader levelLoader = new LevelLoader();
+    private final LevelLoader levelLoader = new LevelLoader(
+            LevelCache.DEFAULT_DIRECTORY);
+
+    // Loads the levels around the current one ahead of time
+    private final LevelPrefetcher levelPrefetcher;
+
+    // Activates the parts of the current level that are close to the player,
+    // if the level is streamed
+    private Optional<LevelStreamer> levelStreamer = Optional.absent();
+
+    // Watches the file of the current level for changes, if hot reloading is
+    // enabled
+    private Optional<LevelWatcher> levelWatcher = Optional.absent();
+
+    // The screen that shows the progress of level loads
+    private LoadingScreen loadingScreen;
+
+    // The progress of the level that is being loaded in the background, if
+    // any
+    private Optional<LoadProgress> loadProgress = Optional.absent();
 
     // The HUD GUI controller
     private Nifty nifty;
@@ -138,15 +229,29 @@ public class Game {
     // Handles physics simulations.
     private final PhysicsEngine physicsEngine;
 
+    // Whether the current level is being reloaded because its file changed
+    private boolean reloadingLevel = false;
+
     // The player controlled ball, if any
     private Optional<PlayerBall> playerBall = Optional.absent();
 
     // Stores settings that are immediately persisted when changed
     private final Settings settings;
 
+    // Stand-ins for entities that aren't part of a level, but whose shaders
+    // should be compiled when a level is loaded
+    private final Node shaderPrototypes = new Node("shader prototypes");
+
     // The graphical skybox
     private Spatial skybox;
 
+    // Whether large levels are streamed around the player; read by the level
+    // loading thread
+    private volatile boolean streamingEnabled = true;
+
+    // Work that other threads want to be done on the game thread
+    private final ConcurrentLinkedQueue<Runnable> tasks =
+            new ConcurrentLinkedQueue<Runnable>();
     /**
      * Creates a new game instance.
      */
@@ -165,12 +270,41 @@ public class Game {
                 ImmutableSet.<Engine<?>> of(graphicsEngine, inputEngine,
                         physicsEngine, audioEngine);
         entityManager = new EntityManager(this);
+        levelPrefetcher =
+                new LevelPrefetcher(levelLoadExecutor,
+                        new LevelPrefetcher.Loader() {
+                            @Override
+                            public LoadedLevel load(final MetaLevel level)
+                                    throws Exception {
+                                return loadInBackground(level,
+                                        new LoadProgress());
+                            }
+                        }, PREFETCH_HEADROOM);
+
+        adaptiveQuality =
+                new AdaptiveQuality(settings.framerate.getValue(),
+                        MAX_QUALITY_REDUCTION);
+        environmentTextureSize =
+                FRPUtils.map(new CompositeReactive<Quality, Integer>(
+                        settings.environmentQuality, adaptiveQuality
+                                .getReduction()),
+                        new Function<Pair<Quality, Integer>, Integer>() {
+                            @Override
+                            public Integer apply(
+                                    final Pair<Quality, Integer> input) {
+                                // The lowest texture setting makes textures
+                                // be 16x16; the size is doubled for each step
+                                return Math.max(4, input.getLeft().getIndex()
+                                        + 4 - input.getRight());
+                            }
+                        });
     }
 
     /**
      * Performs deferred destruction of all subsystems.
      */
     public void destroy() {
+        levelLoadExecutor.shutdownNow();
         entityManager.removeAllEntities();
 
         for (final Engine<?> engine : engines) {
@@ -178,6 +312,24 @@ public class Game {
         }
     }
 
+    /**
+     * Runs a task on the game thread at the start of the next update. This may
+     * be called from any thread.
+     * 
+     * @param task
+     *            The task to run.
+     */
+    public void enqueue(final Runnable task) {
+        tasks.add(task);
+    }
+
+    /**
+     * The controller that reduces graphics quality when frames take too long.
+     */
+    public AdaptiveQuality getAdaptiveQuality() {
+        return adaptiveQuality;
+    }
+
     /**
      * The current game asset manager.
      */
@@ -227,6 +379,14 @@ public class Game {
         return entityManager;
     }
 
+    /**
+     * How large (2^n) generated environment textures should be, taking both
+     * the settings and the adaptive quality reduction into account.
+     */
+    public Reactive<Integer> getEnvironmentTextureSize() {
+        return environmentTextureSize;
+    }
+
     /**
      * The graphics engine that is in use.
      */
@@ -241,6 +401,13 @@ public class Game {
         return inputEngine;
     }
 
+    /**
+     * The cache of generated geometry for the level that is being loaded.
+     */
+    public LevelCache getLevelCache() {
+        return levelCache;
+    }
+
     /**
      * The physics engine that is in use.
      */
@@ -259,15 +426,24 @@ public class Game {
      * Go to the menu screen.
      */
     public void gotoMenu() {
+        if (currentSession.isPresent()) {
+            setPause(GameSession.PauseState.EnforcedPause);
+        }
+
         load(new MetaLevel("Menu level",
                 Game.class.getResource("level/menu.level"),
                 Optional.<URL> absent(),
-                UUID.fromString("a6f6b07a-5a95-4328-a73f-c848f4c52788")));
-        trackSpatial(getGraphicsEngine().getRootNode());
-        playerBall = Optional.absent();
-        currentSession = Optional.absent();
-        setPause(GameSession.PauseState.Running);
-        gotoScreen(UIScreen.Start);
+                UUID.fromString("a6f6b07a-5a95-4328-a73f-c848f4c52788")),
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        trackSpatial(getGraphicsEngine().getRootNode());
+                        playerBall = Optional.absent();
+                        currentSession = Optional.absent();
+                        setPause(GameSession.PauseState.Running);
+                        gotoScreen(UIScreen.Start);
+                    }
+                });
     }
 
     /**
@@ -347,8 +523,11 @@ public class Game {
         setupGUI();
         setupControls();
         setupSkybox();
+        setupEnvironment();
         setupLighting();
+        setupShaderPrototypes();
         setupCamera();
+        setupAdaptiveQuality();
         setupFilters();
 
         loadLevelPack(Game.class.getResource("level/core.pack"));
@@ -384,6 +563,7 @@ public class Game {
         try {
             currentLevelPackURL = levelPack;
             currentLevelPack = levelLoader.loadMetaLevelPack(levelPack);
+            levelPrefetcher.clear();
             return;
         } catch (final IOException e) {
             handleError(e);
@@ -402,7 +582,16 @@ public class Game {
             final int nextLevelIndex =
                     currentLevelPack.getLevels().indexOf(currentLevel.get()) + 1;
             if (nextLevelIndex < currentLevelPack.getLevels().size()) {
-                playLevel(currentLevelPack.getLevels().get(nextLevelIndex));
+                final MetaLevel nextLevel;
+                try {
+                    nextLevel =
+                            currentLevelPack.getLevels().get(nextLevelIndex);
+                } catch (final IllegalStateException e) {
+                    // The level index of the pack is malformed
+                    handleError(e);
+                    return;
+                }
+                playLevel(nextLevel);
             } else
                 throw new RuntimeException("There is no next level");
         }
@@ -417,15 +606,27 @@ public class Game {
     }
 
     /**
-     * Starts a game on the specified level.
+     * Starts a game on the specified level. The level is loaded in the
+     * background while the loading screen is shown, and the game starts once
+     * it has been loaded. The levels around it in the current level pack are
+     * prefetched while it is being played.
      * 
      * @param level
      *            The level to load
      */
     public void playLevel(final MetaLevel level) {
-        load(level);
-        start();
-        gotoScreen(UIScreen.Game);
+        if (currentSession.isPresent()) {
+            setPause(GameSession.PauseState.EnforcedPause);
+        }
+
+        load(level, new Runnable() {
+            @Override
+            public void run() {
+                start();
+                gotoScreen(UIScreen.Game);
+                prefetchAround(level);
+            }
+        });
     }
 
     /**
@@ -474,6 +675,24 @@ public class Game {
         context.restart();
     }
 
+    /**
+     * Plays the current level again from the start. Unless the level has
+     * changed since it was loaded, its entities are reset to how they were
+     * when it was loaded, instead of loading it again.
+     */
+    public void restartLevel() {
+        if (!currentLevel.isPresent())
+            throw new RuntimeException("The current level has disappeared");
+        if (!entityManager.hasSnapshot() || loadProgress.isPresent()) {
+            playLevel(currentLevel.get());
+            return;
+        }
+
+        entityManager.restoreSnapshot();
+        start();
+        gotoScreen(UIScreen.Game);
+    }
+
     /**
      * Resumes the game from having been suspended. Do not confuse with
      * unpausing the game.
@@ -508,6 +727,15 @@ public class Game {
         }
     }
 
+    /**
+     * Sets whether levels with many entities are streamed around the player
+     * ball, or loaded in full like smaller levels. Streaming is enabled by
+     * default. Only affects levels that are loaded afterwards.
+     */
+    public void setStreamingEnabled(final boolean streamingEnabled) {
+        this.streamingEnabled = streamingEnabled;
+    }
+
     /**
      * Shows the highscore screen for the specified level.
      */
@@ -563,6 +791,37 @@ public class Game {
      *            The timer specifying how much time that has elapsed.
      */
     public void update(final Timer timer) {
+        final long workStart = System.nanoTime();
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+        if (loadProgress.isPresent()) {
+            loadingScreen.showProgress(loadProgress.get());
+        }
+        if (levelStreamer.isPresent() && playerBall.isPresent()) {
+            // Activate the surroundings before the ball is simulated in them
+            try {
+                levelStreamer.get().update(
+                        playerBall.get().getSpatial().getWorldTranslation(),
+                        entityManager);
+            } catch (final Exception e) {
+                handleError(e);
+            }
+        }
+
+        if (levelWatcher.isPresent() && !reloadingLevel
+                && !loadProgress.isPresent()) {
+            hotReloadCountdown -= timer.getTimePerFrame();
+            if (hotReloadCountdown <= 0) {
+                hotReloadCountdown = HOT_RELOAD_INTERVAL;
+                if (levelWatcher.get().poll()) {
+                    reloadLevel(levelWatcher.get());
+                }
+            }
+        }
+
+        adaptiveQuality.update(timer.getTimePerFrame(), frameWorkTime);
         chaseCamera.update(timer.getTimePerFrame());
         for (final Engine<?> engine : engines) {
             engine.update(timer.getTimePerFrame());
@@ -578,6 +837,7 @@ public class Game {
 
             entityManager.update(timer.getTimePerFrame());
         }
+        frameWorkTime = (System.nanoTime() - workStart) / 1e9f;
     }
 
     /**
@@ -612,6 +872,21 @@ public class Game {
         gotoScreen(UIScreen.Win);
     }
 
+    /**
+     * Builds the entities of a level on the calling thread, with the geometry
+     * that was cached for the level.
+     */
+    private void buildLevelEntities(final MetaLevel level,
+            final Set<Entity> entities, final LoadProgress progress)
+            throws Exception {
+        levelCache.open(level.getUri());
+        try {
+            entityManager.buildEntities(entities, Optional.of(progress));
+        } finally {
+            levelCache.close();
+        }
+    }
+
     /**
      * Describes various alternatives that a parser is choosing between.
      * 
@@ -678,33 +953,199 @@ public class Game {
     }
 
     /**
-     * Loads the specified set of entities and starts the simulation of a level.
+     * Reports that a level could not be loaded in the background, unless
+     * another level has been loaded since.
+     */
+    private void failLoading(final LoadProgress progress,
+            final Optional<String> errorMessage, final Throwable t) {
+        enqueue(new Runnable() {
+            @Override
+            public void run() {
+                if (loadProgress.orNull() == progress) {
+                    loadProgress = Optional.absent();
+                    handleError(errorMessage, t);
+                }
+            }
+        });
+    }
+
+    /**
+     * Reports that the current level could not be reloaded after its file
+     * changed. The level is reloaded again once the file changes again.
+     */
+    private void failReloading(final LevelWatcher watcher,
+            final Optional<String> errorMessage, final Throwable t) {
+        enqueue(new Runnable() {
+            @Override
+            public void run() {
+                if (levelWatcher.orNull() == watcher) {
+                    reloadingLevel = false;
+                    handleError(errorMessage, t);
+                }
+            }
+        });
+    }
+
+    /**
+     * Swaps in a level that has been loaded in the background, unless another
+     * level has been loaded since. Runs on the game thread.
+     */
+    private void finishLoading(final MetaLevel level,
+            final LoadProgress progress, final LoadedLevel loaded,
+            final Runnable onLoaded) {
+        if (loadProgress.orNull() != progress)
+            return;
+        progress.beginStarting();
+        loadingScreen.showProgress(progress);
+
+        entityManager.replaceEntities(loaded.getEntities());
+        levelStreamer = loaded.getStreamer();
+        levelWatcher = loaded.getWatcher();
+        reloadingLevel = false;
+        if (!levelStreamer.isPresent()) {
+            // Restarting a streamed level has to load it again anyway
+            entityManager.captureSnapshot();
+        }
+        graphicsEngine.warmUpShaders(shaderPrototypes);
+        currentLevel = Optional.of(level);
+        loadProgress = Optional.absent();
+
+        onLoaded.run();
+    }
+
+    /**
+     * Gets the result of prefetching a level, waiting for it if necessary.
+     * 
+     * @return The prefetched level, or nothing if the prefetch failed or was
+     *         dropped.
+     */
+    private Optional<LoadedLevel> getPrefetched(
+            final Future<Optional<LoadedLevel>> prefetched) {
+        try {
+            return prefetched.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (final CancellationException e) {
+            // Fall through
+        } catch (final ExecutionException e) {
+            // Loading the level again reports the error properly
+            log.info("Prefetching a level failed: "
+                    + e.getCause().getMessage());
+        }
+        return Optional.absent();
+    }
+
+    /**
+     * Loads a level in the background while the loading screen is shown, and
+     * swaps it in for the current level once it has been loaded. If the level
+     * has already been prefetched, it is swapped in right away.
      * 
      * @param level
-     *            The entities to start the simulation of.
+     *            The level to load.
+     * @param onLoaded
+     *            What to do on the game thread once the level has been swapped
+     *            in.
      */
-    private void load(final ImmutableSet<Entity> level) {
-        entityManager.removeAllEntities();
-        entityManager.addEntities(level);
+    private void load(final MetaLevel level, final Runnable onLoaded) {
+        final LoadProgress progress = new LoadProgress();
+        loadProgress = Optional.of(progress);
+
+        final Optional<Future<Optional<LoadedLevel>>> prefetched =
+                levelPrefetcher.take(level);
+        if (prefetched.isPresent() && prefetched.get().isDone()) {
+            final Optional<LoadedLevel> loaded =
+                    getPrefetched(prefetched.get());
+            if (loaded.isPresent()) {
+                finishLoading(level, progress, loaded.get(), onLoaded);
+                return;
+            }
+        }
+
+        gotoScreen(UIScreen.Loading);
+        levelLoadExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    // The prefetch ran before this on the same thread, so it
+                    // has finished by now
+                    Optional<LoadedLevel> fetched = Optional.absent();
+                    if (prefetched.isPresent()) {
+                        fetched = getPrefetched(prefetched.get());
+                    }
+                    final LoadedLevel loaded =
+                            fetched.isPresent() ? fetched.get()
+                                    : loadInBackground(level, progress);
+                    enqueue(new Runnable() {
+                        @Override
+                        public void run() {
+                            finishLoading(level, progress, loaded, onLoaded);
+                        }
+                    });
+                } catch (final ParserException e) {
+                    failLoading(progress, Optional.of(describeParseError(
+                            e.getErrorDetails(), e.getLocation())), e);
+                } catch (final Exception e) {
+                    failLoading(progress, Optional.<String> absent(), e);
+                }
+            }
+        });
     }
 
     /**
-     * Only loads and starts the specified level; doesn't update the GUI.
+     * Reads a level and builds its entities. Runs on the level loading
+     * thread; the entities are not initialized. Levels with many entities are
+     * streamed, so only the entities around the start position are built.
      * 
      * @param level
-     *            The level to load
+     *            The level to load.
+     * @param progress
+     *            Where to report how far the level has been loaded.
+     * @return The loaded level.
      */
-    private void load(final MetaLevel level) {
-        try {
-            load(levelLoader.loadLevel(level.getUri()));
-            currentLevel = Optional.of(level);
-        } catch (final ParserException e) {
-            handleError(
-                    describeParseError(e.getErrorDetails(), e.getLocation()), e);
-        } catch (final LevelLoadException e) {
-            handleError(e);
-        } catch (final Exception e) {
-            handleError(e);
+    private LoadedLevel loadInBackground(final MetaLevel level,
+            final LoadProgress progress) throws Exception {
+        final Set<Entity> constructed = Sets.newLinkedHashSet();
+        CompiledLevel compiled =
+                levelLoader.loadCompiledLevel(level.getUri(), constructed);
+        if (!streamingEnabled
+                || compiled.getRecords().size() < STREAMING_THRESHOLD) {
+            ImmutableSet<Entity> entities = ImmutableSet.copyOf(constructed);
+            if (constructed.isEmpty()) {
+                try {
+                    entities = levelLoader.runCompiledLevel(compiled);
+                } catch (final LevelLoadException e) {
+                    // The entity classes have changed; recompile the level
+                    log.info("Recompiling " + level.getUri() + ": "
+                            + e.getMessage());
+                    entities = levelLoader.loadLevel(level.getUri());
+                    compiled = levelLoader.loadCompiledLevel(level.getUri());
+                }
+            }
+            buildLevelEntities(level, entities, progress);
+            Optional<LevelWatcher> watcher = Optional.absent();
+            if (settings.hotReload.getValue()) {
+                // Up to date, since the level has just been loaded
+                watcher =
+                        LevelWatcher.watch(level.getUri(), compiled,
+                                entities.asList());
+            }
+            return new LoadedLevel(entities,
+                    Optional.<LevelStreamer> absent(), watcher);
+        } else {
+            final LevelStreamer streamer =
+                    new LevelStreamer(compiled, new LevelStreamer.Builder() {
+                        @Override
+                        public ImmutableSet<Entity> build(
+                                final CompiledLevel cell) throws Exception {
+                            final ImmutableSet<Entity> entities =
+                                    levelLoader.runCompiledLevel(cell);
+                            buildLevelEntities(level, entities, progress);
+                            return entities;
+                        }
+                    }, levelLoadExecutor);
+            streamer.prepare(START_POSITION);
+            return new LoadedLevel(streamer.getActiveEntities(),
+                    Optional.of(streamer));
         }
     }
 
@@ -727,6 +1168,76 @@ public class Game {
         }
     }
 
+    /**
+     * Reloads the current level after its file has changed, exchanging only
+     * the entities that changed. The entities are constructed and built in
+     * the background.
+     * 
+     * @param watcher
+     *            The watcher of the current level.
+     */
+    private void reloadLevel(final LevelWatcher watcher) {
+        reloadingLevel = true;
+        levelLoadExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final LevelWatcher.Reload reload =
+                            watcher.reload(levelLoader);
+                    levelCache.open(watcher.getURL());
+                    try {
+                        entityManager.buildEntities(reload.getAdded(),
+                                Optional.<LoadProgress> absent());
+                    } finally {
+                        levelCache.close();
+                    }
+                    enqueue(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (levelWatcher.orNull() != watcher)
+                                return;
+                            // The snapshot is of the old version of the level
+                            entityManager.discardSnapshot();
+                            entityManager.swapEntities(reload.getRemoved(),
+                                    reload.getAdded());
+                            levelWatcher = Optional.of(reload.getWatcher());
+                            reloadingLevel = false;
+                            log.info("Reloaded " + watcher.getURL() + ": "
+                                    + reload.getRemoved().size()
+                                    + " entities removed, "
+                                    + reload.getAdded().size() + " added");
+                        }
+                    });
+                } catch (final ParserException e) {
+                    failReloading(watcher, Optional.of(describeParseError(
+                            e.getErrorDetails(), e.getLocation())), e);
+                } catch (final Exception e) {
+                    failReloading(watcher, Optional.<String> absent(), e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Initialize the automatic quality reduction.
+     */
+    private void setupAdaptiveQuality() {
+        FRPUtils.addAndCallReactiveListener(settings.adaptiveQuality,
+                new ReactiveListener<Boolean>() {
+                    @Override
+                    public void valueChanged(final Boolean value) {
+                        adaptiveQuality.setEnabled(value);
+                    }
+                });
+        FRPUtils.addAndCallReactiveListener(settings.framerate,
+                new ReactiveListener<Integer>() {
+                    @Override
+                    public void valueChanged(final Integer value) {
+                        adaptiveQuality.setTargetFrameRate(value);
+                    }
+                });
+    }
+
     /**
      * Initialize the smoothing camera system.
      */
@@ -768,15 +1279,29 @@ public class Game {
         }, PlayerInput.Pause.getName());
     }
 
+    /**
+     * Initialize reactive environment map settings.
+     */
+    private void setupEnvironment() {
+        FRPUtils.addAndCallReactiveListener(settings.environmentDistance,
+                new ReactiveListener<Integer>() {
+                    @Override
+                    public void valueChanged(final Integer value) {
+                        graphicsEngine.setEnvironmentFarPlane(value);
+                    }
+                });
+    }
+
     /**
      * Initialize reactive post-processing filters.
      */
     private void setupFilters() {
         final ViewPort viewPort = getGraphicsEngine().getViewPort();
+        final GeometryPrepass prepass = new GeometryPrepass();
         final FilterPostProcessor filters =
                 new FilterPostProcessor(assetManager);
+        final SSAOFilter ssaoFilter = new SSAOFilter(prepass);
         {
-            final SSAOFilter ssaoFilter = new SSAOFilter();
             ssaoFilter.setIntensity(6.0f);
             FRPUtils.addAndCallReactiveListener(settings.ssao,
                     new ReactiveListener<Boolean>() {
@@ -785,11 +1310,18 @@ public class Game {
                             ssaoFilter.setEnabled(value);
                         }
                     });
+            FRPUtils.addAndCallReactiveListener(settings.ssaoTemporal,
+                    new ReactiveListener<Boolean>() {
+                        @Override
+                        public void valueChanged(final Boolean value) {
+                            ssaoFilter.setTemporal(value);
+                        }
+                    });
             filters.addFilter(ssaoFilter);
         }
+        final DepthOfFieldFilter advDofFilter = new DepthOfFieldFilter();
         {
-            final DepthOfFieldFilter advDofFilter = new DepthOfFieldFilter();
-            advDofFilter.setRings(3);
+            advDofFilter.setRings(DOF_RINGS);
             advDofFilter.setGain(8);
             advDofFilter.setFocalDepth(3.0f);
             advDofFilter.setDepthBlur(true);
@@ -802,11 +1334,19 @@ public class Game {
                             advDofFilter.setEnabled(value);
                         }
                     });
-            FRPUtils.addAndCallReactiveListener(settings.dofQuality,
-                    new ReactiveListener<Quality>() {
+            FRPUtils.addAndCallReactiveListener(
+                    new CompositeReactive<Quality, Integer>(
+                            settings.dofQuality, adaptiveQuality
+                                    .getReduction()),
+                    new ReactiveListener<Pair<Quality, Integer>>() {
                         @Override
-                        public void valueChanged(final Quality value) {
-                            advDofFilter.setSamples(value.getIndex() + 1);
+                        public void valueChanged(
+                                final Pair<Quality, Integer> value) {
+                            final int reduction = value.getRight();
+                            advDofFilter.setSamples(Math.max(1, value
+                                    .getLeft().getIndex() + 1 - reduction));
+                            advDofFilter.setRings(Math.max(1, DOF_RINGS
+                                    - reduction / 2));
                         }
                     });
 
@@ -836,8 +1376,8 @@ public class Game {
 
             filters.addFilter(advDofFilter);
         }
+        final BloomFilter bloomFilter = new BloomFilter();
         {
-            final BloomFilter bloomFilter = new BloomFilter();
             FRPUtils.addAndCallReactiveListener(settings.bloom,
                     new ReactiveListener<Boolean>() {
                         @Override
@@ -846,13 +1386,43 @@ public class Game {
                         }
                     });
 
-            bloomFilter.setDownSamplingFactor(2);
             bloomFilter.setBlurScale(1.37f);
             bloomFilter.setExposurePower(2.0f);
             bloomFilter.setBloomIntensity(0.5f);
             filters.addFilter(bloomFilter);
         }
+        // The prepass must be rendered before the filters that read from it
+        viewPort.addProcessor(prepass);
         viewPort.addProcessor(filters);
+
+        FRPUtils.addAndCallReactiveListener(
+                new CompositeReactive<Integer, Boolean>(adaptiveQuality
+                        .getReduction(), settings.dofFullResolution),
+                new ReactiveListener<Pair<Integer, Boolean>>() {
+                    @Override
+                    public void valueChanged(
+                            final Pair<Integer, Boolean> value) {
+                        final int reduction = value.getLeft();
+                        ssaoFilter.setDownsampling(reduction >= 3 ? 4
+                                : reduction >= 1 ? 2 : 1);
+                        bloomFilter.setDownSamplingFactor(reduction >= 2 ? 4
+                                : 2);
+                        if (value.getRight()) {
+                            advDofFilter.setDownsampling(1);
+                        } else {
+                            advDofFilter.setDownsampling(reduction >= 2 ? 4
+                                    : 2);
+                        }
+
+                        // Reinitialize the filters so that the new buffer
+                        // sizes take effect
+                        if (filters.isInitialized()) {
+                            final Camera camera = viewPort.getCamera();
+                            filters.reshape(viewPort, camera.getWidth(),
+                                    camera.getHeight());
+                        }
+                    }
+                });
     }
 
     /**
@@ -889,6 +1459,8 @@ public class Game {
         screenControllerBuilder.put(UIScreen.Levels, new LevelScreen(this));
         screenControllerBuilder.put(UIScreen.LevelPacks, new LevelPackScreen(
                 this));
+        loadingScreen = new LoadingScreen(this);
+        screenControllerBuilder.put(UIScreen.Loading, loadingScreen);
         screenControllerBuilder.put(UIScreen.Pause, new PauseScreen(this));
         screenControllerBuilder.put(UIScreen.Win, new WinScreen(this));
         screenControllerBuilder.put(UIScreen.Loss, new LossScreen(this));
@@ -915,6 +1487,84 @@ public class Game {
         getGraphicsEngine().getRootNode().addLight(ambient);
     }
 
+    /**
+     * Creates stand-ins for the materials of the entities that are spawned
+     * while a level is running, like player balls and explosions.
+     */
+    private void setupShaderPrototypes() {
+        final Box mesh = new Box(0.5f, 0.5f, 0.5f);
+        for (final BallKind kind : BallKind.values()) {
+            final Geometry geometry = new Geometry(kind.name(), mesh);
+            geometry.setMaterial(assetManager.loadMaterial(kind
+                    .getMaterialPath()));
+            shaderPrototypes.attachChild(geometry);
+        }
+
+        // Baking the wood grain changes the defines of the wood material, so
+        // its prototype has to follow the setting
+        final Geometry wood = (Geometry) shaderPrototypes.getChild(BallKind.Wood
+                .name());
+        FRPUtils.addAndCallReactiveListener(settings.bakedTextures,
+                new ReactiveListener<Boolean>() {
+                    @Override
+                    public void valueChanged(final Boolean value) {
+                        final Material material =
+                                assetManager.loadMaterial(BallKind.Wood
+                                        .getMaterialPath());
+                        if (value) {
+                            // Only the define matters, so the grain can be
+                            // tiny
+                            WoodGrain.bake(material, 1, 1);
+                        }
+                        wood.setMaterial(material);
+                    }
+                });
+
+        final Texture flare = assetManager.loadTexture("Textures/flare.png");
+        shaderPrototypes.attachChild(new GpuParticleEmitter("particles",
+                assetManager, flare, 1));
+        final GpuParticleEmitter burst =
+                new GpuParticleEmitter("burst", assetManager, flare, 1);
+        burst.emitAllParticles();
+        shaderPrototypes.attachChild(burst);
+    }
+
+    /**
+     * Starts prefetching the levels before and after a level in the current
+     * level pack, the next level first.
+     */
+    private void prefetchAround(final MetaLevel level) {
+        if (levelStreamer.isPresent()) {
+            // Streaming needs the loading thread and memory for itself
+            levelPrefetcher.clear();
+            return;
+        }
+
+        final List<MetaLevel> levels = currentLevelPack.getLevels();
+        final int index = levels.indexOf(level);
+        final ImmutableList.Builder<MetaLevel> neighbours =
+                ImmutableList.builder();
+        // Neighbours with malformed index entries are skipped; they are
+        // reported if the player tries to play them
+        if (index >= 0 && index + 1 < levels.size()) {
+            try {
+                neighbours.add(levels.get(index + 1));
+            } catch (final IllegalStateException e) {
+                log.warning("Not prefetching level " + (index + 1) + ": "
+                        + e.getMessage());
+            }
+        }
+        if (index > 0) {
+            try {
+                neighbours.add(levels.get(index - 1));
+            } catch (final IllegalStateException e) {
+                log.warning("Not prefetching level " + (index - 1) + ": "
+                        + e.getMessage());
+            }
+        }
+        levelPrefetcher.prefetch(neighbours.build());
+    }
+
     /**
      * Initialize the graphical skybox.
      */
@@ -933,7 +1583,7 @@ public class Game {
      */
     private void start() {
         final Transform ballTransform = new Transform();
-        ballTransform.setTranslation(0, 0, 2);
+        ballTransform.setTranslation(START_POSITION);
 
         final PlayerBall ball = new PlayerBall(DEFAULT_BALL_KIND);
         ball.setTransform(ballTransform);
@@ -21,12 +21,10 @@ import org.marble.entity.AbstractEntity;
 import org.marble.entity.graphical.Graphical;
 import org.marble.entity.physical.Collidable;
 import org.marble.entity.physical.Physical;
-import org.marble.frp.FRPUtils;
 import org.marble.frp.Reactive;
 import org.marble.graphics.EnvironmentNode;
 import org.marble.graphics.GeoSphere;
 import org.marble.util.Physics;
-import org.marble.util.QualityToInteger;
 
 /**
  * A physical ball that can have different materials and physical properties.
@@ -64,8 +62,11 @@ public class Ball extends AbstractEntity implements Graphical, Physical,
     // Handles rendering of the scene
     private RenderManager renderManager;
 
-    // Our scene's root node
-    private Spatial rootNode;
+    // The part of our scene that is visible in reflections
+    private Spatial reflectedNode;
+
+    // How far reflections reach
+    private float environmentFarPlane;
 
     // How large (2^n) we will let our generated textures be
     private Reactive<Integer> textureSizeMagnitude;
@@ -137,15 +138,13 @@ public class Ball extends AbstractEntity implements Graphical, Physical,
     @Override
     public void initialize(final Game game) throws Exception {
         super.initialize(game);
-        rootNode = game.getGraphicsEngine().getRootNode();
+        reflectedNode = game.getGraphicsEngine().getReflectedNode();
+        environmentFarPlane =
+                game.getGraphicsEngine().getEnvironmentFarPlane();
         renderManager = game.getGraphicsEngine().getRenderManager();
         assetManager = game.getAssetManager();
 
-        // The lowest texture setting makes textures be 16x16; the size is
-        // doubled for each step
-        textureSizeMagnitude =
-                FRPUtils.map(game.getSettings().environmentQuality,
-                        new QualityToInteger());
+        textureSizeMagnitude = game.getEnvironmentTextureSize();
 
         geometricalBall =
                 new GeoSphere(true, radius, 4, GeoSphere.TextureMode.Projected);
@@ -181,7 +180,8 @@ public class Ball extends AbstractEntity implements Graphical, Physical,
         if (this.kind != kind || refresh) {
             getEnvironment.wasCalled = false;
             graphicalBall.setMaterial(kind.createMaterial(assetManager,
-                    getEnvironment));
+                    getEnvironment, game.getSettings().bakedTextures
+                            .getValue()));
 
             if (!getEnvironment.wasCalled) {
                 disableEnvironment();
@@ -227,8 +227,9 @@ public class Ball extends AbstractEntity implements Graphical, Physical,
     private void enableEnvironment() {
         if (!environmentNode.isPresent()) {
             final EnvironmentNode node =
-                    new EnvironmentNode(rootNode, renderManager,
+                    new EnvironmentNode(reflectedNode, renderManager,
                             textureSizeMagnitude);
+            node.setFarPlane(environmentFarPlane);
             environmentNode = Optional.of(node);
             getSpatial().attachChild(node);
         }
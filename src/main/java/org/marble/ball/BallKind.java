@@ -10,6 +10,7 @@ import com.jme3.texture.TextureCubeMap;
 import org.marble.frp.FRPUtils;
 import org.marble.frp.ReactiveListener;
 import org.marble.graphics.EnvironmentNode;
+import org.marble.graphics.WoodGrain;
 import org.marble.util.Physics;
 
 /**
@@ -17,26 +18,26 @@ import org.marble.util.Physics;
  */
 public enum BallKind {
     /** A fabric ball: very light and flimsy */
-    Fabric(2, 2.0f, 0.8f) {
+    Fabric("Materials/Organic/Fabric.j3m", 2, 2.0f, 0.8f) {
 
         @Override
         public Material createMaterial(final AssetManager assetManager,
-                final Callable<EnvironmentNode> getEnvironment)
-                throws Exception {
-            return assetManager.loadMaterial("Materials/Organic/Fabric.j3m");
+                final Callable<EnvironmentNode> getEnvironment,
+                final boolean bakeTextures) throws Exception {
+            return assetManager.loadMaterial(getMaterialPath());
         }
 
     },
 
     /** An easily controlled ball that might break when moved too quickly */
-    Glass(6, 1.3f, 0.3f) {
+    Glass("Materials/Mineral/Glass.j3m", 6, 1.3f, 0.3f) {
 
         @Override
         public Material createMaterial(final AssetManager assetManager,
-                final Callable<EnvironmentNode> getEnvironment)
-                throws Exception {
+                final Callable<EnvironmentNode> getEnvironment,
+                final boolean bakeTextures) throws Exception {
             final Material material =
-                    assetManager.loadMaterial("Materials/Mineral/Glass.j3m");
+                    assetManager.loadMaterial(getMaterialPath());
             FRPUtils.addAndCallReactiveListener(getEnvironment.call()
                     .getEnvironment(), new ReactiveListener<TextureCubeMap>() {
 
@@ -53,14 +54,14 @@ public enum BallKind {
     /**
      * A ball that leaves a trail of mercury as it moves, slowly growing smaller
      */
-    Mercury(16, 0.25f, 0.1f) {
+    Mercury("Materials/Metal/Mercury.j3m", 16, 0.25f, 0.1f) {
 
         @Override
         public Material createMaterial(final AssetManager assetManager,
-                final Callable<EnvironmentNode> getEnvironment)
-                throws Exception {
+                final Callable<EnvironmentNode> getEnvironment,
+                final boolean bakeTextures) throws Exception {
             final Material material =
-                    assetManager.loadMaterial("Materials/Metal/Mercury.j3m");
+                    assetManager.loadMaterial(getMaterialPath());
             FRPUtils.addAndCallReactiveListener(getEnvironment.call()
                     .getEnvironment(), new ReactiveListener<TextureCubeMap>() {
 
@@ -75,26 +76,26 @@ public enum BallKind {
     },
 
     /** A stone ball: heavy and slow */
-    Stone(8, 0.5f, 0.2f) {
+    Stone("Materials/Mineral/Stone.j3m", 8, 0.5f, 0.2f) {
         @Override
         public Material createMaterial(final AssetManager assetManager,
-                final Callable<EnvironmentNode> getEnvironment)
-                throws Exception {
-            return assetManager.loadMaterial("Materials/Mineral/Stone.j3m");
+                final Callable<EnvironmentNode> getEnvironment,
+                final boolean bakeTextures) throws Exception {
+            return assetManager.loadMaterial(getMaterialPath());
         }
 
     },
 
     /** A wooden ball: light and agile */
-    Wood(4, 1, 0.4f) {
+    Wood("Materials/Organic/Wood.j3m", 4, 1, 0.4f) {
 
         @Override
         public Material createMaterial(final AssetManager assetManager,
-                final Callable<EnvironmentNode> getEnvironment)
-                throws Exception {
+                final Callable<EnvironmentNode> getEnvironment,
+                final boolean bakeTextures) throws Exception {
 
             final Material material =
-                    assetManager.loadMaterial("Materials/Organic/Wood.j3m");
+                    assetManager.loadMaterial(getMaterialPath());
 
             final Vector3f vec = new Vector3f();
 
@@ -108,16 +109,26 @@ public enum BallKind {
             // which column of the wood gradient texture that is used for
             // tinting the material.
             material.setFloat("Variation", (float) Math.random());
+
+            if (bakeTextures) {
+                WoodGrain.bake(material, GRAIN_EXTENT, WoodGrain.DEFAULT_SIZE);
+            }
             return material;
         }
     };
 
+    // The half-size of the region around the center of a ball that baked
+    // textures cover; this is larger than any ball
+    private static final float GRAIN_EXTENT = 1;
+
     private final float force;
     private final float linearDamping;
     private final float mass;
+    private final String materialPath;
 
-    private BallKind(final float mass, final float maxAngle,
-            final float linearDamping) {
+    private BallKind(final String materialPath, final float mass,
+            final float maxAngle, final float linearDamping) {
+        this.materialPath = materialPath;
         this.mass = mass;
         this.linearDamping = linearDamping;
         force =
@@ -135,13 +146,17 @@ public enum BallKind {
      *            A closure that retrieves an environment node, if this material
      *            requires it. If no environment is required, the closure won't
      *            be called.
+     * @param bakeTextures
+     *            Whether procedural textures should be baked into images
+     *            instead of being evaluated by shaders.
      * @return The constructed material.
      * @throws Exception
      *             if the getEnvironment closure fails, or a resource loading
      *             exception is thrown.
      */
     public abstract Material createMaterial(final AssetManager assetManager,
-            final Callable<EnvironmentNode> getEnvironment) throws Exception;
+            final Callable<EnvironmentNode> getEnvironment,
+            final boolean bakeTextures) throws Exception;
 
     public float getForce() {
         return force;
@@ -156,6 +171,14 @@ public enum BallKind {
         return mass;
     }
 
+    /**
+     * @return the path of the material that {@link #createMaterial} loads;
+     *         the shaders of the material don't depend on its environment
+     */
+    public String getMaterialPath() {
+        return materialPath;
+    }
+
     private static void randomize(final Vector3f vec) {
         vec.setX((float) Math.random());
         vec.setY((float) Math.random());
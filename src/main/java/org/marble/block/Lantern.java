@@ -6,11 +6,8 @@ import java.util.Set;
 import com.jme3.asset.AssetManager;
 import com.jme3.bullet.collision.shapes.BoxCollisionShape;
 import com.jme3.bullet.control.RigidBodyControl;
-import com.jme3.effect.ParticleEmitter;
-import com.jme3.effect.ParticleMesh;
 import com.jme3.light.Light;
 import com.jme3.light.PointLight;
-import com.jme3.material.Material;
 import com.jme3.math.ColorRGBA;
 import com.jme3.math.Vector3f;
 import com.jme3.scene.LightNode;
@@ -26,13 +23,14 @@ import org.marble.entity.connected.Connector;
 import org.marble.entity.graphical.Emitter;
 import org.marble.entity.graphical.Graphical;
 import org.marble.entity.physical.Physical;
+import org.marble.graphics.GpuParticleEmitter;
 
 public class Lantern extends AbstractEntity implements Connected, Graphical,
         Emitter, Physical {
     private final ColorRGBA color;
     private Spatial graphicalLantern;
     private PointLight light;
-    private ParticleEmitter particles;
+    private GpuParticleEmitter particles;
     private RigidBodyControl physicalLantern;
     private final float radius;
 
@@ -90,25 +88,19 @@ public class Lantern extends AbstractEntity implements Connected, Graphical,
         getSpatial().attachChild(lightNode);
 
         particles =
-                new ParticleEmitter("emitter", ParticleMesh.Type.Triangle, 8);
-        final Material material =
-                new Material(assetManager, "Common/MatDefs/Misc/Particle.j3md");
-        material.setTexture("Texture",
-                assetManager.loadTexture("Textures/flare.png"));
-        particles.setMaterial(material);
+                new GpuParticleEmitter("emitter", assetManager,
+                        assetManager.loadTexture("Textures/flare.png"), 4);
         particles.setStartColor(flameColor);
         particles.setEndColor(fumeColor);
 
-        particles.getParticleInfluencer().setInitialVelocity(
-                new Vector3f(0, 0, 8f));
-        particles.getParticleInfluencer().setVelocityVariation(0.1f);
+        particles.setInitialVelocity(new Vector3f(0, 0, 8f));
+        particles.setVelocityVariation(0.1f);
         particles.setStartSize(1.0f);
         particles.setEndSize(0.25f);
         particles.setGravity(0, 0, 0);
         particles.setLowLife(0.1f);
         particles.setHighLife(0.2f);
         particles.setLocalTranslation(0, 0, 0.5f);
-        particles.updateLogicalState(20);
         getSpatial().attachChild(particles);
 
         physicalLantern =
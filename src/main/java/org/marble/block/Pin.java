@@ -19,12 +19,14 @@ import org.marble.entity.AbstractEntity;
 import org.marble.entity.connected.Connected;
 import org.marble.entity.connected.Connector;
 import org.marble.entity.graphical.Graphical;
+import org.marble.entity.graphical.Reflected;
 import org.marble.entity.physical.Physical;
 import org.marble.util.Connectors;
 
 public class Pin extends AbstractEntity implements Graphical, Connected,
-        Physical {
+        Physical, Reflected {
 
+    private Map<String, Connector> connectors;
     private Node graphicalRails;
     private RigidBodyControl physicalBox;
 
@@ -48,7 +50,10 @@ public class Pin extends AbstractEntity implements Graphical, Connected,
 
     @Override
     public Map<String, Connector> getConnectors() {
-        return Connectors.fromRail(length, 0, radius * 2);
+        if (connectors == null) {
+            connectors = Connectors.fromRail(length, 0, radius * 2);
+        }
+        return connectors;
     }
 
     @Override
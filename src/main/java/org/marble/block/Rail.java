@@ -20,12 +20,14 @@ import org.marble.entity.AbstractEntity;
 import org.marble.entity.connected.Connected;
 import org.marble.entity.connected.Connector;
 import org.marble.entity.graphical.Graphical;
+import org.marble.entity.graphical.Reflected;
 import org.marble.entity.physical.Physical;
 import org.marble.util.Connectors;
 
 public class Rail extends AbstractEntity implements Connected, Graphical,
-        Physical {
+        Physical, Reflected {
 
+    private Map<String, Connector> connectors;
     private Node graphicalRails;
     private RigidBodyControl physicalBox;
     final float depth;
@@ -51,7 +53,10 @@ public class Rail extends AbstractEntity implements Connected, Graphical,
 
     @Override
     public Map<String, Connector> getConnectors() {
-        return Connectors.fromRail(width, height, depth);
+        if (connectors == null) {
+            connectors = Connectors.fromRail(width, height, depth);
+        }
+        return connectors;
     }
 
     @Override
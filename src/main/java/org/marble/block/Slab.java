@@ -17,22 +17,29 @@ import com.jme3.util.TempVars;
 
 import com.google.common.base.Objects;
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
 
 import org.marble.Game;
 import org.marble.entity.AbstractEntity;
+import org.marble.entity.Buildable;
 import org.marble.entity.connected.Connected;
 import org.marble.entity.connected.Connector;
 import org.marble.entity.graphical.Graphical;
+import org.marble.entity.graphical.Reflected;
 import org.marble.entity.physical.Physical;
 import org.marble.graphics.SegmentedBox;
+import org.marble.level.BakedGeometry;
+import org.marble.level.LevelCache;
 import org.marble.util.Connectors;
 import org.marble.util.OfflineTransforms;
 
 /**
  * A box-shaped block.
  */
-public class Slab extends AbstractEntity implements Connected, Graphical,
-        Physical {
+public class Slab extends AbstractEntity implements Buildable, Connected,
+        Graphical, Physical, Reflected {
+    private final Map<String, Connector> connectors;
+    private BakedGeometry geometry;
     private Geometry graphicalBox;
     private RigidBodyControl physicalBox;
     private final float slopeX, slopeY;
@@ -93,6 +100,19 @@ public class Slab extends AbstractEntity implements Connected, Graphical,
         this.depth = depth;
         this.slopeX = slopeX;
         this.slopeY = slopeY;
+        connectors = Connectors.fromBox(width, height, depth, slopeX, slopeY);
+    }
+
+    @Override
+    public void build(final Game game) {
+        final LevelCache cache = game.getLevelCache();
+        final Optional<BakedGeometry> cached = cache.get(this);
+        if (cached.isPresent()) {
+            geometry = cached.get();
+        } else {
+            geometry = bake();
+            cache.put(this, geometry);
+        }
     }
 
     @Override
@@ -102,12 +122,35 @@ public class Slab extends AbstractEntity implements Connected, Graphical,
 
     @Override
     public Map<String, Connector> getConnectors() {
-        return Connectors.fromBox(width, height, depth, slopeX, slopeY);
+        return connectors;
     }
 
     @Override
     public void initialize(final Game game) {
         final AssetManager assetManager = game.getAssetManager();
+
+        graphicalBox = new Geometry("slab", geometry.getMeshes().get(0));
+        final Material material =
+                assetManager.loadMaterial("Materials/Mineral/Concrete.j3m");
+        graphicalBox.setMaterial(material);
+
+        getSpatial().attachChild(graphicalBox);
+
+        physicalBox = new RigidBodyControl(geometry.getShape(), 0);
+        getSpatial().addControl(physicalBox);
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this).add("name", getName())
+                .add("width", width).add("height", height).add("depth", depth)
+                .toString();
+    }
+
+    /**
+     * Generates the sheared meshes and collision shape of this slab.
+     */
+    private BakedGeometry bake() {
         final Mesh graphicalMesh =
                 new SegmentedBox(1, 2, 0.25f, Vector3f.ZERO, width / 2,
                         height / 2, depth / 2);
@@ -152,13 +195,6 @@ public class Slab extends AbstractEntity implements Connected, Graphical,
             physicalMesh.updateBound();
         }
 
-        graphicalBox = new Geometry("slab", graphicalMesh);
-        final Material material =
-                assetManager.loadMaterial("Materials/Mineral/Concrete.j3m");
-        graphicalBox.setMaterial(material);
-
-        getSpatial().attachChild(graphicalBox);
-
         final CollisionShape shape;
         if (changed) {
             shape = new MeshCollisionShape(physicalMesh);
@@ -167,14 +203,6 @@ public class Slab extends AbstractEntity implements Connected, Graphical,
                     new BoxCollisionShape(new Vector3f(width / 2, height / 2,
                             depth / 2));
         }
-        physicalBox = new RigidBodyControl(shape, 0);
-        getSpatial().addControl(physicalBox);
-    }
-
-    @Override
-    public String toString() {
-        return Objects.toStringHelper(this).add("name", getName())
-                .add("width", width).add("height", height).add("depth", depth)
-                .toString();
+        return new BakedGeometry(ImmutableList.of(graphicalMesh), shape);
     }
 }
@@ -11,21 +11,31 @@ import com.jme3.math.FastMath;
 import com.jme3.math.Matrix3f;
 import com.jme3.math.Vector3f;
 import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
 import com.jme3.scene.Node;
 import com.jme3.scene.Spatial;
 
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+
 import org.marble.Game;
 import org.marble.entity.AbstractEntity;
+import org.marble.entity.Buildable;
 import org.marble.entity.connected.Connected;
 import org.marble.entity.connected.Connector;
 import org.marble.entity.graphical.Graphical;
+import org.marble.entity.graphical.Reflected;
 import org.marble.entity.physical.Physical;
 import org.marble.graphics.Curve;
+import org.marble.level.BakedGeometry;
+import org.marble.level.LevelCache;
 import org.marble.util.Connectors;
 
-public class Spiral extends AbstractEntity implements Connected, Graphical,
-        Physical {
+public class Spiral extends AbstractEntity implements Buildable, Connected,
+        Graphical, Physical, Reflected {
 
+    private Map<String, Connector> connectors;
+    private BakedGeometry geometry;
     private Node graphicalRails;
     private RigidBodyControl physicalBox;
     final float a;
@@ -68,6 +78,18 @@ public class Spiral extends AbstractEntity implements Connected, Graphical,
         b = FastMath.cos(FastMath.DEG_TO_RAD * theta) * separation;
     }
 
+    @Override
+    public void build(final Game game) {
+        final LevelCache cache = game.getLevelCache();
+        final Optional<BakedGeometry> cached = cache.get(this);
+        if (cached.isPresent()) {
+            geometry = cached.get();
+        } else {
+            geometry = bake();
+            cache.put(this, geometry);
+        }
+    }
+
     @Override
     public RigidBodyControl getBody() {
         return physicalBox;
@@ -80,26 +102,26 @@ public class Spiral extends AbstractEntity implements Connected, Graphical,
      */
     @Override
     public Map<String, Connector> getConnectors() {
-        return Connectors.fromSpiral(radius, height, tubeRadius, separation,
-                angle, direction, a, b);
+        if (connectors == null) {
+            connectors =
+                    Connectors.fromSpiral(radius, height, tubeRadius,
+                            separation, angle, direction, a, b);
+        }
+        return connectors;
     }
 
     @Override
     public void initialize(final Game game) {
-        final float pi = (float) Math.PI;
-        final int steps = (int) (angle / (pi / 6) * radius);
         final AssetManager assetManager = game.getAssetManager();
 
         final Material material =
                 assetManager.loadMaterial("Materials/Metal/Chrome.j3m");
         final Spatial left =
-                new Geometry("left rail", new Curve(steps, 10, radius - a / 2,
-                        height, angle, tubeRadius, direction));
+                new Geometry("left rail", geometry.getMeshes().get(0));
         left.setMaterial(material);
 
         final Spatial right =
-                new Geometry("right rail", new Curve(steps, 10, radius + a / 2,
-                        height, angle, tubeRadius, direction));
+                new Geometry("right rail", geometry.getMeshes().get(1));
         right.setMaterial(material);
         left.setLocalTranslation(direction.mult(-b / 2));
         right.setLocalTranslation(direction.mult(b / 2));
@@ -108,6 +130,24 @@ public class Spiral extends AbstractEntity implements Connected, Graphical,
         graphicalRails.attachChild(right);
         getSpatial().attachChild(graphicalRails);
 
+        physicalBox = new RigidBodyControl(geometry.getShape(), 0);
+        getSpatial().addControl(physicalBox);
+    }
+
+    /**
+     * Generates the rail meshes and collision shape of this spiral.
+     */
+    private BakedGeometry bake() {
+        final float pi = (float) Math.PI;
+        final int steps = (int) (angle / (pi / 6) * radius);
+
+        final Curve leftMesh =
+                new Curve(steps, 10, radius - a / 2, height, angle,
+                        tubeRadius, direction);
+        final Curve rightMesh =
+                new Curve(steps, 10, radius + a / 2, height, angle,
+                        tubeRadius, direction);
+
         final CompoundCollisionShape compound = new CompoundCollisionShape();
 
         Vector3f n;
@@ -183,9 +223,8 @@ public class Spiral extends AbstractEntity implements Connected, Graphical,
             rotZ.mult(rotTot2, rotTot2);
         }
 
-        physicalBox = new RigidBodyControl(compound, 0);
-        getSpatial().addControl(physicalBox);
-
+        return new BakedGeometry(ImmutableList.<Mesh> of(leftMesh, rightMesh),
+                compound);
     }
 
 }
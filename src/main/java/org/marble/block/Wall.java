@@ -17,12 +17,14 @@ import org.marble.entity.AbstractEntity;
 import org.marble.entity.connected.Connected;
 import org.marble.entity.connected.Connector;
 import org.marble.entity.graphical.Graphical;
+import org.marble.entity.graphical.Reflected;
 import org.marble.entity.physical.Physical;
 import org.marble.util.Connectors;
 
 public class Wall extends AbstractEntity implements Connected, Graphical,
-        Physical {
+        Physical, Reflected {
 
+    private Map<String, Connector> connectors;
     private Geometry graphicalBox;
     private final float length;
     private RigidBodyControl physicalBox;
@@ -38,7 +40,10 @@ public class Wall extends AbstractEntity implements Connected, Graphical,
 
     @Override
     public Map<String, Connector> getConnectors() {
-        return Connectors.fromWall(length);
+        if (connectors == null) {
+            connectors = Connectors.fromWall(length);
+        }
+        return connectors;
     }
 
     @Override
@@ -1,5 +1,8 @@
 package org.marble.engine;
 
+import java.util.List;
+
+import com.jme3.bullet.control.RigidBodyControl;
 import com.jme3.light.Light;
 import com.jme3.math.Vector3f;
 import com.jme3.renderer.Camera;
@@ -7,27 +10,84 @@ import com.jme3.renderer.RenderManager;
 import com.jme3.renderer.Renderer;
 import com.jme3.renderer.ViewPort;
 import com.jme3.renderer.queue.RenderQueue.Bucket;
+import com.jme3.scene.Geometry;
 import com.jme3.scene.Node;
+import com.jme3.scene.SceneGraphVisitorAdapter;
+import com.jme3.scene.Spatial;
 import com.jme3.scene.Spatial.CullHint;
+import com.jme3.scene.control.LodControl;
 import com.jme3.system.JmeContext;
 
+import com.google.common.collect.Lists;
+
 import org.marble.entity.graphical.Emitter;
 import org.marble.entity.graphical.Graphical;
+import org.marble.entity.graphical.Reflected;
+import org.marble.entity.physical.Actor;
+import org.marble.entity.physical.Physical;
+import org.marble.graphics.EnvironmentNode;
+import org.marble.graphics.EnvironmentProbes;
+import org.marble.graphics.LightCuller;
+import org.marble.graphics.ShaderWarmup;
+import org.marble.graphics.SpatialPartition;
 
 /**
  * The Ardor3D-based graphics engine.
  */
 public class GraphicsEngine extends Engine<Graphical> {
+    // How close static reflectors must be to share an environment probe
+    private static final float PROBE_SHARING_DISTANCE = 4f;
+
+    // Selects the LOD level of meshes that provide them by projected size
+    private static final SceneGraphVisitorAdapter LOD_ATTACHER =
+            new SceneGraphVisitorAdapter() {
+                @Override
+                public void visit(final Geometry geometry) {
+                    if (geometry.getMesh().getNumLodLevels() > 0
+                            && geometry.getControl(LodControl.class) == null) {
+                        geometry.addControl(new LodControl());
+                    }
+                }
+            };
+
     private Camera camera;
     private final JmeContext context;
+    private float environmentFarPlane = EnvironmentNode.DEFAULT_FAR_PLANE;
+    private EnvironmentProbes environmentProbes;
+
+    // Whether entities that are visible in reflections have been added or
+    // removed since the environment probes were last baked
+    private boolean environmentProbesStale = false;
     private final Node guiNode = new Node("gui");
     private ViewPort guiViewPort;
+
+    // Assigns the lights of emitters to the entities within their radius
+    private LightCuller lightCuller;
+
     private Renderer renderer;
 
     private RenderManager renderManager;
 
+    // The part of the scene that is visible in reflections
+    private final Node reflectedNode = new Node("reflected");
+
+    // The static entities that are visible in reflections
+    private final SpatialPartition reflectedPartition = new SpatialPartition(
+            "reflected partition");
+
     private final Node rootNode = new Node("root");
 
+    // The static entities that are not visible in reflections
+    private final SpatialPartition rootPartition = new SpatialPartition(
+            "root partition");
+
+    // Compiles shaders ahead of time, and records which ones were compiled
+    private ShaderWarmup shaderWarmup;
+
+    // Spatials that were added since the last frame and whose shaders haven't
+    // been checked yet
+    private final List<Spatial> uncheckedSpatials = Lists.newArrayList();
+
     private ViewPort viewPort;
 
     public GraphicsEngine(final JmeContext context) {
@@ -42,6 +102,30 @@ public class GraphicsEngine extends Engine<Graphical> {
         return camera;
     }
 
+    /**
+     * @return how many static entities were culled in whole regions during
+     *         the last frame of the specified view port
+     */
+    public int getCulledCount(final ViewPort viewPort) {
+        final Camera camera = viewPort.getCamera();
+        return reflectedPartition.getStatistics(camera).getCulled()
+                + rootPartition.getStatistics(camera).getCulled();
+    }
+
+    /**
+     * @return the far plane of environment cameras
+     */
+    public float getEnvironmentFarPlane() {
+        return environmentFarPlane;
+    }
+
+    /**
+     * @return the pool of baked environment probes for static reflectors
+     */
+    public EnvironmentProbes getEnvironmentProbes() {
+        return environmentProbes;
+    }
+
     /**
      * @return the guiNode
      */
@@ -56,10 +140,25 @@ public class GraphicsEngine extends Engine<Graphical> {
         return guiViewPort;
     }
 
+    /**
+     * @return the record of the shaders that have been warmed up
+     */
+    public ShaderWarmup getShaderWarmup() {
+        return shaderWarmup;
+    }
+
     public RenderManager getRenderManager() {
         return renderManager;
     }
 
+    /**
+     * @return the node containing all of the {@link Reflected} entities; this
+     *         is the scene that environment maps should render
+     */
+    public Node getReflectedNode() {
+        return reflectedNode;
+    }
+
     /**
      * @return the rootNode
      */
@@ -71,6 +170,16 @@ public class GraphicsEngine extends Engine<Graphical> {
         return viewPort;
     }
 
+    /**
+     * @return how many static entities were in visible regions during the last
+     *         frame of the specified view port
+     */
+    public int getVisibleCount(final ViewPort viewPort) {
+        final Camera camera = viewPort.getCamera();
+        return reflectedPartition.getStatistics(camera).getVisible()
+                + rootPartition.getStatistics(camera).getVisible();
+    }
+
     @Override
     public void initialize() {
         renderer = context.getRenderer();
@@ -93,6 +202,17 @@ public class GraphicsEngine extends Engine<Graphical> {
         viewPort.setClearFlags(true, true, true);
         viewPort.attachScene(rootNode);
 
+        lightCuller = new LightCuller(renderManager);
+        shaderWarmup = new ShaderWarmup(renderManager);
+
+        rootNode.attachChild(reflectedNode);
+        rootNode.attachChild(rootPartition.getNode());
+        reflectedNode.attachChild(reflectedPartition.getNode());
+        environmentProbes =
+                new EnvironmentProbes(reflectedNode, renderManager,
+                        PROBE_SHARING_DISTANCE);
+        environmentProbes.setFarPlane(environmentFarPlane);
+
         final Camera guiCam =
                 new Camera(context.getSettings().getWidth(), context
                         .getSettings().getHeight());
@@ -101,6 +221,15 @@ public class GraphicsEngine extends Engine<Graphical> {
         guiViewPort.attachScene(guiNode);
     }
 
+    /**
+     * Changes the far plane of the environment probes, and of environment
+     * nodes created from now on.
+     */
+    public void setEnvironmentFarPlane(final float environmentFarPlane) {
+        this.environmentFarPlane = environmentFarPlane;
+        environmentProbes.setFarPlane(environmentFarPlane);
+    }
+
     public void reshape(final int width, final int height) {
         renderManager.notifyReshape(width, height);
     }
@@ -117,34 +246,108 @@ public class GraphicsEngine extends Engine<Graphical> {
 
     @Override
     public void update(final float timePerFrame) {
+        reflectedPartition.rebuildIfNeeded();
+        rootPartition.rebuildIfNeeded();
+
         rootNode.updateLogicalState(timePerFrame);
         guiNode.updateLogicalState(timePerFrame);
 
         rootNode.updateGeometricState();
+        if (lightCuller.update()) {
+            rootNode.updateGeometricState();
+        }
         guiNode.updateGeometricState();
 
+        for (final Spatial spatial : uncheckedSpatials) {
+            shaderWarmup.check(spatial);
+        }
+        uncheckedSpatials.clear();
+
+        if (environmentProbesStale) {
+            environmentProbes.rebake();
+            environmentProbesStale = false;
+        }
+
+        reflectedPartition.resetStatistics();
+        rootPartition.resetStatistics();
         renderManager.render(timePerFrame, context.isRenderable());
     }
 
     @Override
     protected void entityAdded(final Graphical entity) {
-        rootNode.attachChild(entity.getSpatial());
+        if (isStatic(entity)) {
+            getPartition(entity).add(entity.getSpatial());
+        } else {
+            getParentNode(entity).attachChild(entity.getSpatial());
+        }
+        entity.getSpatial().depthFirstTraversal(LOD_ATTACHER);
+        lightCuller.addSpatial(entity.getSpatial(), !isStatic(entity));
+        uncheckedSpatials.add(entity.getSpatial());
+        if (entity instanceof Reflected) {
+            environmentProbesStale = true;
+        }
 
         if (entity instanceof Emitter) {
             for (final Light light : ((Emitter) entity).getLights()) {
-                rootNode.addLight(light);
+                lightCuller.addLight(light);
             }
         }
     }
 
     @Override
     protected void entityRemoved(final Graphical entity) {
-        rootNode.detachChild(entity.getSpatial());
+        if (isStatic(entity)) {
+            getPartition(entity).remove(entity.getSpatial());
+        } else {
+            getParentNode(entity).detachChild(entity.getSpatial());
+        }
+
+        lightCuller.removeSpatial(entity.getSpatial());
+        uncheckedSpatials.remove(entity.getSpatial());
+        if (entity instanceof Reflected) {
+            environmentProbesStale = true;
+        }
 
         if (entity instanceof Emitter) {
             for (final Light light : ((Emitter) entity).getLights()) {
-                rootNode.removeLight(light);
+                lightCuller.removeLight(light);
             }
         }
     }
+
+    /**
+     * Compiles the shaders of the current scene, and of a number of prototype
+     * spatials that stand in for entities that may be added later, so that
+     * they don't have to be compiled while the game is running.
+     * 
+     * @param prototypes
+     *            Spatials whose materials should also be warmed up. They are
+     *            not attached to the scene.
+     */
+    public void warmUpShaders(final Spatial prototypes) {
+        reflectedPartition.rebuildIfNeeded();
+        rootPartition.rebuildIfNeeded();
+        shaderWarmup.warmUp(rootNode);
+        shaderWarmup.warmUp(prototypes);
+    }
+
+    private Node getParentNode(final Graphical entity) {
+        return entity instanceof Reflected ? reflectedNode : rootNode;
+    }
+
+    private SpatialPartition getPartition(final Graphical entity) {
+        return entity instanceof Reflected ? reflectedPartition
+                : rootPartition;
+    }
+
+    /**
+     * Whether an entity is a part of the level that never moves, so that it
+     * can be partitioned.
+     */
+    private static boolean isStatic(final Graphical entity) {
+        if (!(entity instanceof Physical) || entity instanceof Actor)
+            return false;
+        final RigidBodyControl body = ((Physical) entity).getBody();
+        return body != null && body.getMass() == 0;
+    }
 }
@@ -35,6 +35,9 @@ public class PhysicsEngine extends Engine<Physical> {
     private ImmutableSet<Physical> physicals = ImmutableSet.of();
     private PhysicsSpace physicsSpace;
 
+    // How long the last simulation step took, in seconds
+    private float stepTime = 0;
+
     float bound = 0;
 
     public PhysicsEngine(final JmeContext context) {
@@ -49,6 +52,14 @@ public class PhysicsEngine extends Engine<Physical> {
         physicsSpace.enableDebug(assetManager);
     }
 
+    /**
+     * @return how long the last simulation step took, in seconds; zero if no
+     *         step was taken because the simulation is paused
+     */
+    public float getStepTime() {
+        return stepTime;
+    }
+
     @Override
     public void initialize() {
         physicsSpace =
@@ -100,8 +111,12 @@ public class PhysicsEngine extends Engine<Physical> {
             for (final Actor actor : actors) {
                 actor.performActions(timePerFrame);
             }
+            final long stepStart = System.nanoTime();
             physicsSpace.update(timePerFrame);
             physicsSpace.distributeEvents();
+            stepTime = (System.nanoTime() - stepStart) / 1e9f;
+        } else {
+            stepTime = 0;
         }
     }
 
@@ -0,0 +1,20 @@
+package org.marble.entity;
+
+import org.marble.Game;
+
+/**
+ * An entity that does expensive, CPU-only work before it is initialized.
+ * 
+ * The work is done in {@link #build(Game)}, which may run on a worker thread
+ * in parallel with the builds of other entities, so it must not touch the
+ * scene graph, the physics space or any other shared mutable state.
+ * {@link #initialize(Game)} is then called on the game thread as usual.
+ */
+public interface Buildable extends Entity {
+    /**
+     * Prepares the resources of this entity that can be computed
+     * independently, such as meshes and collision shapes. This method is
+     * called before {@link #initialize(Game)}, possibly on another thread.
+     */
+    public void build(Game game) throws Exception;
+}
@@ -1,23 +1,63 @@
 package org.marble.entity;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
+import com.jme3.bullet.control.RigidBodyControl;
+import com.jme3.math.Transform;
+import com.jme3.math.Vector3f;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
 import org.marble.Game;
 import org.marble.engine.Engine;
+import org.marble.entity.physical.Physical;
+import org.marble.level.LoadProgress;
+import org.marble.util.Workers;
 
 public class EntityManager {
+    // Removed entities of the snapshot, which are kept around instead of
+    // being destroyed so that restoring the snapshot can add them again
+    private final Set<Entity> detached = Sets.newHashSet();
+
     // Currently loaded entities
     private ImmutableSet<Entity> entities = ImmutableSet.of();
 
     private final Game game;
 
+    // Loaded entities that aren't handled by the engines right now
+    private final Set<Entity> inactive = Sets.newHashSet();
+
+    // The entities to restore, and the transforms to reset them to, if a
+    // snapshot has been captured
+    private Optional<ImmutableMap<Entity, Transform>> snapshot = Optional
+            .absent();
+
     public EntityManager(final Game game) {
         this.game = game;
     }
 
+    /**
+     * Lets the engines handle a set of inactive entities again.
+     * 
+     * @param entities
+     *            The entities to activate. Entities that aren't inactive are
+     *            ignored.
+     */
+    public void activateEntities(final Set<Entity> entities) {
+        for (final Entity entity : entities) {
+            if (inactive.remove(entity)) {
+                addToEngines(entity);
+            }
+        }
+    }
+
     /**
      * Starts managing a set of entities.
      * 
@@ -26,14 +66,8 @@ public class EntityManager {
      */
     public void addEntities(final Set<Entity> entities) {
         try {
-            for (final Entity entity : entities) {
-                entity.initialize(game);
-                for (final Engine<?> engine : game.getEngines()) {
-                    if (engine.shouldHandle(entity)) {
-                        engine.addEntity(entity);
-                    }
-                }
-            }
+            buildEntities(entities, Optional.<LoadProgress> absent());
+            initializeEntities(entities);
         } catch (final Exception e) {
             game.handleError(e);
         }
@@ -48,9 +82,121 @@ public class EntityManager {
     }
 
     /**
-     * Removes all entities safely.
+     * Remembers which entities are managed right now and where they are, so
+     * that they can be reset to this state by {@link #restoreSnapshot()}
+     * without being loaded and initialized again. Until the snapshot is
+     * discarded, entities of the snapshot that are removed are not destroyed.
+     * Any previous snapshot is discarded.
+     * 
+     * @throws IllegalStateException
+     *             if some of the entities are inactive.
+     */
+    public void captureSnapshot() {
+        if (!inactive.isEmpty())
+            throw new IllegalStateException(
+                    "Can't capture a snapshot of inactive entities");
+        discardSnapshot();
+
+        final ImmutableMap.Builder<Entity, Transform> transforms =
+                ImmutableMap.builder();
+        for (final Entity entity : entities) {
+            transforms.put(entity, entity.getTransform().clone());
+        }
+        snapshot = Optional.of(transforms.build());
+    }
+
+    /**
+     * Makes the engines stop handling a set of entities, without destroying
+     * them, so that they can be activated again later. Inactive entities are
+     * not updated.
+     * 
+     * @param entities
+     *            The entities to deactivate. Entities that aren't managed or
+     *            are already inactive are ignored.
+     */
+    public void deactivateEntities(final Set<Entity> entities) {
+        for (final Entity entity : entities) {
+            if (this.entities.contains(entity) && inactive.add(entity)) {
+                removeFromEngines(entity);
+            }
+        }
+    }
+
+    /**
+     * Runs the build phase of all of the {@link Buildable} entities on the
+     * worker threads, and waits for it to finish. This may be called from any
+     * thread, before the entities are managed.
+     * 
+     * @param entities
+     *            The entities to build.
+     * @param progress
+     *            Where to report the number of built entities.
+     */
+    public void buildEntities(final Set<Entity> entities,
+            final Optional<LoadProgress> progress) throws Exception {
+        final List<Callable<Void>> builds = Lists.newArrayList();
+        for (final Entity entity : entities) {
+            if (entity instanceof Buildable) {
+                final Buildable buildable = (Buildable) entity;
+                builds.add(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        buildable.build(game);
+                        if (progress.isPresent()) {
+                            progress.get().entityBuilt();
+                        }
+                        return null;
+                    }
+                });
+            }
+        }
+        if (progress.isPresent()) {
+            progress.get().beginBuilding(builds.size());
+        }
+
+        if (builds.size() == 1) {
+            // Not worth handing off to another thread
+            builds.get(0).call();
+        } else if (!builds.isEmpty()) {
+            Workers.runAll(builds);
+        }
+    }
+
+    /**
+     * Forgets the current snapshot, if any, and destroys the entities of it
+     * that have been removed since it was captured.
+     */
+    public void discardSnapshot() {
+        snapshot = Optional.absent();
+        for (final Entity entity : detached) {
+            try {
+                entity.destroy();
+            } catch (final Exception e) {
+                game.handleError(e);
+            }
+        }
+        detached.clear();
+    }
+
+    /**
+     * The number of managed entities that are handled by the engines.
+     */
+    public int getActiveEntityCount() {
+        return entities.size() - inactive.size();
+    }
+
+    /**
+     * Whether a snapshot has been captured and not discarded since.
+     */
+    public boolean hasSnapshot() {
+        return snapshot.isPresent();
+    }
+
+    /**
+     * Removes all entities safely, discarding the snapshot if there is one.
      */
     public void removeAllEntities() {
+        discardSnapshot();
         removeEntities(entities);
     }
 
@@ -62,10 +208,12 @@ public class EntityManager {
      */
     public void removeEntities(final Set<Entity> entities) {
         for (final Entity entity : entities) {
-            for (final Engine<?> engine : game.getEngines()) {
-                if (engine.shouldHandle(entity)) {
-                    engine.removeEntity(entity);
-                }
+            if (!inactive.remove(entity)) {
+                removeFromEngines(entity);
+            }
+            if (snapshot.isPresent() && snapshot.get().containsKey(entity)) {
+                detached.add(entity);
+                continue;
             }
             try {
                 entity.destroy();
@@ -82,8 +230,84 @@ public class EntityManager {
         removeEntities(ImmutableSet.of(entity));
     }
 
+    /**
+     * Replaces all of the managed entities in one go.
+     * 
+     * @param entities
+     *            The new set of entities to manage. They must already have
+     *            been built with {@link #buildEntities}.
+     */
+    public void replaceEntities(final Set<Entity> entities) {
+        removeAllEntities();
+        try {
+            initializeEntities(entities);
+        } catch (final Exception e) {
+            game.handleError(e);
+        }
+
+        this.entities = ImmutableSet.copyOf(entities);
+    }
+
+    /**
+     * Resets the managed entities to the current snapshot. Entities that have
+     * been added since the snapshot was captured are removed, entities of the
+     * snapshot that have been removed are added again without being
+     * initialized again, and all of them are moved back to where they were
+     * and brought to rest. The snapshot is kept, so that it can be restored
+     * again.
+     * 
+     * @throws IllegalStateException
+     *             if there is no snapshot.
+     */
+    public void restoreSnapshot() {
+        if (!snapshot.isPresent())
+            throw new IllegalStateException("There is no snapshot to restore");
+        final ImmutableMap<Entity, Transform> transforms = snapshot.get();
+
+        removeEntities(ImmutableSet.copyOf(Sets.difference(entities,
+                transforms.keySet())));
+        // The engines look at the transforms of the entities they are given
+        for (final Map.Entry<Entity, Transform> entry : transforms.entrySet()) {
+            resetTransform(entry.getKey(), entry.getValue());
+        }
+        for (final Entity entity : detached) {
+            addToEngines(entity);
+        }
+        detached.clear();
+
+        entities = transforms.keySet();
+    }
+
+    /**
+     * Exchanges some of the managed entities for others in one go. Entities
+     * that are no longer managed are ignored.
+     * 
+     * @param removed
+     *            The entities to stop managing.
+     * @param added
+     *            The entities to start managing. They must already have been
+     *            built with {@link #buildEntities}.
+     */
+    public void swapEntities(final Set<Entity> removed,
+            final Set<Entity> added) {
+        removeEntities(ImmutableSet.copyOf(Sets.intersection(removed,
+                entities)));
+        try {
+            initializeEntities(added);
+        } catch (final Exception e) {
+            game.handleError(e);
+        }
+
+        entities =
+                ImmutableSet.<Entity> builder().addAll(entities).addAll(added)
+                        .build();
+    }
+
     public void update(final float timePerFrame) {
         for (final Entity entity : entities) {
+            if (inactive.contains(entity)) {
+                continue;
+            }
             try {
                 entity.update(timePerFrame);
             } catch (final Exception e) {
@@ -91,4 +315,49 @@ public class EntityManager {
             }
         }
     }
+
+    private void addToEngines(final Entity entity) {
+        for (final Engine<?> engine : game.getEngines()) {
+            if (engine.shouldHandle(entity)) {
+                engine.addEntity(entity);
+            }
+        }
+    }
+
+    /**
+     * Initializes a set of built entities and hands them to the engines.
+     */
+    private void initializeEntities(final Set<Entity> entities)
+            throws Exception {
+        for (final Entity entity : entities) {
+            entity.initialize(game);
+            addToEngines(entity);
+        }
+    }
+
+    private void removeFromEngines(final Entity entity) {
+        for (final Engine<?> engine : game.getEngines()) {
+            if (engine.shouldHandle(entity)) {
+                engine.removeEntity(entity);
+            }
+        }
+    }
+
+    /**
+     * Moves an entity, and its body if it has one, and stops the body from
+     * moving.
+     */
+    private static void resetTransform(final Entity entity,
+            final Transform transform) {
+        entity.setTransform(transform.clone());
+        if (entity instanceof Physical) {
+            final RigidBodyControl body = ((Physical) entity).getBody();
+            body.setPhysicsLocation(transform.getTranslation());
+            body.setPhysicsRotation(transform.getRotation());
+            if (body.getMass() > 0) {
+                body.setLinearVelocity(Vector3f.ZERO);
+                body.setAngularVelocity(Vector3f.ZERO);
+            }
+        }
+    }
 }
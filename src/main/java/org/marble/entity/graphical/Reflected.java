@@ -0,0 +1,11 @@
+package org.marble.entity.graphical;
+
+/**
+ * A graphical entity that will be seen in reflections.
+ * 
+ * <p>
+ * Environment maps only render entities on this layer, so it should only be
+ * used for opaque, mostly static geometry.
+ */
+public interface Reflected extends Graphical {
+}
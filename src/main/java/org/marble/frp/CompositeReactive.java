@@ -35,7 +35,7 @@ public class CompositeReactive<A, B> implements Reactive<Pair<A, B>> {
     @Override
     public void removeReactiveListener(
             final ReactiveListener<Pair<A, B>> listener) {
-        listeners.remove(listeners);
+        listeners.remove(listener);
     }
 
     private void emitChange(final A a, final B b) {
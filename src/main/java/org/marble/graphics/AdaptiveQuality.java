@@ -0,0 +1,151 @@
+package org.marble.graphics;
+
+import org.marble.frp.Reactive;
+import org.marble.frp.ReactiveReference;
+
+/**
+ * Watches the frame time and decides how much the graphics quality should be
+ * reduced in order to reach a target frame rate.
+ * 
+ * <p>
+ * The controller produces a reduction level, where 0 means that the user's
+ * settings are used unmodified. The level is raised when the smoothed frame
+ * time has been above the budget for a while, and lowered only after the
+ * smoothed work time has been well below the budget for a longer while, so
+ * that the quality doesn't oscillate around the target.
+ * 
+ * <p>
+ * The frame time can't be used to decide when to improve, since the frame rate
+ * is usually limited to the target frame rate, and the frame time then never
+ * drops below the budget. The work time is the part of the frame that was
+ * spent updating and rendering, without the time spent waiting for the
+ * limiter.
+ */
+public class AdaptiveQuality {
+    // How many seconds the frame time must be over budget before reducing
+    private static final float DEGRADE_DELAY = 1f;
+
+    // How many seconds the frame time must be under budget before improving
+    private static final float IMPROVE_DELAY = 8f;
+
+    // How long to ignore samples after a change, to let hitches pass
+    private static final float SETTLE_TIME = 2f;
+
+    // Frames longer than this are assumed to be loading hitches
+    private static final float MAX_SAMPLE = 0.5f;
+
+    // The weight of a new sample in the smoothed frame time
+    private static final float SMOOTHING = 0.05f;
+
+    // Over this fraction of the budget, quality is reduced
+    private static final float DEGRADE_THRESHOLD = 1.1f;
+
+    // Under this fraction of the budget, quality is improved
+    private static final float IMPROVE_THRESHOLD = 0.75f;
+
+    private boolean enabled = true;
+    private final int maxReduction;
+    private final ReactiveReference<Integer> reduction =
+            new ReactiveReference<Integer>(0);
+
+    private float averageFrameTime;
+    private float averageWorkTime;
+    private float overBudgetTime = 0;
+    private float settleTime = SETTLE_TIME;
+    private float targetFrameTime;
+    private float underBudgetTime = 0;
+
+    /**
+     * Creates a new adaptive quality controller.
+     * 
+     * @param targetFrameRate
+     *            The frame rate to aim for.
+     * @param maxReduction
+     *            The highest reduction level that may be used.
+     */
+    public AdaptiveQuality(final int targetFrameRate, final int maxReduction) {
+        this.maxReduction = maxReduction;
+        setTargetFrameRate(targetFrameRate);
+    }
+
+    /**
+     * The current reduction level, from 0 (none) to the maximum reduction.
+     */
+    public Reactive<Integer> getReduction() {
+        return reduction;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables the controller. A disabled controller always reports
+     * a reduction level of 0.
+     */
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            changeReduction(0);
+        }
+    }
+
+    public void setTargetFrameRate(final int targetFrameRate) {
+        targetFrameTime = 1f / Math.max(targetFrameRate, 1);
+        averageFrameTime = targetFrameTime;
+        averageWorkTime = targetFrameTime;
+        overBudgetTime = 0;
+        underBudgetTime = 0;
+    }
+
+    /**
+     * Feeds the controller with the durations of the last frame.
+     * 
+     * @param timePerFrame
+     *            The time that the last frame took, including the time spent
+     *            waiting for the frame rate limiter.
+     * @param workTime
+     *            The time that was spent working on the last frame.
+     */
+    public void update(final float timePerFrame, final float workTime) {
+        if (!enabled)
+            return;
+
+        if (settleTime > 0) {
+            settleTime -= timePerFrame;
+            return;
+        }
+        if (timePerFrame > MAX_SAMPLE)
+            return;
+
+        averageFrameTime += (timePerFrame - averageFrameTime) * SMOOTHING;
+        averageWorkTime += (workTime - averageWorkTime) * SMOOTHING;
+
+        if (averageFrameTime > targetFrameTime * DEGRADE_THRESHOLD) {
+            overBudgetTime += timePerFrame;
+            underBudgetTime = 0;
+        } else if (averageWorkTime < targetFrameTime * IMPROVE_THRESHOLD) {
+            underBudgetTime += timePerFrame;
+            overBudgetTime = 0;
+        } else {
+            overBudgetTime = 0;
+            underBudgetTime = 0;
+        }
+
+        final int current = reduction.getValue();
+        if (overBudgetTime > DEGRADE_DELAY && current < maxReduction) {
+            changeReduction(current + 1);
+        } else if (underBudgetTime > IMPROVE_DELAY && current > 0) {
+            changeReduction(current - 1);
+        }
+    }
+
+    private void changeReduction(final int value) {
+        overBudgetTime = 0;
+        underBudgetTime = 0;
+        averageFrameTime = targetFrameTime;
+        averageWorkTime = targetFrameTime;
+        settleTime = SETTLE_TIME;
+        reduction.setValue(value);
+    }
+}
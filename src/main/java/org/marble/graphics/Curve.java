@@ -17,10 +17,19 @@ import com.jme3.math.FastMath;
 import com.jme3.math.Matrix4f;
 import com.jme3.math.Vector3f;
 import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.scene.VertexBuffer.Format;
 import com.jme3.scene.VertexBuffer.Type;
+import com.jme3.scene.VertexBuffer.Usage;
 import com.jme3.util.BufferUtils;
 
+/**
+ * A tube following a helical curve. Coarser LOD levels skip circle and radial
+ * samples of the full mesh, so they share its vertex buffer.
+ */
 public class Curve extends Mesh {
+    // The maximum number of LOD levels, including the full one
+    private static final int MAX_LOD_LEVELS = 4;
 
     protected final float _angle;
 
@@ -148,30 +157,56 @@ public class Curve extends Mesh {
         setBuffer(Type.TexCoord, 2, texcoordBuffer);
     }
 
-    private void setIndexData() {
-        final int tris = 2 * _circleSamples * _radialSamples;
+    private IntBuffer createIndexBuffer(final int circleStride,
+            final int radialStride) {
+        final int rings = (_circleSamples + circleStride - 1) / circleStride;
+        final int segments = _radialSamples / radialStride;
+        final int tris = 2 * rings * segments;
         final IntBuffer indexBuffer = BufferUtils.createIntBuffer(3 * tris);
-        int i;
+        final int ringSize = _radialSamples + 1;
         // generate connectivity
-        int connectionStart = 0;
-        for (int circleCount = 0; circleCount < _circleSamples; circleCount++) {
-            int i0 = connectionStart;
-            int i1 = i0 + 1;
-            connectionStart += _radialSamples + 1;
-            int i2 = connectionStart;
-            int i3 = i2 + 1;
-            for (i = 0; i < _radialSamples; i++) {
-
-                indexBuffer.put(i0++);
+        for (int circleCount = 0; circleCount < _circleSamples; circleCount +=
+                circleStride) {
+            final int nextCircle =
+                    Math.min(circleCount + circleStride, _circleSamples);
+            for (int i = 0; i < _radialSamples; i += radialStride) {
+                final int i0 = circleCount * ringSize + i;
+                final int i1 = i0 + radialStride;
+                final int i2 = nextCircle * ringSize + i;
+                final int i3 = i2 + radialStride;
+
+                indexBuffer.put(i0);
                 indexBuffer.put(i2);
                 indexBuffer.put(i1);
-                indexBuffer.put(i1++);
-                indexBuffer.put(i2++);
-                indexBuffer.put(i3++);
-
+                indexBuffer.put(i1);
+                indexBuffer.put(i2);
+                indexBuffer.put(i3);
             }
         }
-        setBuffer(Type.Index, 3, indexBuffer);
+        return indexBuffer;
+    }
+
+    private void setIndexData() {
+        setBuffer(Type.Index, 3, createIndexBuffer(1, 1));
+
+        // Halve the circle samples for every level, and the radial samples
+        // once if possible, until only a single ring would be left
+        final VertexBuffer[] lodLevels = new VertexBuffer[MAX_LOD_LEVELS];
+        lodLevels[0] = getBuffer(Type.Index);
+        int levels = 1;
+        while (levels < MAX_LOD_LEVELS && 1 << levels < _circleSamples) {
+            final int radialStride = _radialSamples % 2 == 0 ? 2 : 1;
+            final VertexBuffer lodLevel = new VertexBuffer(Type.Index);
+            lodLevel.setupData(Usage.Static, 3, Format.UnsignedInt,
+                    createIndexBuffer(1 << levels, radialStride));
+            lodLevels[levels++] = lodLevel;
+        }
+
+        if (levels > 1) {
+            final VertexBuffer[] usedLevels = new VertexBuffer[levels];
+            System.arraycopy(lodLevels, 0, usedLevels, 0, levels);
+            setLodLevels(usedLevels);
+        }
     }
 
 }
@@ -20,8 +20,22 @@ import org.marble.frp.ReactiveReference;
 /**
  * A node that acts like a panorama camera, rendering to a cube map instead of a
  * texture.
+ * 
+ * <p>
+ * A live environment node re-renders its cube map every frame. A static
+ * environment node only renders its cube map once (and again whenever the
+ * texture size changes or a re-bake is requested), which is suitable for
+ * reflectors that never move.
  */
 public class EnvironmentNode extends Node {
+    /**
+     * The default distance to the far plane of the environment cameras.
+     */
+    public static final float DEFAULT_FAR_PLANE = 64f;
+
+    // The distance to the near plane of the environment cameras
+    private static final float NEAR_PLANE = 0.0625f;
+
     private static final Vector3f[][] cameraAngles = {
             { Vector3f.UNIT_Z, Vector3f.UNIT_Y.negate(), Vector3f.UNIT_X },
             { Vector3f.UNIT_Z.negate(), Vector3f.UNIT_Y.negate(),
@@ -40,6 +54,15 @@ public class EnvironmentNode extends Node {
 
     private final ViewPort[] environmentViews;
 
+    // The distance to the far plane of the environment cameras
+    private float farPlane = DEFAULT_FAR_PLANE;
+
+    // Whether the cube map is re-rendered every frame
+    private final boolean live;
+
+    // How many more frames a static node will render its cube map for
+    private int pendingBakeFrames = 0;
+
     private final TextureSizeListener listener = new TextureSizeListener();
 
     private final RenderManager renderManager;
@@ -47,12 +70,26 @@ public class EnvironmentNode extends Node {
     private final Reactive<Integer> textureSizeMagnitude;
 
     /**
-     * Creates a new environment node.
+     * Creates a new live environment node.
      */
     public EnvironmentNode(final Spatial root,
             final RenderManager renderManager,
             final Reactive<Integer> textureSizeMagnitude) {
+        this(root, renderManager, textureSizeMagnitude, true);
+    }
+
+    /**
+     * Creates a new environment node.
+     * 
+     * @param live
+     *            Whether the cube map should be re-rendered every frame, or
+     *            only baked once.
+     */
+    public EnvironmentNode(final Spatial root,
+            final RenderManager renderManager,
+            final Reactive<Integer> textureSizeMagnitude, final boolean live) {
         this.root = root;
+        this.live = live;
         this.renderManager = renderManager;
         this.textureSizeMagnitude = textureSizeMagnitude;
 
@@ -78,12 +115,57 @@ public class EnvironmentNode extends Node {
         return environment;
     }
 
+    /**
+     * The distance beyond which nothing is rendered into the cube map.
+     */
+    public float getFarPlane() {
+        return farPlane;
+    }
+
+    /**
+     * Whether the cube map is re-rendered every frame.
+     */
+    public boolean isLive() {
+        return live;
+    }
+
+    /**
+     * Makes a static environment node render its cube map once more, for
+     * example because the surrounding scene has changed. Has no effect on live
+     * nodes.
+     */
+    public void requestBake() {
+        pendingBakeFrames = 1;
+    }
+
+    /**
+     * Changes the distance beyond which nothing is rendered into the cube map.
+     * Keeping this short makes the cameras cull most of a large level.
+     */
+    public void setFarPlane(final float farPlane) {
+        this.farPlane = farPlane;
+        for (final Camera camera : environmentCameras) {
+            if (camera != null) {
+                updateFrustum(camera);
+            }
+        }
+        requestBake();
+    }
+
     @Override
     public void updateGeometricState() {
+        super.updateGeometricState();
+
+        final boolean render = live || pendingBakeFrames > 0;
         for (int i = 0; i < 6; i++) {
-            environmentCameras[i].setLocation(getWorldTranslation());
+            if (render) {
+                environmentCameras[i].setLocation(getWorldTranslation());
+            }
+            environmentViews[i].setEnabled(render);
+        }
+        if (pendingBakeFrames > 0) {
+            pendingBakeFrames--;
         }
-        super.updateGeometricState();
     }
 
     private void updateRenderer(final int textureSizeMagnitude) {
@@ -96,12 +178,17 @@ public class EnvironmentNode extends Node {
         environment.setValue(env);
 
         for (int i = 0; i < 6; i++) {
-            environmentCameras[i] = new Camera(textureSize, textureSize);
-            environmentCameras[i].setFrustum(0.0625f, 1024.0f, -0.0625f,
-                    0.0625f, 0.0625f, -0.0625f);
+            // The pre-views keep rendering through the cameras they were
+            // created with, so those are reused when the size changes
+            if (environmentCameras[i] == null) {
+                environmentCameras[i] = new Camera(textureSize, textureSize);
+                environmentCameras[i].setAxes(cameraAngles[i][0],
+                        cameraAngles[i][1], cameraAngles[i][2]);
+            } else {
+                environmentCameras[i].resize(textureSize, textureSize, false);
+            }
+            updateFrustum(environmentCameras[i]);
             environmentCameras[i].setLocation(getWorldTranslation());
-            environmentCameras[i].setAxes(cameraAngles[i][0],
-                    cameraAngles[i][1], cameraAngles[i][2]);
 
             environmentBuffers[i] =
                     new FrameBuffer(textureSize, textureSize, 1);
@@ -109,8 +196,6 @@ public class EnvironmentNode extends Node {
                     TextureCubeMap.Face.values()[i]);
             environmentBuffers[i].setDepthBuffer(Format.Depth);
 
-            environmentCameras[i].resize(textureSize, textureSize, false);
-
             if (environmentViews[i] == null) {
                 environmentViews[i] =
                         renderManager.createPreView(getName() + " environment "
@@ -119,8 +204,17 @@ public class EnvironmentNode extends Node {
             environmentViews[i].setClearFlags(true, true, true);
             environmentViews[i].setBackgroundColor(ColorRGBA.Black);
             environmentViews[i].setOutputFrameBuffer(environmentBuffers[i]);
-            environmentViews[i].attachScene(root);
+            if (!environmentViews[i].getScenes().contains(root)) {
+                environmentViews[i].attachScene(root);
+            }
+            environmentViews[i].setEnabled(live);
         }
+        requestBake();
+    }
+
+    private void updateFrustum(final Camera camera) {
+        camera.setFrustum(NEAR_PLANE, farPlane, -NEAR_PLANE, NEAR_PLANE,
+                NEAR_PLANE, -NEAR_PLANE);
     }
 
     @Override
@@ -0,0 +1,133 @@
+package org.marble.graphics;
+
+import java.util.List;
+import java.util.Map;
+
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.RenderManager;
+import com.jme3.scene.Node;
+import com.jme3.scene.Spatial;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import org.marble.frp.Reactive;
+
+/**
+ * A pool of static environment nodes ("probes") that are shared between
+ * reflectors that never move.
+ * 
+ * <p>
+ * Each probe bakes its cube map once; reflectors that are close to an existing
+ * probe reuse it instead of creating a new one.
+ */
+public class EnvironmentProbes {
+    // The far plane of the probes' cameras
+    private float farPlane = EnvironmentNode.DEFAULT_FAR_PLANE;
+
+    // The maximum distance between a reflector and a probe it may share
+    private final float sharingDistance;
+
+    // The node that keeps the probes in the scene graph
+    private final Node probeNode = new Node("environment probes");
+
+    // All of the currently allocated probes
+    private final List<EnvironmentNode> probes = Lists.newArrayList();
+
+    // How many reflectors are using each probe
+    private final Map<EnvironmentNode, Integer> references = Maps
+            .newIdentityHashMap();
+
+    private final RenderManager renderManager;
+    private final Spatial root;
+
+    /**
+     * Creates a new probe pool.
+     * 
+     * @param root
+     *            The scene that the probes should reflect, which must be
+     *            updated every frame.
+     * @param renderManager
+     *            The render manager that will render the probes.
+     * @param sharingDistance
+     *            The maximum distance between a reflector and a probe that it
+     *            may share.
+     */
+    public EnvironmentProbes(final Node root,
+            final RenderManager renderManager, final float sharingDistance) {
+        this.root = root;
+        this.renderManager = renderManager;
+        this.sharingDistance = sharingDistance;
+        root.attachChild(probeNode);
+    }
+
+    /**
+     * Changes the far plane of all current and future probes.
+     */
+    public void setFarPlane(final float farPlane) {
+        this.farPlane = farPlane;
+        for (final EnvironmentNode probe : probes) {
+            probe.setFarPlane(farPlane);
+        }
+    }
+
+    /**
+     * Retrieves a probe for a reflector at the given location, creating it if
+     * there is no probe close enough. Every acquired probe must eventually be
+     * {@link #release(EnvironmentNode) released}.
+     * 
+     * @param location
+     *            The world location of the reflector.
+     * @param textureSizeMagnitude
+     *            How large (2^n) the cube map of a new probe should be.
+     */
+    public EnvironmentNode acquire(final Vector3f location,
+            final Reactive<Integer> textureSizeMagnitude) {
+        final float maxDistanceSquared = sharingDistance * sharingDistance;
+        for (final EnvironmentNode probe : probes) {
+            final float distanceSquared =
+                    probe.getLocalTranslation().distanceSquared(location);
+            if (distanceSquared <= maxDistanceSquared) {
+                references.put(probe, references.get(probe) + 1);
+                return probe;
+            }
+        }
+
+        final EnvironmentNode probe =
+                new EnvironmentNode(root, renderManager, textureSizeMagnitude,
+                        false);
+        probe.setName("probe " + probes.size());
+        probe.setFarPlane(farPlane);
+        probe.setLocalTranslation(location);
+        probeNode.attachChild(probe);
+        probes.add(probe);
+        references.put(probe, 1);
+        return probe;
+    }
+
+    /**
+     * Makes every probe render its cube map once more.
+     */
+    public void rebake() {
+        for (final EnvironmentNode probe : probes) {
+            probe.requestBake();
+        }
+    }
+
+    /**
+     * Stops using a probe, destroying it if no other reflector uses it.
+     */
+    public void release(final EnvironmentNode probe) {
+        final Integer count = references.get(probe);
+        if (count == null)
+            return;
+        if (count > 1) {
+            references.put(probe, count - 1);
+        } else {
+            references.remove(probe);
+            probes.remove(probe);
+            probeNode.detachChild(probe);
+            probe.destroy();
+        }
+    }
+}
@@ -16,7 +16,10 @@ import java.nio.IntBuffer;
 import com.jme3.math.FastMath;
 import com.jme3.math.Vector3f;
 import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.scene.VertexBuffer.Format;
 import com.jme3.scene.VertexBuffer.Type;
+import com.jme3.scene.VertexBuffer.Usage;
 import com.jme3.util.BufferUtils;
 
 /**
@@ -27,6 +30,13 @@ import com.jme3.util.BufferUtils;
  * Shared vertices are not retained, so numerical errors may produce cracks
  * between polygons at high subdivision levels.
  * <p/>
+ * Every intermediate subdivision level is kept as a LOD level of the mesh, with
+ * LOD level 0 being the most detailed one. All levels share one vertex buffer:
+ * the subdivided vertices come first, in the order they were created, followed
+ * by the vertices that each level duplicates along the texture seam. A coarser
+ * level therefore references a prefix of the subdivided vertices plus its own
+ * seam duplicates at the end of the buffer.
+ * <p/>
  * Initial idea and text from C-Sourcecode by Jon Leech 3/24/89
  * <p/>
  * Ported to jMonkeyEngine by David Flemström 2012-04-19
@@ -92,6 +102,39 @@ public class GeoSphere extends Mesh {
         return current;
     }
 
+    /**
+     * Builds the index buffer for one subdivision level, duplicating vertices
+     * along the texture seam.
+     */
+    private IntBuffer createIndexBuffer(final Triangle[] triangles) {
+        final FloatBuffer vertBuf =
+                (FloatBuffer) getBuffer(Type.Position).getData();
+        final IntBuffer indexBuffer =
+                BufferUtils.createIntBuffer(triangles.length * 3);
+
+        int carryIntIndex = vertBuf.position() / 3;
+        for (final Triangle triangle : triangles) {
+            for (final int aPt : triangle.pt) {
+                final Vector3f point = new Vector3f();
+                BufferUtils.populateFromBuffer(point, vertBuf, aPt);
+                if (point.getX() > 0 && point.getY() == 0) {
+                    // Find out which 'y' side the triangle is on
+                    final float yCenter =
+                            (vertBuf.get(triangle.pt[0] * 3 + 1)
+                                    + vertBuf.get(triangle.pt[1] * 3 + 1) + vertBuf
+                                    .get(triangle.pt[2] * 3 + 1)) / 3.0f;
+                    if (yCenter > 0.0) {
+                        put(point, true);
+                        indexBuffer.put(carryIntIndex++);
+                        continue;
+                    }
+                }
+                indexBuffer.put(aPt);
+            }
+        }
+        return indexBuffer;
+    }
+
     /**
      * Compute the average of two vectors.
      * 
@@ -154,8 +197,6 @@ public class GeoSphere extends Mesh {
     private void updateGeometry() {
         final int initialTriangleCount = usingIcosahedron ? 20 : 8;
         final int initialVertexCount = usingIcosahedron ? 12 : 6;
-        // number of triangles = initialTriangleCount * 4^(maxlevels-1)
-        final int tris = initialTriangleCount << (maxlevels - 1) * 2;
 
         // number of vertBuf = (initialVertexCount + initialTriangleCount*4 +
         // initialTriangleCount*4*4 + ...)
@@ -269,6 +310,9 @@ public class GeoSphere extends Mesh {
         final Vector3f pt1 = new Vector3f();
         final Vector3f pt2 = new Vector3f();
 
+        final Triangle[][] levels = new Triangle[maxlevels][];
+        levels[0] = old;
+
         /* Subdivide each starting triangle (maxlevels - 1) times */
         for (int level = 1; level < maxlevels; level++) {
             /* Allocate a next triangle[] */
@@ -347,30 +391,23 @@ public class GeoSphere extends Mesh {
 
             /* Continue subdividing next triangles */
             old = next;
+            levels[level] = next;
         }
 
-        final IntBuffer indexBuffer = BufferUtils.createIntBuffer(tris * 3);
-        setBuffer(Type.Index, 3, indexBuffer);
+        setBuffer(Type.Index, 3, createIndexBuffer(old));
 
-        int carryIntIndex = vertBuf.position() / 3;
-        for (final Triangle triangle : old) {
-            for (final int aPt : triangle.pt) {
-                final Vector3f point = new Vector3f();
-                BufferUtils.populateFromBuffer(point, vertBuf, aPt);
-                if (point.getX() > 0 && point.getY() == 0) {
-                    // Find out which 'y' side the triangle is on
-                    final float yCenter =
-                            (vertBuf.get(triangle.pt[0] * 3 + 1)
-                                    + vertBuf.get(triangle.pt[1] * 3 + 1) + vertBuf
-                                    .get(triangle.pt[2] * 3 + 1)) / 3.0f;
-                    if (yCenter > 0.0) {
-                        put(point, true);
-                        indexBuffer.put(carryIntIndex++);
-                        continue;
-                    }
-                }
-                indexBuffer.put(aPt);
+        if (maxlevels > 1) {
+            final VertexBuffer[] lodLevels = new VertexBuffer[maxlevels];
+            lodLevels[0] = getBuffer(Type.Index);
+            for (int lod = 1; lod < maxlevels; lod++) {
+                final VertexBuffer lodLevel = new VertexBuffer(Type.Index);
+                lodLevel.setupData(Usage.Static, 3, Format.UnsignedInt,
+                        createIndexBuffer(levels[maxlevels - 1 - lod]));
+                lodLevels[lod] = lodLevel;
             }
+            setLodLevels(lodLevels);
+        } else {
+            setLodLevels(null);
         }
         updateBound();
     }
@@ -0,0 +1,198 @@
+package org.marble.graphics;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import com.jme3.asset.AssetManager;
+import com.jme3.bounding.BoundingBox;
+import com.jme3.material.Material;
+import com.jme3.math.ColorRGBA;
+import com.jme3.math.FastMath;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.queue.RenderQueue.Bucket;
+import com.jme3.renderer.queue.RenderQueue.ShadowMode;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer.Type;
+import com.jme3.texture.Texture;
+import com.jme3.util.BufferUtils;
+
+/**
+ * A particle emitter whose particles are animated entirely in the vertex
+ * shader.
+ * 
+ * <p>
+ * Every particle is a quad with a static set of random values. The shader
+ * derives the position, color and size of each particle from those values and
+ * the time since the emitter started, so the only thing that changes on the
+ * CPU each frame is a single uniform. The parameters mirror those of
+ * {@link com.jme3.effect.ParticleEmitter} with the default particle
+ * influencer, except that particles move in the local space of the emitter.
+ */
+public class GpuParticleEmitter extends Geometry {
+    // The extent of the bounds of the emitter in addition to how far the
+    // particles travel, to account for their size
+    private static final float BOUND_MARGIN = 0.5f;
+
+    private float endSize = 2;
+    private float highLife = 7;
+    private final Vector3f gravity = new Vector3f();
+    private final Vector3f initialVelocity = new Vector3f();
+    private float startSize = 0.2f;
+
+    // The time since the emitter started or last burst
+    private float time = 0;
+
+    /**
+     * Creates a new emitter that continuously re-emits its particles.
+     * 
+     * @param name
+     *            The name of the emitter.
+     * @param assetManager
+     *            The asset manager to load the material from.
+     * @param texture
+     *            The texture of each particle, or {@code null} to draw plain
+     *            quads.
+     * @param numParticles
+     *            The number of particles that are alive at any one time.
+     */
+    public GpuParticleEmitter(final String name,
+            final AssetManager assetManager, final Texture texture,
+            final int numParticles) {
+        super(name, createMesh(numParticles));
+        final Material material =
+                new Material(assetManager, "MatDefs/Effect/GpuParticle.j3md");
+        if (texture != null) {
+            material.setTexture("Texture", texture);
+        }
+        setMaterial(material);
+        setShadowMode(ShadowMode.Off);
+        setQueueBucket(Bucket.Transparent);
+        updateBound();
+    }
+
+    /**
+     * Emits all particles at once, and stops emitting them afterwards.
+     */
+    public void emitAllParticles() {
+        getMaterial().setBoolean("Burst", true);
+        time = 0;
+        getMaterial().setFloat("Time", time);
+    }
+
+    /**
+     * @return whether all of the particles of a burst have died; continuous
+     *         emitters never finish
+     */
+    public boolean isFinished() {
+        return getMaterial().getParam("Burst") != null && time > highLife;
+    }
+
+    public void setEndColor(final ColorRGBA endColor) {
+        getMaterial().setColor("EndColor", endColor);
+    }
+
+    public void setEndSize(final float endSize) {
+        this.endSize = endSize;
+        getMaterial().setFloat("EndSize", endSize);
+        updateBound();
+    }
+
+    public void setGravity(final float x, final float y, final float z) {
+        gravity.set(x, y, z);
+        getMaterial().setVector3("Gravity", gravity);
+        updateBound();
+    }
+
+    public void setHighLife(final float highLife) {
+        this.highLife = highLife;
+        getMaterial().setFloat("HighLife", highLife);
+        updateBound();
+    }
+
+    public void setInitialVelocity(final Vector3f initialVelocity) {
+        this.initialVelocity.set(initialVelocity);
+        getMaterial().setVector3("InitialVelocity", this.initialVelocity);
+        updateBound();
+    }
+
+    public void setLowLife(final float lowLife) {
+        getMaterial().setFloat("LowLife", lowLife);
+    }
+
+    public void setStartColor(final ColorRGBA startColor) {
+        getMaterial().setColor("StartColor", startColor);
+    }
+
+    public void setStartSize(final float startSize) {
+        this.startSize = startSize;
+        getMaterial().setFloat("StartSize", startSize);
+        updateBound();
+    }
+
+    public void setVelocityVariation(final float velocityVariation) {
+        getMaterial().setFloat("VelocityVariation", velocityVariation);
+    }
+
+    @Override
+    public void updateLogicalState(final float tpf) {
+        super.updateLogicalState(tpf);
+        time += tpf;
+        getMaterial().setFloat("Time", time);
+    }
+
+    @Override
+    public void updateModelBound() {
+        // The bound depends on how the particles move, not on the mesh
+        updateBound();
+    }
+
+    /**
+     * Encloses everywhere that a particle can reach during its life.
+     */
+    private void updateBound() {
+        // No component of a varied velocity is longer than this
+        final float speed = initialVelocity.length();
+        final float fall = 0.5f * gravity.length() * highLife * highLife;
+        final float extent =
+                speed * highLife + fall + Math.max(startSize, endSize)
+                        + BOUND_MARGIN;
+        final BoundingBox bound =
+                new BoundingBox(Vector3f.ZERO, extent, extent, extent);
+        setModelBound(bound);
+    }
+
+    private static Mesh createMesh(final int numParticles) {
+        final FloatBuffer positions =
+                BufferUtils.createFloatBuffer(numParticles * 4 * 3);
+        final FloatBuffer corners =
+                BufferUtils.createFloatBuffer(numParticles * 4 * 2);
+        final FloatBuffer seeds =
+                BufferUtils.createFloatBuffer(numParticles * 4 * 3);
+        final IntBuffer indices =
+                BufferUtils.createIntBuffer(numParticles * 6);
+
+        for (int i = 0; i < numParticles; i++) {
+            final float life = FastMath.nextRandomFloat();
+            final float phase = (i + FastMath.nextRandomFloat()) / numParticles;
+            final float salt = FastMath.nextRandomFloat();
+            for (int corner = 0; corner < 4; corner++) {
+                positions.put(0).put(0).put(0);
+                corners.put(corner & 1).put(corner >> 1);
+                seeds.put(life).put(phase).put(salt);
+            }
+
+            final int base = i * 4;
+            indices.put(base).put(base + 1).put(base + 3);
+            indices.put(base).put(base + 3).put(base + 2);
+        }
+
+        final Mesh mesh = new Mesh();
+        mesh.setBuffer(Type.Position, 3, positions);
+        mesh.setBuffer(Type.TexCoord, 2, corners);
+        mesh.setBuffer(Type.TexCoord2, 3, seeds);
+        mesh.setBuffer(Type.Index, 3, indices);
+        mesh.updateCounts();
+        return mesh;
+    }
+}
@@ -0,0 +1,239 @@
+package org.marble.graphics;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.jme3.bounding.BoundingSphere;
+import com.jme3.bounding.BoundingVolume;
+import com.jme3.light.Light;
+import com.jme3.light.LightList;
+import com.jme3.light.PointLight;
+import com.jme3.material.Material;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.RenderManager;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.SceneGraphVisitorAdapter;
+import com.jme3.scene.Spatial;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Assigns lights only to the spatials that are inside of their radius.
+ * 
+ * <p>
+ * Spatials that receive at most {@link #SINGLE_PASS_LIGHTS} lights are
+ * switched to the single-pass technique of their materials, if there is one,
+ * so that they are drawn once instead of once per light. Materials are
+ * assumed not to be shared between spatials that are added separately.
+ */
+public class LightCuller {
+    /**
+     * The number of lights that a single-pass technique handles in one draw.
+     */
+    public static final int SINGLE_PASS_LIGHTS = 4;
+
+    /**
+     * The name of the single-pass lighting techniques.
+     */
+    public static final String SINGLE_PASS_TECHNIQUE = "SinglePass";
+
+    // How far lights may move before the static spatials are re-evaluated
+    private static final float MOVEMENT_TOLERANCE = 0.5f;
+
+    // Spatials whose lights are re-evaluated every frame
+    private final Set<Spatial> dynamicSpatials = Sets.newLinkedHashSet();
+
+    // Whether the lights of the static spatials must be re-evaluated
+    private boolean dirty = false;
+
+    // The lights to assign, and where they were when they were last assigned
+    private final Map<Light, Vector3f> lights = Maps.newLinkedHashMap();
+
+    private final RenderManager renderManager;
+
+    // Spatials whose lights are only re-evaluated when something changes
+    private final Set<Spatial> staticSpatials = Sets.newLinkedHashSet();
+
+    // Reused by affects(), so that no sphere is allocated per light
+    private final BoundingSphere tempSphere = new BoundingSphere();
+
+    // Reused by assign(), so that no list is allocated per spatial
+    private final List<Light> wanted = Lists.newArrayList();
+
+    /**
+     * Creates a new light culler.
+     * 
+     * @param renderManager
+     *            The render manager that is used to select techniques.
+     */
+    public LightCuller(final RenderManager renderManager) {
+        this.renderManager = renderManager;
+    }
+
+    /**
+     * Starts assigning a light to the spatials within its radius.
+     */
+    public void addLight(final Light light) {
+        lights.put(light, positionOf(light).clone());
+        dirty = true;
+    }
+
+    /**
+     * Starts assigning lights to a spatial. It will be drawn in a single pass
+     * until it is assigned too many lights.
+     * 
+     * @param dynamic
+     *            Whether the spatial moves, so that its lights must be
+     *            re-evaluated every frame.
+     */
+    public void addSpatial(final Spatial spatial, final boolean dynamic) {
+        selectTechniques(spatial, 0);
+        if (dynamic) {
+            dynamicSpatials.add(spatial);
+        } else {
+            staticSpatials.add(spatial);
+            dirty = true;
+        }
+    }
+
+    /**
+     * Stops assigning a light, and removes it from all spatials.
+     */
+    public void removeLight(final Light light) {
+        if (lights.remove(light) == null)
+            return;
+        for (final Spatial spatial : staticSpatials) {
+            spatial.removeLight(light);
+        }
+        for (final Spatial spatial : dynamicSpatials) {
+            spatial.removeLight(light);
+        }
+        dirty = true;
+    }
+
+    /**
+     * Stops assigning lights to a spatial, and removes the lights it had.
+     */
+    public void removeSpatial(final Spatial spatial) {
+        if (staticSpatials.remove(spatial)
+                || dynamicSpatials.remove(spatial)) {
+            for (final Light light : lights.keySet()) {
+                spatial.removeLight(light);
+            }
+        }
+    }
+
+    /**
+     * Re-evaluates the lights of the dynamic spatials, and of the static
+     * spatials if lights or spatials have changed. This should be done after
+     * the geometric state has been updated, since the world bounds of the
+     * spatials are used.
+     * 
+     * @return whether the lights of any spatial changed, in which case the
+     *         geometric state must be updated again
+     */
+    public boolean update() {
+        for (final Map.Entry<Light, Vector3f> entry : lights.entrySet()) {
+            final Vector3f position = positionOf(entry.getKey());
+            if (position.distance(entry.getValue()) > MOVEMENT_TOLERANCE) {
+                entry.getValue().set(position);
+                dirty = true;
+            }
+        }
+
+        boolean changed = false;
+        if (dirty) {
+            dirty = false;
+            for (final Spatial spatial : staticSpatials) {
+                changed |= assign(spatial);
+            }
+        }
+        for (final Spatial spatial : dynamicSpatials) {
+            changed |= assign(spatial);
+        }
+        return changed;
+    }
+
+    private boolean affects(final Light light, final BoundingVolume bound) {
+        if (!(light instanceof PointLight))
+            return true;
+        final PointLight pointLight = (PointLight) light;
+        if (pointLight.getRadius() <= 0)
+            return true;
+        tempSphere.setCenter(pointLight.getPosition());
+        tempSphere.setRadius(pointLight.getRadius() + MOVEMENT_TOLERANCE);
+        return bound.intersectsSphere(tempSphere);
+    }
+
+    private boolean assign(final Spatial spatial) {
+        final BoundingVolume bound = spatial.getWorldBound();
+        wanted.clear();
+        for (final Light light : lights.keySet()) {
+            if (bound == null || affects(light, bound)) {
+                wanted.add(light);
+            }
+        }
+
+        // The assigned lights are the managed lights in the local list; there
+        // are only ever a few of either, so they are compared by searching
+        final LightList current = spatial.getLocalLightList();
+        int assignedCount = 0;
+        for (int i = 0; i < current.size(); i++) {
+            if (lights.containsKey(current.get(i))) {
+                assignedCount++;
+            }
+        }
+        boolean same = assignedCount == wanted.size();
+        for (int i = 0; same && i < wanted.size(); i++) {
+            same = contains(current, wanted.get(i));
+        }
+        if (same)
+            return false;
+
+        for (int i = current.size() - 1; i >= 0; i--) {
+            final Light light = current.get(i);
+            if (lights.containsKey(light)) {
+                spatial.removeLight(light);
+            }
+        }
+        for (int i = 0; i < wanted.size(); i++) {
+            spatial.addLight(wanted.get(i));
+        }
+        selectTechniques(spatial, wanted.size());
+        return true;
+    }
+
+    private void selectTechniques(final Spatial spatial,
+            final int lightCount) {
+        final String technique =
+                lightCount <= SINGLE_PASS_LIGHTS ? SINGLE_PASS_TECHNIQUE
+                        : "Default";
+        spatial.depthFirstTraversal(new SceneGraphVisitorAdapter() {
+            @Override
+            public void visit(final Geometry geometry) {
+                final Material material = geometry.getMaterial();
+                if (material != null
+                        && material.getMaterialDef().getTechniqueDef(
+                                SINGLE_PASS_TECHNIQUE) != null) {
+                    material.selectTechnique(technique, renderManager);
+                }
+            }
+        });
+    }
+
+    private static boolean contains(final LightList list, final Light light) {
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i) == light)
+                return true;
+        }
+        return false;
+    }
+
+    private static Vector3f positionOf(final Light light) {
+        return light instanceof PointLight ? ((PointLight) light)
+                .getPosition() : Vector3f.ZERO;
+    }
+}
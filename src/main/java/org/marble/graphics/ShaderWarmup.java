@@ -0,0 +1,163 @@
+package org.marble.graphics;
+
+import java.util.Set;
+import java.util.logging.Logger;
+
+import com.jme3.material.Material;
+import com.jme3.material.MaterialDef;
+import com.jme3.material.Technique;
+import com.jme3.renderer.RenderManager;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.SceneGraphVisitorAdapter;
+import com.jme3.scene.Spatial;
+import com.jme3.shader.Shader;
+import com.jme3.shader.Shader.ShaderSource;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
+/**
+ * Compiles the shaders of a scene ahead of time, so that they aren't compiled
+ * in the middle of a frame the first time they become visible.
+ * 
+ * <p>
+ * Every compiled combination of material definition, technique and defines is
+ * recorded. Spatials that are added later can be checked against the record,
+ * so that a hitch caused by a shader that wasn't warmed up can be attributed
+ * to the combination that caused it.
+ */
+public class ShaderWarmup {
+    // The techniques that may be used to draw a material, besides the
+    // default one
+    private static final ImmutableList<String> TECHNIQUES = ImmutableList.of(
+            LightCuller.SINGLE_PASS_TECHNIQUE, "PreNormalPass");
+
+    private static final Logger log = Logger.getLogger(ShaderWarmup.class
+            .getName());
+
+    // The combinations that have been compiled
+    private final Set<String> compiled = Sets.newLinkedHashSet();
+
+    // The combinations that were used without being compiled ahead of time
+    private final Set<String> missed = Sets.newLinkedHashSet();
+
+    private final RenderManager renderManager;
+
+    /**
+     * Creates a new shader warm-up.
+     * 
+     * @param renderManager
+     *            The render manager that is used to compile shaders.
+     */
+    public ShaderWarmup(final RenderManager renderManager) {
+        this.renderManager = renderManager;
+    }
+
+    /**
+     * Checks whether the shaders that a spatial is currently drawn with have
+     * been warmed up, and logs the combinations that haven't. Each combination
+     * is only logged once.
+     */
+    public void check(final Spatial spatial) {
+        spatial.depthFirstTraversal(new SceneGraphVisitorAdapter() {
+            @Override
+            public void visit(final Geometry geometry) {
+                final Material material = geometry.getMaterial();
+                if (material == null)
+                    return;
+                if (material.getActiveTechnique() == null) {
+                    material.selectTechnique("Default", renderManager);
+                }
+
+                final String key = keyOf(material);
+                if (!compiled.contains(key) && missed.add(key)) {
+                    log.info("Shader was not warmed up: " + key + " (used by "
+                            + geometry.getName() + ")");
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the combinations of material definition, technique and defines
+     *         that have been compiled, in the order they were compiled
+     */
+    public ImmutableSet<String> getCompiled() {
+        return ImmutableSet.copyOf(compiled);
+    }
+
+    /**
+     * @return the combinations that were found by {@link #check(Spatial)}
+     *         without having been warmed up
+     */
+    public ImmutableSet<String> getMissed() {
+        return ImmutableSet.copyOf(missed);
+    }
+
+    /**
+     * Compiles every technique of every material in a scene. The technique
+     * that each material had selected is selected again afterwards. This must
+     * be done on the rendering thread.
+     */
+    public void warmUp(final Spatial scene) {
+        final int before = compiled.size();
+        scene.depthFirstTraversal(new SceneGraphVisitorAdapter() {
+            @Override
+            public void visit(final Geometry geometry) {
+                final Material material = geometry.getMaterial();
+                if (material != null) {
+                    warmUp(material);
+                }
+            }
+        });
+        log.fine("Warmed up " + (compiled.size() - before)
+                + " new shader combinations");
+    }
+
+    private void warmUp(final Material material) {
+        final MaterialDef def = material.getMaterialDef();
+        final Technique active = material.getActiveTechnique();
+        final String activeName =
+                active == null ? "Default" : active.getDef().getName();
+
+        warmUp(material, "Default");
+        for (final String technique : TECHNIQUES) {
+            if (def.getTechniqueDef(technique) != null) {
+                warmUp(material, technique);
+            }
+        }
+        material.selectTechnique(activeName, renderManager);
+    }
+
+    private void warmUp(final Material material, final String technique) {
+        material.selectTechnique(technique, renderManager);
+        material.preload(renderManager);
+        compiled.add(keyOf(material));
+    }
+
+    /**
+     * Describes the shader combination that a material is drawn with using
+     * its active technique.
+     */
+    private static String keyOf(final Material material) {
+        final Technique technique = material.getActiveTechnique();
+        final StringBuilder builder = new StringBuilder();
+        builder.append(material.getMaterialDef().getName());
+        builder.append('/');
+        builder.append(technique.getDef().getName());
+
+        final Shader shader = technique.getShader();
+        if (shader != null && !shader.getSources().isEmpty()) {
+            final ShaderSource source = shader.getSources().iterator().next();
+            final String defines = source.getDefines();
+            if (defines != null && !defines.trim().isEmpty()) {
+                builder.append(" [");
+                builder.append(defines.replace("#define ", "").trim()
+                        .replace('\n', ','));
+                builder.append(']');
+            }
+        }
+        return builder.toString();
+    }
+}
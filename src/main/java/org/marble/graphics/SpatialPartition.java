@@ -0,0 +1,368 @@
+package org.marble.graphics;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.jme3.bounding.BoundingVolume;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.scene.Node;
+import com.jme3.scene.Spatial;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * An octree of nodes for spatials that never move.
+ * 
+ * <p>
+ * Each cell of the octree is a node whose bounds enclose all of the spatials
+ * below it, so the renderer can cull a whole region with a single test. The
+ * tree is built lazily from the bounds of the current spatials. Spatials that
+ * are added or removed after that are inserted into or removed from the
+ * affected leaf, and the tree is only rebuilt once so many spatials have
+ * changed that it has probably become unbalanced.
+ */
+public class SpatialPartition {
+    /**
+     * How many spatials were culled or passed on to be rendered by one camera
+     * during one frame.
+     */
+    public static class Statistics {
+        private int culled;
+        private int visible;
+
+        /**
+         * @return the number of spatials in cells that were culled
+         */
+        public int getCulled() {
+            return culled;
+        }
+
+        /**
+         * @return the number of spatials in cells that were visible
+         */
+        public int getVisible() {
+            return visible;
+        }
+    }
+
+    private class Cell extends Node {
+        // The center of the region that this cell splits
+        private final Vector3f center;
+
+        // How many spatials this cell contains, directly or in sub-cells
+        private int count;
+
+        // How deep this cell is in the octree
+        private final int depth;
+
+        // Half the size of the region that this cell splits
+        private final Vector3f extent;
+
+        // The sub-cells of this cell by octant, or null if this cell
+        // directly contains spatials
+        private final Cell[] octants;
+
+        public Cell(final String name, final Vector3f center,
+                final Vector3f extent, final int depth, final boolean leaf) {
+            super(name);
+            this.center = center;
+            this.extent = extent;
+            this.depth = depth;
+            octants = leaf ? null : new Cell[8];
+        }
+
+        @Override
+        public boolean checkCulling(final Camera camera) {
+            final boolean visible = super.checkCulling(camera);
+            final Statistics stats = getStatistics(camera);
+            if (!visible) {
+                stats.culled += count;
+            } else if (octants == null) {
+                stats.visible += count;
+            }
+            return visible;
+        }
+    }
+
+    // The maximum depth of the octree
+    private static final int MAX_DEPTH = 6;
+
+    // How many spatials a cell may contain before it is split
+    private static final int MAX_LEAF_SIZE = 8;
+
+    // How many spatials have been added or removed since the octree was
+    // last rebuilt
+    private int changes = 0;
+
+    // Whether the octree must be rebuilt before the next frame
+    private boolean dirty = false;
+
+    // The node that holds the octree in the scene graph
+    private final Node node;
+
+    // The root cell of the octree, or null if it hasn't been built
+    private Cell root = null;
+
+    // All of the partitioned spatials
+    private final Set<Spatial> spatials = Sets.newLinkedHashSet();
+
+    // The culling statistics of the current frame, per camera
+    private final Map<Camera, Statistics> statistics = Maps
+            .newIdentityHashMap();
+
+    /**
+     * Creates a new, empty partition.
+     * 
+     * @param name
+     *            The name of the node that will hold the octree.
+     */
+    public SpatialPartition(final String name) {
+        node = new Node(name);
+    }
+
+    /**
+     * Adds a spatial to the partition. The spatial should not move while it is
+     * partitioned; culling stays correct if it does, but less effective.
+     */
+    public void add(final Spatial spatial) {
+        if (spatials.add(spatial) && !markChanged()) {
+            insert(spatial);
+        }
+    }
+
+    /**
+     * @return the node that holds the octree, which should be attached to the
+     *         scene
+     */
+    public Node getNode() {
+        return node;
+    }
+
+    /**
+     * Retrieves the culling statistics of the current frame for a camera.
+     */
+    public Statistics getStatistics(final Camera camera) {
+        Statistics stats = statistics.get(camera);
+        if (stats == null) {
+            stats = new Statistics();
+            statistics.put(camera, stats);
+        }
+        return stats;
+    }
+
+    /**
+     * Rebuilds the octree if spatials have been added or removed since it was
+     * last built.
+     */
+    public void rebuildIfNeeded() {
+        if (!dirty)
+            return;
+        dirty = false;
+        changes = 0;
+
+        node.detachAllChildren();
+        root = null;
+        if (spatials.isEmpty())
+            return;
+
+        // The octree splits the region spanned by the centers of the spatials
+        final Vector3f min = new Vector3f(Float.POSITIVE_INFINITY,
+                Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY);
+        final Vector3f max = new Vector3f(Float.NEGATIVE_INFINITY,
+                Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY);
+        for (final Spatial spatial : spatials) {
+            spatial.removeFromParent();
+            spatial.updateGeometricState();
+            final Vector3f position = positionOf(spatial);
+            min.minLocal(position);
+            max.maxLocal(position);
+        }
+        final Vector3f center = min.add(max).multLocal(0.5f);
+        final Vector3f extent = max.subtract(min).multLocal(0.5f);
+        root = createCell("0", Lists.newArrayList(spatials), center, extent,
+                0);
+        node.attachChild(root);
+    }
+
+    /**
+     * Removes a spatial from the partition.
+     */
+    public void remove(final Spatial spatial) {
+        if (!spatials.remove(spatial))
+            return;
+        final Node parent = spatial.getParent();
+        spatial.removeFromParent();
+        if (!markChanged() && parent instanceof Cell) {
+            shrink((Cell) parent);
+        }
+    }
+
+    /**
+     * Clears the culling statistics, which should be done before each frame.
+     * The statistics of cameras that didn't render the partition during the
+     * last frame are dropped, so that cameras that are no longer used are
+     * forgotten.
+     */
+    public void resetStatistics() {
+        final Iterator<Statistics> iterator = statistics.values().iterator();
+        while (iterator.hasNext()) {
+            final Statistics stats = iterator.next();
+            if (stats.culled == 0 && stats.visible == 0) {
+                iterator.remove();
+            } else {
+                stats.culled = 0;
+                stats.visible = 0;
+            }
+        }
+    }
+
+    private Cell createCell(final String name, final List<Spatial> contents,
+            final Vector3f center, final Vector3f extent, final int depth) {
+        if (depth >= MAX_DEPTH || contents.size() <= MAX_LEAF_SIZE) {
+            final Cell cell = new Cell(name, center, extent, depth, true);
+            for (final Spatial spatial : contents) {
+                cell.attachChild(spatial);
+            }
+            cell.count = contents.size();
+            return cell;
+        }
+
+        final List<List<Spatial>> octants = Lists.newArrayListWithCapacity(8);
+        for (int i = 0; i < 8; i++) {
+            octants.add(Lists.<Spatial> newArrayList());
+        }
+        for (final Spatial spatial : contents) {
+            octants.get(octantOf(positionOf(spatial), center)).add(spatial);
+        }
+
+        final Cell cell = new Cell(name, center, extent, depth, false);
+        final Vector3f childExtent = extent.mult(0.5f);
+        for (int i = 0; i < 8; i++) {
+            final List<Spatial> octant = octants.get(i);
+            if (octant.isEmpty()) {
+                continue;
+            }
+            cell.octants[i] =
+                    createCell(name + i, octant, octantCenter(center,
+                            childExtent, i), childExtent, depth + 1);
+            cell.attachChild(cell.octants[i]);
+        }
+        cell.count = contents.size();
+        return cell;
+    }
+
+    /**
+     * Puts a spatial into the leaf of the built octree that its position falls
+     * into, creating the leaf if needed, and splits the leaf if it has become
+     * too large.
+     */
+    private void insert(final Spatial spatial) {
+        spatial.removeFromParent();
+        spatial.updateGeometricState();
+        final Vector3f position = positionOf(spatial);
+
+        Cell cell = root;
+        while (cell.octants != null) {
+            cell.count++;
+            final int octant = octantOf(position, cell.center);
+            if (cell.octants[octant] == null) {
+                final Vector3f childExtent = cell.extent.mult(0.5f);
+                cell.octants[octant] =
+                        new Cell(cell.getName() + octant, octantCenter(
+                                cell.center, childExtent, octant),
+                                childExtent, cell.depth + 1, true);
+                cell.attachChild(cell.octants[octant]);
+            }
+            cell = cell.octants[octant];
+        }
+        cell.attachChild(spatial);
+        cell.count++;
+
+        if (cell.depth < MAX_DEPTH && cell.count > MAX_LEAF_SIZE) {
+            final Cell split =
+                    createCell(cell.getName(), Lists.newArrayList(cell
+                            .getChildren()), cell.center, cell.extent,
+                            cell.depth);
+            replace(cell, split);
+        }
+    }
+
+    /**
+     * Counts a spatial as added or removed, and schedules a rebuild of the
+     * octree if it hasn't been built yet or too many spatials have changed
+     * since it was built.
+     * 
+     * @return whether the octree will be rebuilt, so that it doesn't need to
+     *         be updated
+     */
+    private boolean markChanged() {
+        if (root == null || ++changes > spatials.size() / 2) {
+            dirty = true;
+        }
+        return dirty;
+    }
+
+    /**
+     * Puts a cell in the place of another one in the octree, or just removes
+     * the other one if the replacement is null.
+     */
+    private void replace(final Cell cell, final Cell replacement) {
+        final Node parent = cell.getParent();
+        if (parent instanceof Cell) {
+            final Cell[] octants = ((Cell) parent).octants;
+            for (int i = 0; i < octants.length; i++) {
+                if (octants[i] == cell) {
+                    octants[i] = replacement;
+                }
+            }
+        } else {
+            root = replacement;
+        }
+        cell.removeFromParent();
+        if (replacement != null) {
+            parent.attachChild(replacement);
+        }
+    }
+
+    /**
+     * Updates the counts of a cell that a spatial was removed from and of the
+     * cells above it, and removes the cells that have become empty.
+     */
+    private void shrink(final Cell leaf) {
+        Node parent = leaf;
+        while (parent instanceof Cell) {
+            final Cell cell = (Cell) parent;
+            parent = cell.getParent();
+            cell.count--;
+            if (cell.count == 0 && cell != root) {
+                replace(cell, null);
+            }
+        }
+    }
+
+    private static Vector3f octantCenter(final Vector3f center,
+            final Vector3f childExtent, final int octant) {
+        return new Vector3f((octant & 1) == 0 ? -childExtent.x
+                : childExtent.x, (octant & 2) == 0 ? -childExtent.y
+                : childExtent.y, (octant & 4) == 0 ? -childExtent.z
+                : childExtent.z).addLocal(center);
+    }
+
+    private static Vector3f positionOf(final Spatial spatial) {
+        final BoundingVolume bound = spatial.getWorldBound();
+        return bound == null ? spatial.getWorldTranslation() : bound
+                .getCenter();
+    }
+
+    private static int octantOf(final Vector3f position,
+            final Vector3f center) {
+        return (position.x < center.x ? 0 : 1)
+                | (position.y < center.y ? 0 : 2)
+                | (position.z < center.z ? 0 : 4);
+    }
+}
@@ -0,0 +1,113 @@
+package org.marble.graphics;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import com.jme3.material.Material;
+import com.jme3.math.FastMath;
+import com.jme3.math.Vector3f;
+import com.jme3.texture.Image;
+import com.jme3.texture.Texture;
+import com.jme3.texture.Texture3D;
+import com.jme3.util.BufferUtils;
+
+import org.marble.util.SimplexNoise;
+
+/**
+ * Bakes the procedural grain of the {@code Wood} material into a 3D texture,
+ * so that the shader samples the texture instead of evaluating noise for
+ * every fragment.
+ */
+public final class WoodGrain {
+    /**
+     * The default width, height and depth of baked grain textures.
+     */
+    public static final int DEFAULT_SIZE = 32;
+
+    private WoodGrain() {
+    }
+
+    /**
+     * Bakes the grain of a wood material with its current parameters, and
+     * makes the material use the baked texture. The material must be baked
+     * again if the parameters of the grain change.
+     * 
+     * @param material
+     *            The wood material to bake.
+     * @param extent
+     *            The half-size of the cube around the model origin that the
+     *            texture covers; the grain is clamped outside of it.
+     * @param size
+     *            The width, height and depth of the texture.
+     */
+    public static void bake(final Material material, final float extent,
+            final int size) {
+        final Vector3f trunkCenter1 = getVector3(material, "TrunkCenter1");
+        final Vector3f trunkCenter2 = getVector3(material, "TrunkCenter2");
+        final Vector3f noiseSeed = getVector3(material, "NoiseSeed");
+        final float distanceWeight = getFloat(material, "DistanceWeight");
+        final float noiseScale = getFloat(material, "NoiseScale");
+        final float noiseWeight = getFloat(material, "NoiseWeight");
+
+        final Vector3f axis = trunkCenter2.subtract(trunkCenter1);
+        final float axisLength = axis.length();
+        final Vector3f position = new Vector3f();
+        final Vector3f offset1 = new Vector3f();
+        final Vector3f offset2 = new Vector3f();
+
+        final ByteBuffer data =
+                BufferUtils.createByteBuffer(size * size * size);
+        for (int z = 0; z < size; z++) {
+            for (int y = 0; y < size; y++) {
+                for (int x = 0; x < size; x++) {
+                    // Sample at the texel centers, like the texture lookup
+                    position.set(texelToModel(x, size, extent), texelToModel(
+                            y, size, extent), texelToModel(z, size, extent));
+
+                    // Same as Shaders/Organic/Wood.frag
+                    position.subtract(trunkCenter1, offset1);
+                    position.subtract(trunkCenter2, offset2);
+                    final float distance =
+                            offset1.crossLocal(offset2).length() / axisLength;
+                    final float noise =
+                            SimplexNoise.noise(noiseScale * position.x
+                                    + noiseSeed.x, noiseScale * position.y
+                                    + noiseSeed.y, noiseScale * position.z
+                                    + noiseSeed.z);
+                    final float intensity =
+                            (1 + FastMath.sin(distance * distanceWeight
+                                    + noise * noiseWeight)) / 2;
+                    data.put((byte) Math.round(FastMath.clamp(intensity, 0,
+                            1) * 255));
+                }
+            }
+        }
+        data.flip();
+
+        final ArrayList<ByteBuffer> slices = new ArrayList<ByteBuffer>(1);
+        slices.add(data);
+        final Texture3D texture =
+                new Texture3D(new Image(Image.Format.Luminance8, size, size,
+                        size, slices));
+        texture.setWrap(Texture.WrapMode.EdgeClamp);
+        texture.setMagFilter(Texture.MagFilter.Bilinear);
+        texture.setMinFilter(Texture.MinFilter.BilinearNoMipMaps);
+
+        material.setFloat("GrainExtent", extent);
+        material.setTexture("GrainMap", texture);
+    }
+
+    private static float getFloat(final Material material, final String name) {
+        return (Float) material.getParam(name).getValue();
+    }
+
+    private static Vector3f getVector3(final Material material,
+            final String name) {
+        return (Vector3f) material.getParam(name).getValue();
+    }
+
+    private static float texelToModel(final int texel, final int size,
+            final float extent) {
+        return ((texel + 0.5f) / size * 2 - 1) * extent;
+    }
+}
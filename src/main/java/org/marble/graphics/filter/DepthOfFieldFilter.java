@@ -7,13 +7,21 @@ import com.jme3.post.Filter;
 import com.jme3.renderer.Camera;
 import com.jme3.renderer.RenderManager;
 import com.jme3.renderer.ViewPort;
+import com.jme3.texture.Image.Format;
+import com.jme3.texture.Texture;
+
+import com.google.common.collect.ImmutableList;
 
 public class DepthOfFieldFilter extends Filter {
+    // How strongly the upsampling avoids blending across depth discontinuities
+    private static final float DEPTH_SHARPNESS = 10.0f;
+
     private boolean autoFocus = true;
     private float bias = 0.2f;
     private float coc = 0.03f;
     private boolean depthBlur = true;
     private float depthBlurSize = 1.25f;
+    private int downsampling = 1;
     private float farDOFDistance = 3.0f;
     private float farDOFStart = 1.0f;
     private float focalDepth = 0.0f;
@@ -34,11 +42,19 @@ public class DepthOfFieldFilter extends Filter {
     private int samples = 3;
     private boolean showFocus = false;
     private float threshold = 0.5f;
+    private Material upsampleMaterial;
     private boolean vignetting = false;
     private float vignettingFade = 22.0f;
     private float vignettingInnerBorder = 0.0f;
     private float vignettingOuterBorder = 1.3f;
 
+    /**
+     * Create a depth of field filter
+     */
+    public DepthOfFieldFilter() {
+        super("DepthOfFieldFilter");
+    }
+
     /**
      * @return whether to show debug focus point and focal range (red = focal
      *         point, green = focal range)
@@ -68,6 +84,13 @@ public class DepthOfFieldFilter extends Filter {
         return depthBlurSize;
     }
 
+    /**
+     * @return the factor by which the resolution of the bokeh is reduced
+     */
+    public int getDownsampling() {
+        return downsampling;
+    }
+
     /**
      * @return the how far the depth-of-field blur reaches from the far start.
      */
@@ -259,6 +282,21 @@ public class DepthOfFieldFilter extends Filter {
         }
     }
 
+    /**
+     * Changes the factor by which the resolution of the bokeh is reduced. A
+     * factor of 1 gathers the bokeh at full resolution, which should be used
+     * for screenshots; higher factors gather it at a fraction of the
+     * resolution and upsample it with respect to depth. The change takes
+     * effect the next time the filter is initialized, for example when the
+     * view port is reshaped.
+     * 
+     * @param downsampling
+     *            the downsampling factor to set
+     */
+    public void setDownsampling(final int downsampling) {
+        this.downsampling = downsampling;
+    }
+
     /**
      * @param farDOFDistance
      *            the how far the depth-of-field blur reaches from the far
@@ -314,6 +352,9 @@ public class DepthOfFieldFilter extends Filter {
         if (material != null) {
             material.setVector2("Focus", focus);
         }
+        if (upsampleMaterial != null) {
+            upsampleMaterial.setVector2("Focus", focus);
+        }
     }
 
     /**
@@ -336,6 +377,9 @@ public class DepthOfFieldFilter extends Filter {
         if (material != null) {
             material.setFloat("FStop", fstop);
         }
+        if (upsampleMaterial != null) {
+            upsampleMaterial.setFloat("FStop", fstop);
+        }
     }
 
     /**
@@ -491,6 +535,9 @@ public class DepthOfFieldFilter extends Filter {
         if (material != null) {
             material.setBoolean("Vignetting", vignetting);
         }
+        if (upsampleMaterial != null) {
+            upsampleMaterial.setBoolean("Vignetting", vignetting);
+        }
     }
 
     /**
@@ -502,6 +549,9 @@ public class DepthOfFieldFilter extends Filter {
         if (material != null) {
             material.setFloat("VignettingFade", vignettingFade);
         }
+        if (upsampleMaterial != null) {
+            upsampleMaterial.setFloat("VignettingFade", vignettingFade);
+        }
     }
 
     /**
@@ -513,6 +563,9 @@ public class DepthOfFieldFilter extends Filter {
         if (material != null) {
             material.setFloat("VignettingInnerBorder", vignettingInnerBorder);
         }
+        if (upsampleMaterial != null) {
+            upsampleMaterial.setFloat("VignettingInnerBorder", vignettingInnerBorder);
+        }
     }
 
     /**
@@ -524,6 +577,9 @@ public class DepthOfFieldFilter extends Filter {
         if (material != null) {
             material.setFloat("VignettingOuterBorder", vignettingOuterBorder);
         }
+        if (upsampleMaterial != null) {
+            upsampleMaterial.setFloat("VignettingOuterBorder", vignettingOuterBorder);
+        }
     }
 
     /**
@@ -601,9 +657,23 @@ public class DepthOfFieldFilter extends Filter {
         material.setFloat("PentagonFeather", pentagonFeather);
     }
 
+    private void writeUpsampleParams() {
+        upsampleMaterial.setFloat("DepthSharpness", DEPTH_SHARPNESS);
+        upsampleMaterial.setFloat("FStop", fstop);
+        upsampleMaterial.setBoolean("Vignetting", vignetting);
+        upsampleMaterial.setFloat("VignettingOuterBorder",
+                vignettingOuterBorder);
+        upsampleMaterial.setFloat("VignettingInnerBorder",
+                vignettingInnerBorder);
+        upsampleMaterial.setFloat("VignettingFade", vignettingFade);
+        upsampleMaterial.setVector2("Focus", focus);
+    }
+
     @Override
     protected Material getMaterial() {
-        return material;
+        // When the bokeh is gathered at a lower resolution, the filter itself
+        // only upsamples it
+        return upsampleMaterial != null ? upsampleMaterial : material;
     }
 
     @Override
@@ -620,10 +690,51 @@ public class DepthOfFieldFilter extends Filter {
         material.setFloat("ZNear", cam.getFrustumNear());
         material.setFloat("ZFar", cam.getFrustumFar());
         writeParams();
+
+        if (downsampling > 1) {
+            final int bokehWidth = Math.max(1, w / downsampling);
+            final int bokehHeight = Math.max(1, h / downsampling);
+
+            material.setBoolean("Gather", true);
+            material.setVector2("SceneResolution", new Vector2f(w, h));
+
+            final Pass bokehPass = new Pass() {
+                @Override
+                public boolean requiresSceneAsTexture() {
+                    return true;
+                }
+            };
+            bokehPass.init(renderManager.getRenderer(), bokehWidth,
+                    bokehHeight, Format.RGBA8, Format.Depth, 1, material);
+            postRenderPasses = ImmutableList.of(bokehPass);
+
+            upsampleMaterial =
+                    new Material(manager,
+                            "MatDefs/DepthOfField/DepthOfFieldUpsample.j3md");
+            upsampleMaterial.setTexture("BokehTexture",
+                    bokehPass.getRenderedTexture());
+            upsampleMaterial.setVector2("BokehResolution", new Vector2f(
+                    bokehWidth, bokehHeight));
+            upsampleMaterial.setFloat("ZNear", cam.getFrustumNear());
+            upsampleMaterial.setFloat("ZFar", cam.getFrustumFar());
+            writeUpsampleParams();
+        } else {
+            postRenderPasses = null;
+            upsampleMaterial = null;
+        }
     }
 
     @Override
     protected boolean isRequiresDepthTexture() {
         return true;
     }
+
+    @Override
+    protected void setDepthTexture(final Texture depthTexture) {
+        // Both the bokeh and the upsampling read the scene's depth
+        material.setTexture("DepthTexture", depthTexture);
+        if (upsampleMaterial != null) {
+            upsampleMaterial.setTexture("DepthTexture", depthTexture);
+        }
+    }
 }
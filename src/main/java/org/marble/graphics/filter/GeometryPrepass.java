@@ -0,0 +1,177 @@
+package org.marble.graphics.filter;
+
+import java.util.Map;
+
+import com.jme3.post.Filter;
+import com.jme3.post.SceneProcessor;
+import com.jme3.renderer.RenderManager;
+import com.jme3.renderer.Renderer;
+import com.jme3.renderer.ViewPort;
+import com.jme3.renderer.queue.RenderQueue;
+import com.jme3.texture.FrameBuffer;
+import com.jme3.texture.Image.Format;
+import com.jme3.texture.Texture2D;
+
+import com.google.common.collect.Maps;
+
+/**
+ * A geometry prepass that renders view-space normals and depth once per frame,
+ * to be shared by all screen-space filters that need normals. Filters that
+ * only need depth should use the depth texture of the filter post processor
+ * instead, which doesn't cost an extra geometry pass.
+ * 
+ * <p>
+ * The prepass must be added to the view port before the filter post processor
+ * that contains its consumers. It is only rendered when at least one consumer
+ * is enabled, and only at the highest resolution that an enabled consumer
+ * needs.
+ */
+public class GeometryPrepass implements SceneProcessor {
+    // The filters that read from this prepass, and the factors by which they
+    // downsample it
+    private final Map<Filter, Float> consumers = Maps.newLinkedHashMap();
+
+    private Texture2D depthTexture;
+    // The factor by which the current buffers are downsampled
+    private float downsampling;
+    private FrameBuffer frameBuffer;
+    private int height;
+    private Texture2D normalTexture;
+
+    private RenderManager renderManager;
+    private ViewPort viewPort;
+    private int width;
+
+    /**
+     * Registers a filter that reads from this prepass at full resolution.
+     */
+    public void addConsumer(final Filter consumer) {
+        consumers.put(consumer, 1f);
+    }
+
+    @Override
+    public void cleanup() {
+    }
+
+    /**
+     * The non-linear depth buffer of the prepass; it can be linearized using
+     * the frustum planes of the view port's camera. This is the depth that
+     * the normals were rendered with, at the same resolution.
+     */
+    public Texture2D getDepthTexture() {
+        return depthTexture;
+    }
+
+    /**
+     * The view-space normals of the prepass, packed into the [0, 1] range.
+     */
+    public Texture2D getNormalTexture() {
+        return normalTexture;
+    }
+
+    @Override
+    public void initialize(final RenderManager renderManager,
+            final ViewPort viewPort) {
+        this.renderManager = renderManager;
+        this.viewPort = viewPort;
+        reshape(viewPort, viewPort.getCamera().getWidth(), viewPort
+                .getCamera().getHeight());
+    }
+
+    @Override
+    public boolean isInitialized() {
+        return viewPort != null;
+    }
+
+    @Override
+    public void postFrame(final FrameBuffer out) {
+    }
+
+    @Override
+    public void postQueue(final RenderQueue rq) {
+        if (!isNeeded())
+            return;
+
+        updateBuffers();
+        final Renderer r = renderManager.getRenderer();
+        r.setFrameBuffer(frameBuffer);
+        r.clearBuffers(true, true, true);
+        renderManager.setForcedTechnique("PreNormalPass");
+        renderManager.renderViewPortQueues(viewPort, false);
+        renderManager.setForcedTechnique(null);
+        r.setFrameBuffer(viewPort.getOutputFrameBuffer());
+    }
+
+    @Override
+    public void preFrame(final float tpf) {
+    }
+
+    /**
+     * Unregisters a filter that reads from this prepass.
+     */
+    public void removeConsumer(final Filter consumer) {
+        consumers.remove(consumer);
+    }
+
+    @Override
+    public void reshape(final ViewPort vp, final int w, final int h) {
+        width = w;
+        height = h;
+        frameBuffer = null;
+        updateBuffers();
+    }
+
+    /**
+     * Changes the factor by which a consumer downsamples the prepass. The
+     * prepass is resized before it is rendered next.
+     * 
+     * @param consumer
+     *            A filter that reads from this prepass.
+     * @param downsampling
+     *            The factor by which the resolution of the prepass may be
+     *            reduced for that filter.
+     */
+    public void setDownsampling(final Filter consumer,
+            final float downsampling) {
+        if (consumers.containsKey(consumer)) {
+            consumers.put(consumer, downsampling);
+        }
+    }
+
+    private boolean isNeeded() {
+        for (final Filter consumer : consumers.keySet()) {
+            if (consumer.isEnabled())
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Recreates the buffers if the highest resolution that an enabled
+     * consumer needs has changed.
+     */
+    private void updateBuffers() {
+        float needed = Float.MAX_VALUE;
+        for (final Map.Entry<Filter, Float> consumer : consumers.entrySet()) {
+            if (consumer.getKey().isEnabled()) {
+                needed = Math.min(needed, consumer.getValue());
+            }
+        }
+        if (needed == Float.MAX_VALUE) {
+            // Keep the buffers that the consumers were initialized with
+            needed = frameBuffer != null ? downsampling : 1;
+        }
+        if (frameBuffer != null && needed == downsampling)
+            return;
+
+        downsampling = needed;
+        final int w = Math.max(1, (int) (width / downsampling));
+        final int h = Math.max(1, (int) (height / downsampling));
+        normalTexture = new Texture2D(w, h, Format.RGBA8);
+        depthTexture = new Texture2D(w, h, Format.Depth);
+
+        frameBuffer = new FrameBuffer(w, h, 1);
+        frameBuffer.setColorTexture(normalTexture);
+        frameBuffer.setDepthTexture(depthTexture);
+    }
+}
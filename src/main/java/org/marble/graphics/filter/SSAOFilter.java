@@ -2,39 +2,69 @@ package org.marble.graphics.filter;
 
 import com.jme3.asset.AssetManager;
 import com.jme3.material.Material;
+import com.jme3.math.Matrix4f;
 import com.jme3.math.Vector3f;
 import com.jme3.post.Filter;
 import com.jme3.renderer.Camera;
+import com.jme3.renderer.Caps;
 import com.jme3.renderer.RenderManager;
-import com.jme3.renderer.Renderer;
 import com.jme3.renderer.ViewPort;
+import com.jme3.texture.FrameBuffer;
 import com.jme3.texture.Image.Format;
 import com.jme3.texture.Texture;
 
 import com.google.common.collect.ImmutableList;
 
 public class SSAOFilter extends Filter {
+    // How many of the four kernel iterations to evaluate per temporal frame
+    private static final int TEMPORAL_ITERATIONS = 1;
+
+    // How much of the reprojected history to keep each frame
+    private static final float HISTORY_WEIGHT = 0.75f;
+
+    // The relative depth difference at which history is rejected
+    private static final float DEPTH_REJECTION = 0.02f;
+
     private float bias = 0.1f;
+    private Camera camera;
     private float cutoff = 0.99f;
     private boolean disableBlur = false;
-    private final float downsamples = 1f;
+    private float downsamples = 1f;
+    private int frameIndex = 0;
     private final Vector3f frustumCorner = new Vector3f();
+    private Pass[] historyPasses;
+    private final Matrix4f inverseViewProjection = new Matrix4f();
     private float intensity = 8.0f;
-    private Filter.Pass normalPass;
+    private final GeometryPrepass prepass;
+    private final Matrix4f previousViewProjection = new Matrix4f();
     private float sampleRadius = 1.0f;
     private float scale = 1.0f;
     private boolean showOnlyAO = false;
     private Material ssaoMaterial;
 
     private Pass ssaoPass;
+    private boolean temporal = false;
+    private Material temporalMaterial;
+    // The history stores linear depth, which needs a float texture
+    private boolean temporalSupported = true;
 
-    public SSAOFilter() {
+    /**
+     * Create a Screen Space Ambient Occlusion Filter
+     * 
+     * @param prepass
+     *            the prepass providing normals and depth
+     */
+    public SSAOFilter(final GeometryPrepass prepass) {
         super("SSAOFilter");
+        this.prepass = prepass;
+        prepass.addConsumer(this);
     }
 
     /**
      * Create a Screen Space Ambient Occlusion Filter
      * 
+     * @param prepass
+     *            the prepass providing normals and depth
      * @param sampleRadius
      *            The radius of the area where random samples will be picked.
      *            default 5.1f
@@ -46,9 +76,10 @@ public class SSAOFilter extends Filter {
      *            the width of the occlusion cone considered by the occludee.
      *            default 0.1f
      */
-    public SSAOFilter(final float sampleRadius, final float intensity,
+    public SSAOFilter(final GeometryPrepass prepass,
+            final float sampleRadius, final float intensity,
             final float scale, final float bias) {
-        this();
+        this(prepass);
         this.sampleRadius = sampleRadius;
         this.intensity = intensity;
         this.scale = scale;
@@ -69,6 +100,13 @@ public class SSAOFilter extends Filter {
         return cutoff;
     }
 
+    /**
+     * @return the factor by which the occlusion buffers are downsampled
+     */
+    public float getDownsampling() {
+        return downsamples;
+    }
+
     /**
      * @return the intensity
      */
@@ -90,6 +128,14 @@ public class SSAOFilter extends Filter {
         return scale;
     }
 
+    /**
+     * @return whether occlusion is accumulated over several frames; always
+     *         false if the renderer can't render to float textures
+     */
+    public boolean isTemporal() {
+        return temporal && temporalSupported;
+    }
+
     /**
      * @param bias
      *            the bias to set
@@ -123,6 +169,18 @@ public class SSAOFilter extends Filter {
         }
     }
 
+    /**
+     * Changes the factor by which the occlusion buffers are downsampled. The
+     * change takes effect the next time the filter is initialized, for example
+     * when the view port is reshaped.
+     * 
+     * @param downsampling
+     *            the downsampling factor to set
+     */
+    public void setDownsampling(final float downsampling) {
+        downsamples = downsampling;
+    }
+
     /**
      * @param intensity
      *            the intensity to set
@@ -156,6 +214,23 @@ public class SSAOFilter extends Filter {
         }
     }
 
+    /**
+     * Makes the filter accumulate occlusion over several frames. Each frame
+     * only evaluates a rotating subset of the sample kernel, and the previous
+     * result is reprojected using the previous view-projection matrix and
+     * blended in, except where the depth doesn't match. This has no effect
+     * if the renderer can't render to float textures.
+     * 
+     * @param temporal
+     *            whether to use temporal accumulation
+     */
+    public void setTemporal(final boolean temporal) {
+        this.temporal = temporal;
+        if (ssaoMaterial != null) {
+            ssaoMaterial.setBoolean("Temporal", isTemporal());
+        }
+    }
+
     /**
      * @param showOnlyAO
      *            whether to only render the ambient occlusion without tinting
@@ -187,6 +262,11 @@ public class SSAOFilter extends Filter {
         ssaoMaterial.setFloat("Scale", scale);
         ssaoMaterial.setFloat("Bias", bias);
         ssaoMaterial.setFloat("Cutoff", cutoff);
+        ssaoMaterial.setBoolean("Temporal", isTemporal());
+        ssaoMaterial.setFloat("TemporalIterations", TEMPORAL_ITERATIONS);
+
+        temporalMaterial.setFloat("HistoryWeight", HISTORY_WEIGHT);
+        temporalMaterial.setFloat("DepthRejection", DEPTH_REJECTION);
 
         material.setBoolean("ShowOnlyAO", showOnlyAO);
         material.setBoolean("DisableBlur", disableBlur);
@@ -201,35 +281,44 @@ public class SSAOFilter extends Filter {
     protected void initFilter(final AssetManager manager,
             final RenderManager renderManager, final ViewPort vp, final int w,
             final int h) {
-        final ImmutableList.Builder<Pass> postRenderPassesBuilder =
-                ImmutableList.builder();
-
-        normalPass = new Pass();
-        normalPass.init(renderManager.getRenderer(), (int) (w / downsamples),
-                (int) (h / downsamples), Format.RGBA8, Format.Depth);
-
+        // The occlusion is computed at the resolution of the prepass
+        prepass.setDownsampling(this, downsamples);
         ssaoMaterial = new Material(manager, "MatDefs/SSAO/SSAO.j3md");
-        ssaoMaterial.setTexture("NormalTexture",
-                normalPass.getRenderedTexture());
-        ssaoPass = new Pass() {
-            @Override
-            public boolean requiresDepthAsTexture() {
-                return true;
-            }
-        };
+        ssaoPass = new Pass();
         ssaoPass.init(renderManager.getRenderer(), (int) (w / downsamples),
                 (int) (h / downsamples), Format.RGBA8, Format.Depth, 1,
                 ssaoMaterial);
         ssaoPass.getRenderedTexture().setMinFilter(Texture.MinFilter.Trilinear);
         ssaoPass.getRenderedTexture().setMagFilter(Texture.MagFilter.Bilinear);
-        postRenderPassesBuilder.add(ssaoPass);
+
+        // Two history buffers that take turns being read and written
+        temporalMaterial =
+                new Material(manager, "MatDefs/SSAO/SSAOTemporal.j3md");
+        temporalMaterial.setTexture("SSAOTexture",
+                ssaoPass.getRenderedTexture());
+        // Eight bits aren't enough to reject history by depth, so temporal
+        // accumulation is disabled without float textures
+        temporalSupported =
+                renderManager.getRenderer().getCaps()
+                        .contains(Caps.FloatColorBuffer);
+        historyPasses = new Pass[2];
+        if (temporalSupported) {
+            for (int i = 0; i < historyPasses.length; i++) {
+                historyPasses[i] = new Pass();
+                historyPasses[i].init(renderManager.getRenderer(),
+                        (int) (w / downsamples), (int) (h / downsamples),
+                        Format.RGBA16F, Format.Depth, 1, temporalMaterial);
+            }
+        }
+
+        postRenderPasses = ImmutableList.of(ssaoPass);
 
         material = new Material(manager, "MatDefs/SSAO/SSAOBlur.j3md");
         material.setTexture("SSAOTexture", ssaoPass.getRenderedTexture());
 
-        postRenderPasses = postRenderPassesBuilder.build();
-
         final Camera cam = vp.getCamera();
+        camera = cam;
+        previousViewProjection.set(cam.getViewProjectionMatrix());
 
         final float farY =
                 cam.getFrustumTop() / cam.getFrustumNear()
@@ -245,24 +334,53 @@ public class SSAOFilter extends Filter {
         material.setFloat("ZNear", cam.getFrustumNear());
         material.setFloat("ZFar", cam.getFrustumFar());
 
+        temporalMaterial.setFloat("ZNear", cam.getFrustumNear());
+        temporalMaterial.setFloat("ZFar", cam.getFrustumFar());
+
         writeParams();
     }
 
     @Override
     protected boolean isRequiresDepthTexture() {
+        // The blur runs at full resolution, so it uses the scene's depth
         return true;
     }
 
     @Override
     protected void postQueue(final RenderManager renderManager,
             final ViewPort viewPort) {
-        final Renderer r = renderManager.getRenderer();
-        r.setFrameBuffer(normalPass.getRenderFrameBuffer());
-        renderManager.getRenderer().clearBuffers(true, true, true);
-        renderManager.setForcedTechnique("PreNormalPass");
-        renderManager.renderViewPortQueues(viewPort, false);
-        renderManager.setForcedTechnique(null);
-        renderManager.getRenderer().setFrameBuffer(
-                viewPort.getOutputFrameBuffer());
+        // The prepass buffers are recreated when the view port is reshaped
+        ssaoMaterial.setTexture("NormalTexture", prepass.getNormalTexture());
+        ssaoMaterial.setTexture("DepthTexture", prepass.getDepthTexture());
+
+        if (isTemporal()) {
+            final Pass current = historyPasses[frameIndex % 2];
+            final Pass previous = historyPasses[(frameIndex + 1) % 2];
+
+            ssaoMaterial.setFloat("FrameIndex", frameIndex);
+            temporalMaterial.setTexture("DepthTexture",
+                    prepass.getDepthTexture());
+            temporalMaterial.setTexture("HistoryTexture",
+                    previous.getRenderedTexture());
+            camera.getViewProjectionMatrix().invert(inverseViewProjection);
+            temporalMaterial.setMatrix4("InverseViewProjection",
+                    inverseViewProjection);
+            temporalMaterial.setMatrix4("PreviousViewProjection",
+                    previousViewProjection);
+            material.setTexture("SSAOTexture", current.getRenderedTexture());
+
+            postRenderPasses = ImmutableList.of(ssaoPass, current);
+        } else {
+            material.setTexture("SSAOTexture", ssaoPass.getRenderedTexture());
+            postRenderPasses = ImmutableList.of(ssaoPass);
+        }
+    }
+
+    @Override
+    protected void postFrame(final RenderManager renderManager,
+            final ViewPort viewPort, final FrameBuffer prevFilterBuffer,
+            final FrameBuffer sceneBuffer) {
+        previousViewProjection.set(camera.getViewProjectionMatrix());
+        frameIndex++;
     }
 }
@@ -0,0 +1,106 @@
+package org.marble.level;
+
+import java.io.IOException;
+
+import com.jme3.bullet.collision.shapes.CollisionShape;
+import com.jme3.export.InputCapsule;
+import com.jme3.export.JmeExporter;
+import com.jme3.export.JmeImporter;
+import com.jme3.export.OutputCapsule;
+import com.jme3.export.Savable;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * The meshes and collision shape that an entity generated while it was being
+ * constructed, in a form that can be stored in a {@link LevelCache}.
+ */
+public class BakedGeometry implements Savable {
+    private ImmutableList<Mesh> meshes;
+    private CollisionShape shape;
+
+    /**
+     * Serialization only. Do not use.
+     */
+    public BakedGeometry() {
+    }
+
+    /**
+     * Creates a new geometry bundle.
+     * 
+     * @param meshes
+     *            The generated meshes. Their buffers are shared, not copied.
+     * @param shape
+     *            The generated collision shape.
+     */
+    public BakedGeometry(final ImmutableList<Mesh> meshes,
+            final CollisionShape shape) {
+        final ImmutableList.Builder<Mesh> builder = ImmutableList.builder();
+        for (final Mesh mesh : meshes) {
+            builder.add(toPlainMesh(mesh));
+        }
+        this.meshes = builder.build();
+        this.shape = shape;
+    }
+
+    /**
+     * @return the generated meshes, in the order they were given
+     */
+    public ImmutableList<Mesh> getMeshes() {
+        return meshes;
+    }
+
+    /**
+     * @return the generated collision shape
+     */
+    public CollisionShape getShape() {
+        return shape;
+    }
+
+    @Override
+    public void read(final JmeImporter im) throws IOException {
+        final InputCapsule capsule = im.getCapsule(this);
+        final ImmutableList.Builder<Mesh> builder = ImmutableList.builder();
+        for (final Savable mesh : capsule.readSavableArray("meshes",
+                new Savable[0])) {
+            builder.add((Mesh) mesh);
+        }
+        meshes = builder.build();
+        shape = (CollisionShape) capsule.readSavable("shape", null);
+    }
+
+    @Override
+    public void write(final JmeExporter ex) throws IOException {
+        final OutputCapsule capsule = ex.getCapsule(this);
+        capsule.write(meshes.toArray(new Mesh[meshes.size()]), "meshes",
+                new Mesh[0]);
+        capsule.write(shape, "shape", null);
+    }
+
+    /**
+     * Copies a mesh into a plain {@link Mesh}, since generated mesh classes
+     * can't be re-created by the importer.
+     */
+    private static Mesh toPlainMesh(final Mesh mesh) {
+        if (mesh.getClass() == Mesh.class)
+            return mesh;
+
+        final Mesh result = new Mesh();
+        result.setMode(mesh.getMode());
+        for (final VertexBuffer buffer : mesh.getBufferList()) {
+            result.setBuffer(buffer);
+        }
+        if (mesh.getNumLodLevels() > 0) {
+            final VertexBuffer[] lodLevels =
+                    new VertexBuffer[mesh.getNumLodLevels()];
+            for (int i = 0; i < lodLevels.length; i++) {
+                lodLevels[i] = mesh.getLodLevel(i);
+            }
+            result.setLodLevels(lodLevels);
+        }
+        result.setBound(mesh.getBound().clone());
+        return result;
+    }
+}
@@ -0,0 +1,295 @@
+package org.marble.level;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.jme3.math.Quaternion;
+import com.jme3.math.Transform;
+import com.jme3.math.Vector3f;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * The result of running the statements of a level, in a form that can be
+ * stored and loaded again without parsing the level.
+ * 
+ * <p>
+ * Class aliases are resolved to class names, and positioning and connection
+ * statements are resolved to the final transform of each entity.
+ */
+public final class CompiledLevel {
+    /**
+     * How to re-create one of the entities of a level.
+     */
+    public static final class Record {
+        private final ImmutableList<Object> args;
+        private final String className;
+        private final String name;
+        private final Transform transform;
+
+        /**
+         * Creates a new entity record.
+         * 
+         * @param name
+         *            The name of the entity.
+         * @param className
+         *            The fully qualified name of the class of the entity.
+         * @param args
+         *            The construction arguments for the class; these may be
+         *            {@link String}s, {@link Float}s or {@link Vector3f}s.
+         * @param transform
+         *            The final transform of the entity. It is copied.
+         */
+        public Record(final String name, final String className,
+                final ImmutableList<Object> args, final Transform transform) {
+            this.name = name;
+            this.className = className;
+            this.args = args;
+            this.transform = transform.clone();
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (obj instanceof Record) {
+                final Record that = (Record) obj;
+                return Objects.equal(name, that.name)
+                        && Objects.equal(className, that.className)
+                        && Objects.equal(args, that.args)
+                        && Objects.equal(transform.getTranslation(),
+                                that.transform.getTranslation())
+                        && Objects.equal(transform.getRotation(),
+                                that.transform.getRotation())
+                        && Objects.equal(transform.getScale(),
+                                that.transform.getScale());
+            } else
+                return false;
+        }
+
+        /**
+         * The construction arguments for the class of the entity.
+         */
+        public ImmutableList<Object> getArgs() {
+            return args;
+        }
+
+        /**
+         * The fully qualified name of the class of the entity.
+         */
+        public String getClassName() {
+            return className;
+        }
+
+        /**
+         * The name of the entity.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * The final transform of the entity.
+         */
+        public Transform getTransform() {
+            return transform;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(name, className, args,
+                    transform.getTranslation());
+        }
+
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this).add("name", name)
+                    .add("className", className).add("args", args)
+                    .add("transform", transform).toString();
+        }
+    }
+
+    /**
+     * The first bytes of every compiled level.
+     */
+    public static final int MAGIC = 0x4d424c43;
+
+    /**
+     * The version of the format. Must be increased whenever the format
+     * changes.
+     */
+    public static final int VERSION = 1;
+
+    // The tags that precede each construction argument
+    private static final byte FLOAT_TAG = 'F';
+    private static final byte STRING_TAG = 'S';
+    private static final byte VECTOR3_TAG = 'V';
+
+    private final ImmutableList<Record> records;
+    private final String sourceHash;
+
+    /**
+     * Creates a new compiled level.
+     * 
+     * @param sourceHash
+     *            The hash of the level source that this was compiled from.
+     * @param records
+     *            The entities of the level, in declaration order.
+     */
+    public CompiledLevel(final String sourceHash,
+            final ImmutableList<Record> records) {
+        this.sourceHash = sourceHash;
+        this.records = records;
+    }
+
+    /**
+     * Reads a compiled level that was written by {@link #write}.
+     * 
+     * @throws IOException
+     *             if the input could not be read, or was not a compiled level
+     *             of the current version.
+     */
+    public static CompiledLevel read(final InputStream input)
+            throws IOException {
+        final DataInputStream data = new DataInputStream(input);
+        if (data.readInt() != MAGIC)
+            throw new IOException("Not a compiled level");
+        final int version = data.readInt();
+        if (version != VERSION)
+            throw new IOException("Unsupported compiled level version "
+                    + version);
+
+        final String sourceHash = data.readUTF();
+        final int recordCount = data.readInt();
+        final ImmutableList.Builder<Record> records = ImmutableList.builder();
+        for (int i = 0; i < recordCount; i++) {
+            final String name = data.readUTF();
+            final String className = data.readUTF();
+
+            final int argCount = data.readInt();
+            final ImmutableList.Builder<Object> args = ImmutableList.builder();
+            for (int j = 0; j < argCount; j++) {
+                final byte tag = data.readByte();
+                switch (tag) {
+                case FLOAT_TAG:
+                    args.add(data.readFloat());
+                    break;
+                case STRING_TAG:
+                    args.add(data.readUTF());
+                    break;
+                case VECTOR3_TAG:
+                    args.add(readVector3(data));
+                    break;
+                default:
+                    throw new IOException("Unknown argument tag " + tag);
+                }
+            }
+
+            final Transform transform = new Transform();
+            transform.setTranslation(readVector3(data));
+            transform.setRotation(new Quaternion(data.readFloat(), data
+                    .readFloat(), data.readFloat(), data.readFloat()));
+            transform.setScale(readVector3(data));
+            records.add(new Record(name, className, args.build(), transform));
+        }
+        return new CompiledLevel(sourceHash, records.build());
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (obj instanceof CompiledLevel) {
+            final CompiledLevel that = (CompiledLevel) obj;
+            return Objects.equal(sourceHash, that.sourceHash)
+                    && Objects.equal(records, that.records);
+        } else
+            return false;
+    }
+
+    /**
+     * The entities of the level, in declaration order.
+     */
+    public ImmutableList<Record> getRecords() {
+        return records;
+    }
+
+    /**
+     * The hash of the level source that this was compiled from.
+     */
+    public String getSourceHash() {
+        return sourceHash;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(sourceHash, records);
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this).add("sourceHash", sourceHash)
+                .add("records", records).toString();
+    }
+
+    /**
+     * Writes this compiled level in its binary form.
+     * 
+     * @throws IOException
+     *             if the output could not be written.
+     * @throws IllegalArgumentException
+     *             if an entity has a construction argument of an unsupported
+     *             type.
+     */
+    public void write(final OutputStream output) throws IOException {
+        final DataOutputStream data = new DataOutputStream(output);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeUTF(sourceHash);
+        data.writeInt(records.size());
+        for (final Record record : records) {
+            data.writeUTF(record.name);
+            data.writeUTF(record.className);
+
+            data.writeInt(record.args.size());
+            for (final Object arg : record.args) {
+                if (arg instanceof Float) {
+                    data.writeByte(FLOAT_TAG);
+                    data.writeFloat((Float) arg);
+                } else if (arg instanceof String) {
+                    data.writeByte(STRING_TAG);
+                    data.writeUTF((String) arg);
+                } else if (arg instanceof Vector3f) {
+                    data.writeByte(VECTOR3_TAG);
+                    writeVector3(data, (Vector3f) arg);
+                } else
+                    throw new IllegalArgumentException(
+                            "Can't compile a construction argument of type "
+                                    + arg.getClass().getName());
+            }
+
+            final Transform transform = record.transform;
+            writeVector3(data, transform.getTranslation());
+            final Quaternion rotation = transform.getRotation();
+            data.writeFloat(rotation.getX());
+            data.writeFloat(rotation.getY());
+            data.writeFloat(rotation.getZ());
+            data.writeFloat(rotation.getW());
+            writeVector3(data, transform.getScale());
+        }
+        data.flush();
+    }
+
+    private static Vector3f readVector3(final DataInputStream data)
+            throws IOException {
+        return new Vector3f(data.readFloat(), data.readFloat(),
+                data.readFloat());
+    }
+
+    private static void writeVector3(final DataOutputStream data,
+            final Vector3f vector) throws IOException {
+        data.writeFloat(vector.x);
+        data.writeFloat(vector.y);
+        data.writeFloat(vector.z);
+    }
+}
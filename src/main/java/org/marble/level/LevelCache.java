@@ -0,0 +1,346 @@
+package org.marble.level;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.FileFilter;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import com.jme3.export.InputCapsule;
+import com.jme3.export.JmeExporter;
+import com.jme3.export.JmeImporter;
+import com.jme3.export.OutputCapsule;
+import com.jme3.export.Savable;
+import com.jme3.export.binary.BinaryExporter;
+import com.jme3.export.binary.BinaryImporter;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Resources;
+
+import org.marble.entity.Entity;
+
+/**
+ * An on-disk cache of the geometry that the entities of a level generate while
+ * they are being constructed.
+ * 
+ * <p>
+ * The cache of a level is keyed by the contents of the level file and the
+ * {@link #GENERATOR_VERSION}, so editing the level or changing a generator
+ * invalidates it. Entities are looked up by their class and name, which are
+ * unique within a level.
+ * 
+ * <p>
+ * The caches of the few most recently opened levels are kept in memory, so
+ * that prefetching a level doesn't make the current one be read from disk
+ * again. When a level changes, the cache file of its previous contents is
+ * deleted, and the least recently used cache files are deleted when all of
+ * them together grow larger than the maximum size.
+ */
+public class LevelCache {
+    /**
+     * Bundles all of the cached values of one level.
+     */
+    public static class Entries implements Savable {
+        // Whether values have been added since the entries were loaded
+        private boolean modified = false;
+
+        private final Map<String, Savable> values = Maps.newHashMap();
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void read(final JmeImporter im) throws IOException {
+            final InputCapsule capsule = im.getCapsule(this);
+            final Map<String, Savable> read =
+                    (Map<String, Savable>) capsule.readStringSavableMap(
+                            "values", null);
+            if (read != null) {
+                values.putAll(read);
+            }
+        }
+
+        @Override
+        public void write(final JmeExporter ex) throws IOException {
+            final OutputCapsule capsule = ex.getCapsule(this);
+            capsule.writeStringSavableMap(values, "values", null);
+        }
+    }
+
+    /**
+     * The default location of the cache.
+     */
+    public static final File DEFAULT_DIRECTORY = new File(new File(
+            System.getProperty("user.home"), ".marble"), "cache");
+
+    /**
+     * The version of the geometry generators. Must be increased whenever a
+     * generator starts producing different geometry for the same level.
+     */
+    public static final int GENERATOR_VERSION = 1;
+
+    /**
+     * The default size in bytes that the cache files may take up together.
+     */
+    public static final long DEFAULT_MAX_SIZE = 64L * 1024 * 1024;
+
+    // The suffix of the cache files
+    private static final String FILE_SUFFIX = ".j3o";
+
+    private static final Logger log = Logger.getLogger(LevelCache.class
+            .getName());
+
+    // How many levels are kept in memory
+    private static final int RECENT_LEVELS = 3;
+
+    // The directory that contains the cache files
+    private final File directory;
+
+    // The cached values of the open level
+    private Entries entries = new Entries();
+
+    // The key of the level whose values are loaded, if any
+    private Optional<String> key = Optional.absent();
+
+    // The keys of the contents that each level was last opened with
+    private final Map<String, String> levelKeys = Maps.newHashMap();
+
+    // The size in bytes that the cache files may take up together
+    private final long maxSize;
+
+    // Whether a level is open, so that values may be looked up and stored
+    private boolean opened = false;
+
+    // The cached values of recently opened levels by key, least recently
+    // opened first
+    private final Map<String, Entries> recent =
+            new LinkedHashMap<String, Entries>(RECENT_LEVELS + 1, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(
+                        final Map.Entry<String, Entries> eldest) {
+                    if (size() <= RECENT_LEVELS)
+                        return false;
+                    save(eldest.getKey(), eldest.getValue());
+                    return true;
+                }
+            };
+
+    /**
+     * Creates a new level cache with the default maximum size.
+     * 
+     * @param directory
+     *            The directory to store cache files in; it is created when
+     *            needed.
+     */
+    public LevelCache(final File directory) {
+        this(directory, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Creates a new level cache.
+     * 
+     * @param directory
+     *            The directory to store cache files in; it is created when
+     *            needed.
+     * @param maxSize
+     *            The size in bytes that the cache files may take up together
+     *            before the least recently used ones are deleted.
+     */
+    public LevelCache(final File directory, final long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Closes the open level, so that entities created afterwards aren't
+     * cached.
+     */
+    public synchronized void close() {
+        save();
+        opened = false;
+    }
+
+    /**
+     * Looks up the geometry of an entity of the open level.
+     * 
+     * @param entity
+     *            The entity that generated the geometry.
+     * @return the geometry, if it is cached
+     */
+    public synchronized Optional<BakedGeometry> get(final Entity entity) {
+        if (!opened || entity.getName() == null)
+            return Optional.absent();
+        final Savable value = entries.values.get(keyOf(entity));
+        if (value instanceof BakedGeometry)
+            return Optional.of((BakedGeometry) value);
+        else
+            return Optional.absent();
+    }
+
+    /**
+     * Opens the cache of a level. The cache stays in memory while a few other
+     * levels are opened, so re-opening the same level is cheap.
+     * 
+     * @param level
+     *            The location of the level file.
+     */
+    public synchronized void open(final URL level) {
+        final String newKey;
+        try {
+            final Hasher hasher = Hashing.sha1().newHasher();
+            hasher.putInt(GENERATOR_VERSION);
+            hasher.putBytes(Resources.toByteArray(level));
+            newKey = hasher.hash().toString();
+        } catch (final IOException e) {
+            log.warning("Could not read level for caching: " + e);
+            opened = false;
+            return;
+        }
+
+        opened = true;
+        final String oldKey =
+                levelKeys.put(level.toExternalForm(), newKey);
+        if (oldKey != null && !oldKey.equals(newKey)) {
+            // The level has changed, so its old geometry is useless
+            recent.remove(oldKey);
+            final File oldFile = getFile(oldKey);
+            if (oldFile.isFile() && !oldFile.delete()) {
+                log.warning("Could not delete level cache " + oldFile);
+            }
+        }
+        if (key.isPresent() && key.get().equals(newKey))
+            return;
+
+        key = Optional.of(newKey);
+        final Entries cached = recent.get(newKey);
+        if (cached != null) {
+            entries = cached;
+            return;
+        }
+
+        entries = new Entries();
+        final File file = getFile(newKey);
+        if (file.isFile()) {
+            try {
+                entries =
+                        (Entries) BinaryImporter.getInstance().load(file);
+            } catch (final Exception e) {
+                log.warning("Ignoring corrupt level cache " + file + ": " + e);
+            }
+            // Remember when the file was last used
+            file.setLastModified(System.currentTimeMillis());
+        }
+        recent.put(newKey, entries);
+    }
+
+    /**
+     * Stores the geometry of an entity of the open level.
+     * 
+     * @param entity
+     *            The entity that generated the geometry.
+     * @param geometry
+     *            The generated geometry.
+     */
+    public synchronized void put(final Entity entity,
+            final BakedGeometry geometry) {
+        if (!opened || entity.getName() == null)
+            return;
+        entries.values.put(keyOf(entity), geometry);
+        entries.modified = true;
+    }
+
+    /**
+     * Writes the values that were added to the levels in memory to disk, and
+     * deletes the least recently used cache files if they take up too much
+     * space.
+     */
+    public synchronized void save() {
+        boolean saved = false;
+        for (final Map.Entry<String, Entries> level : recent.entrySet()) {
+            saved |= save(level.getKey(), level.getValue());
+        }
+        if (saved) {
+            evict();
+        }
+    }
+
+    /**
+     * Deletes the least recently used cache files, except those of the levels
+     * in memory, until the cache files fit into the maximum size.
+     */
+    private void evict() {
+        final File[] files = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(final File file) {
+                return file.isFile()
+                        && file.getName().endsWith(FILE_SUFFIX);
+            }
+        });
+        if (files == null)
+            return;
+
+        long size = 0;
+        for (final File file : files) {
+            size += file.length();
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(final File a, final File b) {
+                return Long.valueOf(a.lastModified()).compareTo(
+                        b.lastModified());
+            }
+        });
+        for (final File file : files) {
+            if (size <= maxSize)
+                break;
+            final String name = file.getName();
+            if (recent.containsKey(name.substring(0, name.length()
+                    - FILE_SUFFIX.length()))) {
+                continue;
+            }
+            final long length = file.length();
+            if (file.delete()) {
+                size -= length;
+            } else {
+                log.warning("Could not delete level cache " + file);
+            }
+        }
+    }
+
+    private File getFile(final String key) {
+        return new File(directory, key + FILE_SUFFIX);
+    }
+
+    private static String keyOf(final Entity entity) {
+        return entity.getClass().getName() + ":" + entity.getName();
+    }
+
+    /**
+     * Writes the values of a level to disk if values have been added to it.
+     * 
+     * @return whether the values were written
+     */
+    private boolean save(final String key, final Entries entries) {
+        if (!entries.modified)
+            return false;
+
+        final File file = getFile(key);
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs())
+                throw new IOException("Could not create " + directory);
+            BinaryExporter.getInstance().save(entries, file);
+            entries.modified = false;
+            return true;
+        } catch (final IOException e) {
+            log.warning("Could not write level cache " + file + ": " + e);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package org.marble.level;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+/**
+ * The difference between two compiled versions of the same level. Entities
+ * whose records are equal in both versions, meaning that their class,
+ * construction arguments and resolved transforms are the same, are kept; all
+ * other entities of the old version are removed, and all other entities of
+ * the new version are added.
+ */
+public final class LevelDiff {
+    private final ImmutableList<Integer> added;
+    private final ImmutableList<Integer> removed;
+
+    // For each record of the new version, the index of the same record in the
+    // old version, or -1 if it was added
+    private final int[] sources;
+
+    private LevelDiff(final int[] sources,
+            final ImmutableList<Integer> added,
+            final ImmutableList<Integer> removed) {
+        this.sources = sources;
+        this.added = added;
+        this.removed = removed;
+    }
+
+    /**
+     * Computes the difference between two versions of a level. Equal records
+     * are matched in declaration order, so that levels may declare several
+     * identical entities.
+     * 
+     * @param before
+     *            The old version of the level.
+     * @param after
+     *            The new version of the level.
+     */
+    public static LevelDiff between(final CompiledLevel before,
+            final CompiledLevel after) {
+        final ImmutableList<CompiledLevel.Record> beforeRecords =
+                before.getRecords();
+        final ImmutableList<CompiledLevel.Record> afterRecords =
+                after.getRecords();
+
+        final Map<CompiledLevel.Record, LinkedList<Integer>> unmatched =
+                Maps.newHashMap();
+        for (int i = 0; i < beforeRecords.size(); i++) {
+            LinkedList<Integer> indices = unmatched.get(beforeRecords.get(i));
+            if (indices == null) {
+                indices = new LinkedList<Integer>();
+                unmatched.put(beforeRecords.get(i), indices);
+            }
+            indices.add(i);
+        }
+
+        final int[] sources = new int[afterRecords.size()];
+        final boolean[] kept = new boolean[beforeRecords.size()];
+        final ImmutableList.Builder<Integer> added = ImmutableList.builder();
+        for (int i = 0; i < sources.length; i++) {
+            final LinkedList<Integer> indices =
+                    unmatched.get(afterRecords.get(i));
+            if (indices == null || indices.isEmpty()) {
+                sources[i] = -1;
+                added.add(i);
+            } else {
+                sources[i] = indices.removeFirst();
+                kept[sources[i]] = true;
+            }
+        }
+
+        final ImmutableList.Builder<Integer> removed = ImmutableList.builder();
+        for (int i = 0; i < kept.length; i++) {
+            if (!kept[i]) {
+                removed.add(i);
+            }
+        }
+        return new LevelDiff(sources, added.build(), removed.build());
+    }
+
+    /**
+     * Lines up the elements that belong to the entities of the new version of
+     * the level, like the entities themselves.
+     * 
+     * @param before
+     *            The elements of the old version, in declaration order.
+     * @param added
+     *            The elements of the added entities, in the order of
+     *            {@link #getAdded()}.
+     * @return The elements of the new version in declaration order, reusing
+     *         the elements of the kept entities.
+     */
+    public <E> ImmutableList<E> apply(final List<E> before,
+            final List<E> added) {
+        if (added.size() != this.added.size())
+            throw new IllegalArgumentException("Expected "
+                    + this.added.size() + " added elements, got "
+                    + added.size());
+
+        final ImmutableList.Builder<E> result = ImmutableList.builder();
+        int next = 0;
+        for (final int source : sources) {
+            if (source < 0) {
+                result.add(added.get(next++));
+            } else {
+                result.add(before.get(source));
+            }
+        }
+        return result.build();
+    }
+
+    /**
+     * The indices of the records of the new version that were added or
+     * changed, in declaration order.
+     */
+    public ImmutableList<Integer> getAdded() {
+        return added;
+    }
+
+    /**
+     * The indices of the records of the old version that were removed or
+     * changed, in declaration order.
+     */
+    public ImmutableList<Integer> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * Whether the two versions of the level have the same entities.
+     */
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this).add("added", added)
+                .add("removed", removed).toString();
+    }
+}
@@ -45,6 +45,8 @@ public class LevelLoadException extends Exception {
      * The kind of failure that occurred (for machine-readability)
      */
     public enum Kind {
+        /** The placement of an entity depends on itself */
+        CYCLIC_PLACEMENT,
         /** The specified class is a class, but of the wrong kind. */
         INCOMPATIBLE_CLASS,
         /** The specified entity is an entity, but of the wrong kind */
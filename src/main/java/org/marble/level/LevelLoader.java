@@ -1,14 +1,29 @@
 package org.marble.level;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.net.MalformedURLException;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
 
 import com.jme3.math.FastMath;
 import com.jme3.math.Matrix3f;
@@ -18,10 +33,15 @@ import com.jme3.math.Transform;
 import com.jme3.math.Vector3f;
 
 import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
 import com.google.common.io.Resources;
 
 import org.apache.commons.lang3.reflect.ConstructorUtils;
@@ -34,15 +54,147 @@ import org.codehaus.jparsec.error.ParserException;
 import org.marble.entity.Entity;
 import org.marble.entity.connected.Connected;
 import org.marble.entity.connected.Connector;
+import org.marble.util.Workers;
 
 /**
  * A class for loading level data from level files.
  */
 public final class LevelLoader {
+    /**
+     * The suffix that is appended to the name of a level file to get the name
+     * of its compiled form.
+     */
+    public static final String COMPILED_SUFFIX = "c";
+
+    // The smallest number of declarations that is worth constructing on a
+    // worker thread of its own
+    private static final int DECLARATIONS_PER_TASK = 256;
+
+    private static final Logger log = Logger.getLogger(LevelLoader.class
+            .getName());
+
+    // The constructors that have been resolved so far, keyed by the entity
+    // class followed by the types of the construction arguments
+    private static final ConcurrentMap<ImmutableList<Class<?>>, Constructor<? extends Entity>> constructors =
+            new ConcurrentHashMap<ImmutableList<Class<?>>, Constructor<? extends Entity>>();
+
+    // Where to store the compiled forms of levels that aren't files
+    private final Optional<File> compiledDirectory;
+
     private final LevelParser parser = new LevelParser();
 
     /**
-     * Loads a level from the specified URL.
+     * Creates a new level loader that only stores compiled levels next to
+     * level files.
+     */
+    public LevelLoader() {
+        compiledDirectory = Optional.absent();
+    }
+
+    /**
+     * Creates a new level loader.
+     * 
+     * @param compiledDirectory
+     *            The directory to store the compiled forms of levels that
+     *            aren't files in, like levels inside of archives.
+     */
+    public LevelLoader(final File compiledDirectory) {
+        this.compiledDirectory = Optional.of(compiledDirectory);
+    }
+
+    /**
+     * Compiles the level at the specified URL, so that it can be loaded
+     * without being parsed.
+     * 
+     * @param url
+     *            The URL to load the level from.
+     * @return The compiled level.
+     * @throws ParserException
+     *             if the level file contained syntax errors.
+     * @throws LevelLoadException
+     *             if the level could not be loaded for logical reasons.
+     * @throws IOException
+     *             if there was an error when fetching the level file from the
+     *             URL.
+     */
+    public CompiledLevel compileLevel(final URL url) throws ParserException,
+            LevelLoadException, IOException {
+        final ImmutableList<LevelStatement> statements =
+                loadLevelStatements(url);
+        return compileStatements(statements, runStatements(statements),
+                hashSource(url));
+    }
+
+    /**
+     * Loads the compiled form of the level at the specified URL. The stored
+     * compiled form is used if it is up to date; otherwise, the level is
+     * compiled and stored again.
+     * 
+     * @param url
+     *            The URL to load the level from.
+     * @return The compiled level.
+     * @throws ParserException
+     *             if the level file contained syntax errors.
+     * @throws LevelLoadException
+     *             if the level could not be loaded for logical reasons.
+     * @throws IOException
+     *             if there was an error when fetching the level file from the
+     *             URL.
+     */
+    public CompiledLevel loadCompiledLevel(final URL url)
+            throws ParserException, LevelLoadException, IOException {
+        return loadCompiledLevel(url, Sets.<Entity> newHashSet());
+    }
+
+    /**
+     * Loads the compiled form of the level at the specified URL, like
+     * {@link #loadCompiledLevel(URL)}. Compiling a level constructs all of
+     * its entities, so they are handed out instead of being thrown away.
+     * 
+     * @param url
+     *            The URL to load the level from.
+     * @param constructed
+     *            Receives the entities of the level, in order, if the level
+     *            had to be compiled. Stays empty if the stored compiled form
+     *            was used.
+     * @return The compiled level.
+     * @throws ParserException
+     *             if the level file contained syntax errors.
+     * @throws LevelLoadException
+     *             if the level could not be loaded for logical reasons.
+     * @throws IOException
+     *             if there was an error when fetching the level file from the
+     *             URL.
+     */
+    public CompiledLevel loadCompiledLevel(final URL url,
+            final Set<Entity> constructed) throws ParserException,
+            LevelLoadException, IOException {
+        final String sourceHash = hashSource(url);
+        final Optional<File> compiledFile = getCompiledFile(url);
+
+        if (compiledFile.isPresent()) {
+            final Optional<CompiledLevel> compiled =
+                    readCompiledLevel(compiledFile.get());
+            if (compiled.isPresent()
+                    && compiled.get().getSourceHash().equals(sourceHash))
+                return compiled.get();
+        }
+
+        final ImmutableList<LevelStatement> statements =
+                loadLevelStatements(url);
+        final ImmutableSet<Entity> entities = runStatements(statements);
+        final CompiledLevel compiled =
+                compileStatements(statements, entities, sourceHash);
+        if (compiledFile.isPresent()) {
+            writeCompiledLevel(compiledFile.get(), compiled);
+        }
+        constructed.addAll(entities);
+        return compiled;
+    }
+
+    /**
+     * Loads a level from the specified URL. The compiled form of the level is
+     * used if it is up to date; otherwise, it is created.
      * 
      * @param url
      *            The URL to load the level from.
@@ -57,7 +209,31 @@ public final class LevelLoader {
      */
     public ImmutableSet<Entity> loadLevel(final URL url)
             throws ParserException, LevelLoadException, IOException {
-        return runStatements(loadLevelStatements(url));
+        final String sourceHash = hashSource(url);
+        final Optional<File> compiledFile = getCompiledFile(url);
+
+        if (compiledFile.isPresent()) {
+            final Optional<CompiledLevel> compiled =
+                    readCompiledLevel(compiledFile.get());
+            if (compiled.isPresent()
+                    && compiled.get().getSourceHash().equals(sourceHash)) {
+                try {
+                    return runCompiledLevel(compiled.get());
+                } catch (final LevelLoadException e) {
+                    // The entity classes have changed; recompile the level
+                    log.info("Recompiling " + url + ": " + e.getMessage());
+                }
+            }
+        }
+
+        final ImmutableList<LevelStatement> statements =
+                loadLevelStatements(url);
+        final ImmutableSet<Entity> entities = runStatements(statements);
+        if (compiledFile.isPresent()) {
+            writeCompiledLevel(compiledFile.get(),
+                    compileStatements(statements, entities, sourceHash));
+        }
+        return entities;
     }
 
     /**
@@ -109,21 +285,79 @@ public final class LevelLoader {
      * Runs (executes) a series of level statements, producing a set of
      * initialized world entities.
      * 
+     * <p>
+     * The statements are declarative. Entities are constructed in parallel,
+     * and each entity is placed by the last statement that positions or
+     * connects it. A statement that refers to another entity sees the final
+     * placement of that entity, no matter where that entity is placed in the
+     * source, so placements are resolved in dependency order.
+     * 
      * @param statements
      *            The statements to execute.
-     * @return The produced set of world entities.
+     * @return The produced set of world entities, in declaration order.
      * @throws LevelLoadException
-     *             If the series of statements contained a logical error.
+     *             If the series of statements contained a logical error, like
+     *             an entity whose placement depends on itself.
      */
     public ImmutableSet<Entity> runStatements(
             final ImmutableList<LevelStatement> statements)
             throws LevelLoadException {
         final HashMap<String, Class<? extends Entity>> classAliases =
                 new HashMap<String, Class<? extends Entity>>();
+        final List<LevelStatement.Declaration> declarations =
+                Lists.newArrayList();
+        // The statement that places each entity, by the name of the entity
+        final LinkedHashMap<String, LevelStatement> placements =
+                Maps.newLinkedHashMap();
+
+        for (final LevelStatement statement : statements) {
+            if (statement instanceof LevelStatement.Alias) {
+                final LevelStatement.Alias alias =
+                        (LevelStatement.Alias) statement;
+                classAliases.put(alias.getAlias(),
+                        loadEntityClass(alias.getAliasedClass(),
+                                statement.getLocation()));
+            } else if (statement instanceof LevelStatement.Declaration) {
+                declarations.add((LevelStatement.Declaration) statement);
+            } else if (statement instanceof LevelStatement.Connection) {
+                placements.put(((LevelStatement.Connection) statement)
+                        .getNameLeft(), statement);
+            } else if (statement instanceof LevelStatement.Position) {
+                placements.put(
+                        ((LevelStatement.Position) statement).getName(),
+                        statement);
+            }
+        }
+
+        final Entity[] entities = createEntities(declarations, classAliases);
         final HashMap<String, Entity> entityNames =
                 new HashMap<String, Entity>();
-        final ImmutableSet.Builder<Entity> entityBuilder =
-                ImmutableSet.builder();
+        for (int i = 0; i < entities.length; i++) {
+            entityNames.put(declarations.get(i).getName(), entities[i]);
+        }
+
+        // Check every reference, including those of overridden placements
+        for (final LevelStatement statement : statements) {
+            final int loc = statement.getLocation();
+            if (statement instanceof LevelStatement.Connection) {
+                final LevelStatement.Connection connection =
+                        (LevelStatement.Connection) statement;
+                validateEntity(entityNames.get(connection.getNameLeft()),
+                        connection.getNameLeft(), loc);
+                validateEntity(entityNames.get(connection.getNameRight()),
+                        connection.getNameRight(), loc);
+            } else if (statement instanceof LevelStatement.Position) {
+                final LevelStatement.Position position =
+                        (LevelStatement.Position) statement;
+                validateEntity(entityNames.get(position.getName()),
+                        position.getName(), loc);
+                if (position.getRelativeTo().isPresent()) {
+                    validateEntity(entityNames.get(position.getRelativeTo()
+                            .get()), position.getRelativeTo().get(), loc);
+                }
+            }
+        }
+
         // Temporary variables:
         final Matrix4f baseMatrix = new Matrix4f();
         final Matrix4f transformMatrix = new Matrix4f();
@@ -132,14 +366,9 @@ public final class LevelLoader {
         final Vector3f translationVector = new Vector3f();
         final Transform movedTransform = new Transform();
 
-        for (final LevelStatement statement : statements) {
+        for (final LevelStatement statement : sortPlacements(placements)) {
             final int loc = statement.getLocation();
-            if (statement instanceof LevelStatement.Alias) {
-                final LevelStatement.Alias alias =
-                        (LevelStatement.Alias) statement;
-                classAliases.put(alias.getAlias(),
-                        loadEntityClass(alias.getAliasedClass(), loc));
-            } else if (statement instanceof LevelStatement.Connection) {
+            if (statement instanceof LevelStatement.Connection) {
                 final LevelStatement.Connection connection =
                         (LevelStatement.Connection) statement;
                 final String movedEntityName = connection.getNameLeft();
@@ -211,24 +440,6 @@ public final class LevelLoader {
 
                 // Use the calculated transform for the moved entity
                 movedEntity.setTransform(movedTransform);
-            } else if (statement instanceof LevelStatement.Declaration) {
-                final LevelStatement.Declaration declaration =
-                        (LevelStatement.Declaration) statement;
-                final String className = declaration.getClassName();
-                Class<? extends Entity> entityClass =
-                        classAliases.get(className);
-
-                // We aren't using a class alias; load the class directly
-                if (entityClass == null) {
-                    entityClass = loadEntityClass(className, loc);
-                }
-
-                final Entity entity =
-                        createEntity(entityClass, declaration.getInitArgs(),
-                                className, loc);
-                entity.setName(declaration.getName());
-                entityNames.put(declaration.getName(), entity);
-                entityBuilder.add(entity);
             } else if (statement instanceof LevelStatement.Position) {
                 final LevelStatement.Position position =
                         (LevelStatement.Position) statement;
@@ -272,11 +483,35 @@ public final class LevelLoader {
             }
         }
 
-        // Calculate the bounding box.
+        return ImmutableSet.copyOf(entities);
+    }
 
-        final ImmutableSet<Entity> set = entityBuilder.build();
+    /**
+     * Creates the entities of a compiled level.
+     * 
+     * @param level
+     *            The compiled level.
+     * @return The produced set of world entities.
+     * @throws LevelLoadException
+     *             If an entity class could not be loaded or instantiated.
+     */
+    public ImmutableSet<Entity> runCompiledLevel(final CompiledLevel level)
+            throws LevelLoadException {
+        final ImmutableList<CompiledLevel.Record> records = level.getRecords();
+        final List<LevelStatement.Declaration> declarations =
+                Lists.newArrayListWithCapacity(records.size());
+        for (final CompiledLevel.Record record : records) {
+            declarations.add(new LevelStatement.Declaration(-1, record
+                    .getName(), record.getClassName(), record.getArgs()));
+        }
 
-        return set;
+        final Entity[] entities =
+                createEntities(declarations,
+                        ImmutableMap.<String, Class<? extends Entity>> of());
+        for (int i = 0; i < entities.length; i++) {
+            entities[i].setTransform(records.get(i).getTransform());
+        }
+        return ImmutableSet.copyOf(entities);
     }
 
     private Optional<String> discardEmpty(final String string) {
@@ -306,7 +541,7 @@ public final class LevelLoader {
             final int loc) throws LevelLoadException {
 
         try {
-            return ConstructorUtils.invokeConstructor(entityClass,
+            return findConstructor(entityClass, args).newInstance(
                     args.toArray());
         } catch (final InstantiationException e) {
             throw new LevelLoadException("Could not create a new `" + className
@@ -390,13 +625,32 @@ public final class LevelLoader {
         }
     }
 
+    /**
+     * Loads a level pack. The levels are either listed in the
+     * {@code "levels"} array of the pack, or in a separate index file named by
+     * the {@code "index"} property, which is read lazily; see
+     * {@link MetaLevelIndex}.
+     */
     MetaLevelPack loadMetaLevelPack(final JSONObject object, final URL packURL)
-            throws JSONException, LevelLoadException {
+            throws JSONException, LevelLoadException, IOException {
+        final List<MetaLevel> levels;
+        if (object.has("index")) {
+            try {
+                levels =
+                        MetaLevelIndex.read(makeRelativeURL(
+                                Optional.of(packURL),
+                                object.getString("index")));
+            } catch (final MalformedURLException e) {
+                throw new LevelLoadException("Invalid index URI",
+                        LevelLoadException.Kind.INVALID_URI, -1, e);
+            }
+        } else {
+            levels = loadMetaLevels(object.getJSONArray("levels"), packURL);
+        }
         return new MetaLevelPack(object.getString("name"),
                 discardEmpty(object.optString("version")),
                 discardEmpty(object.optString("description")),
-                discardEmpty(object.optString("author")), loadMetaLevels(
-                        object.getJSONArray("levels"), packURL));
+                discardEmpty(object.optString("author")), levels);
     }
 
     ImmutableList<MetaLevel> loadMetaLevels(final JSONArray array,
@@ -419,6 +673,52 @@ public final class LevelLoader {
             return new URL(relativeURLString);
     }
 
+    /**
+     * Records the entities that were produced by running a series of level
+     * statements.
+     * 
+     * @param statements
+     *            The statements that were run.
+     * @param entities
+     *            The entities that running the statements produced, in
+     *            declaration order.
+     * @param sourceHash
+     *            The hash of the source that the statements were parsed from.
+     */
+    CompiledLevel compileStatements(
+            final ImmutableList<LevelStatement> statements,
+            final ImmutableSet<Entity> entities, final String sourceHash)
+            throws LevelLoadException {
+        final HashMap<String, String> classAliases =
+                new HashMap<String, String>();
+        final ImmutableList.Builder<CompiledLevel.Record> records =
+                ImmutableList.builder();
+        final Iterator<Entity> entityIterator = entities.iterator();
+
+        for (final LevelStatement statement : statements) {
+            if (statement instanceof LevelStatement.Alias) {
+                final LevelStatement.Alias alias =
+                        (LevelStatement.Alias) statement;
+                classAliases.put(alias.getAlias(), alias.getAliasedClass());
+            } else if (statement instanceof LevelStatement.Declaration) {
+                final LevelStatement.Declaration declaration =
+                        (LevelStatement.Declaration) statement;
+                String className =
+                        classAliases.get(declaration.getClassName());
+                if (className == null) {
+                    className = declaration.getClassName();
+                }
+
+                final Entity entity = entityIterator.next();
+                records.add(new CompiledLevel.Record(declaration.getName(),
+                        loadEntityClass(className, statement.getLocation())
+                                .getName(), declaration.getInitArgs(), entity
+                                .getTransform()));
+            }
+        }
+        return new CompiledLevel(sourceHash, records.build());
+    }
+
     /**
      * Checks to see that a connector is valid; throws an exception otherwise.
      */
@@ -457,4 +757,278 @@ public final class LevelLoader {
                     + "' does not support connectivity",
                     LevelLoadException.Kind.INCOMPATIBLE_ENTITY, loc);
     }
+
+    /**
+     * Constructs the entities of a series of declarations, splitting large
+     * series across the worker threads.
+     * 
+     * @return The constructed entities, in declaration order.
+     * @throws LevelLoadException
+     *             for the first declaration that could not be constructed.
+     */
+    private Entity[] createEntities(
+            final List<LevelStatement.Declaration> declarations,
+            final Map<String, Class<? extends Entity>> classAliases)
+            throws LevelLoadException {
+        final Entity[] entities = new Entity[declarations.size()];
+        final int taskCount =
+                Math.min(Runtime.getRuntime().availableProcessors(),
+                        (entities.length + DECLARATIONS_PER_TASK - 1)
+                                / DECLARATIONS_PER_TASK);
+        if (taskCount <= 1) {
+            createEntities(declarations, classAliases, entities, 0,
+                    entities.length);
+            return entities;
+        }
+
+        final List<Callable<Void>> tasks = Lists.newArrayList();
+        for (int i = 0; i < taskCount; i++) {
+            final int start = entities.length * i / taskCount;
+            final int end = entities.length * (i + 1) / taskCount;
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws LevelLoadException {
+                    createEntities(declarations, classAliases, entities,
+                            start, end);
+                    return null;
+                }
+            });
+        }
+
+        try {
+            Workers.runAll(tasks);
+        } catch (final LevelLoadException e) {
+            throw e;
+        } catch (final RuntimeException e) {
+            throw e;
+        } catch (final Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            throw new LevelLoadException("Could not create entities: "
+                    + e.getMessage(),
+                    LevelLoadException.Kind.INITIALIZATION_ERROR, -1, e);
+        }
+        return entities;
+    }
+
+    /**
+     * Constructs the entities of a range of declarations, in order.
+     */
+    private void createEntities(
+            final List<LevelStatement.Declaration> declarations,
+            final Map<String, Class<? extends Entity>> classAliases,
+            final Entity[] entities, final int start, final int end)
+            throws LevelLoadException {
+        for (int i = start; i < end; i++) {
+            final LevelStatement.Declaration declaration = declarations.get(i);
+            final int loc = declaration.getLocation();
+            final String className = declaration.getClassName();
+            Class<? extends Entity> entityClass = classAliases.get(className);
+
+            // We aren't using a class alias; load the class directly
+            if (entityClass == null) {
+                entityClass = loadEntityClass(className, loc);
+            }
+
+            final Entity entity =
+                    createEntity(entityClass, declaration.getInitArgs(),
+                            className, loc);
+            entity.setName(declaration.getName());
+            entities[i] = entity;
+        }
+    }
+
+    /**
+     * Finds the constructor of an entity class that accepts the specified
+     * arguments. Resolved constructors are cached per argument type signature,
+     * since levels tend to declare many entities of the same kind.
+     */
+    private static Constructor<? extends Entity> findConstructor(
+            final Class<? extends Entity> entityClass,
+            final ImmutableList<Object> args) throws NoSuchMethodException {
+        final Class<?>[] argTypes = new Class<?>[args.size()];
+        final ImmutableList.Builder<Class<?>> keyBuilder =
+                ImmutableList.builder();
+        keyBuilder.add(entityClass);
+        for (int i = 0; i < argTypes.length; i++) {
+            argTypes[i] = args.get(i).getClass();
+            keyBuilder.add(argTypes[i]);
+        }
+        final ImmutableList<Class<?>> key = keyBuilder.build();
+
+        final Constructor<? extends Entity> cached = constructors.get(key);
+        if (cached != null)
+            return cached;
+
+        final Constructor<? extends Entity> constructor =
+                ConstructorUtils.getMatchingAccessibleConstructor(entityClass,
+                        argTypes);
+        if (constructor == null)
+            throw new NoSuchMethodException("No such accessible constructor on "
+                    + entityClass.getName());
+        constructors.putIfAbsent(key, constructor);
+        return constructor;
+    }
+
+    /**
+     * Finds where the compiled form of a level should be stored, if anywhere.
+     */
+    private Optional<File> getCompiledFile(final URL url) {
+        if ("file".equals(url.getProtocol())) {
+            try {
+                return Optional.of(new File(new File(url.toURI()).getPath()
+                        + COMPILED_SUFFIX));
+            } catch (final URISyntaxException e) {
+                // Fall through and treat it like any other URL
+            }
+        }
+        if (compiledDirectory.isPresent())
+            return Optional.of(new File(compiledDirectory.get(), Hashing
+                    .sha1().hashString(url.toExternalForm(), Charsets.UTF_8)
+                    + ".level" + COMPILED_SUFFIX));
+        else
+            return Optional.absent();
+    }
+
+    /**
+     * The name of the entity that a placement statement places its entity
+     * relative to, if any.
+     */
+    private static Optional<String> getBaseName(
+            final LevelStatement placement) {
+        if (placement instanceof LevelStatement.Connection)
+            return Optional.of(((LevelStatement.Connection) placement)
+                    .getNameRight());
+        else
+            return ((LevelStatement.Position) placement).getRelativeTo();
+    }
+
+    private static String hashSource(final URL url) throws IOException {
+        return Hashing.sha1().hashBytes(Resources.toByteArray(url))
+                .toString();
+    }
+
+    /**
+     * Reads a compiled level, if it exists and is readable.
+     */
+    private static Optional<CompiledLevel> readCompiledLevel(final File file) {
+        if (!file.isFile())
+            return Optional.absent();
+
+        InputStream input = null;
+        try {
+            input = new FileInputStream(file);
+            return Optional.of(CompiledLevel.read(input));
+        } catch (final IOException e) {
+            log.warning("Ignoring unreadable compiled level " + file + ": "
+                    + e.getMessage());
+            return Optional.absent();
+        } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (final IOException e) {
+                    // Nothing was written, so nothing was lost
+                }
+            }
+        }
+    }
+
+    /**
+     * Orders placement statements so that every entity is placed after the
+     * entity that it is placed relative to. Since each statement depends on
+     * at most one other entity, the chains of dependencies are followed
+     * iteratively, so that long chains of connected entities don't overflow
+     * the stack.
+     * 
+     * @param placements
+     *            The statement that places each entity, by the name of the
+     *            entity.
+     * @throws LevelLoadException
+     *             if the placement of an entity depends on itself.
+     */
+    private static ImmutableList<LevelStatement> sortPlacements(
+            final Map<String, LevelStatement> placements)
+            throws LevelLoadException {
+        final ImmutableList.Builder<LevelStatement> order =
+                ImmutableList.builder();
+        final Set<String> placed = Sets.newHashSet();
+
+        for (final String first : placements.keySet()) {
+            // The entities whose placement is waiting for the next one
+            final LinkedHashSet<String> chain = Sets.newLinkedHashSet();
+            String name = first;
+            while (!placed.contains(name) && placements.containsKey(name)) {
+                if (!chain.add(name)) {
+                    final List<String> names = Lists.newArrayList(chain);
+                    final List<String> cycle =
+                            names.subList(names.indexOf(name), names.size());
+                    throw new LevelLoadException("The placement of `" + name
+                            + "' depends on itself (" + Joiner.on(" -> ")
+                                    .join(cycle) + " -> " + name + ")",
+                            LevelLoadException.Kind.CYCLIC_PLACEMENT,
+                            placements.get(name).getLocation());
+                }
+                final Optional<String> base = getBaseName(placements.get(name));
+                if (!base.isPresent()) {
+                    break;
+                }
+                name = base.get();
+            }
+
+            for (final String waiting : Lists.reverse(Lists
+                    .newArrayList(chain))) {
+                placed.add(waiting);
+                order.add(placements.get(waiting));
+            }
+        }
+        return order.build();
+    }
+
+    /**
+     * Writes a compiled level to a temporary file next to the target file, and
+     * renames it over the target once it is complete, so that other readers
+     * never see a partially written level.
+     */
+    private static void writeCompiledLevel(final File file,
+            final CompiledLevel level) {
+        OutputStream output = null;
+        File temporary = null;
+        try {
+            final File directory = file.getParentFile();
+            if (!directory.isDirectory() && !directory.mkdirs())
+                throw new IOException("Could not create " + directory);
+            temporary =
+                    File.createTempFile(file.getName() + ".", ".tmp",
+                            directory);
+            output = new FileOutputStream(temporary);
+            level.write(output);
+            output.close();
+            output = null;
+
+            // Renaming over an existing file fails on some platforms
+            if (!temporary.renameTo(file)
+                    && !(file.delete() && temporary.renameTo(file)))
+                throw new IOException("Could not rename " + temporary);
+            temporary = null;
+        } catch (final IOException e) {
+            log.warning("Could not write compiled level " + file + ": "
+                    + e.getMessage());
+        } catch (final IllegalArgumentException e) {
+            log.warning("Could not compile level for " + file + ": "
+                    + e.getMessage());
+        } finally {
+            if (output != null) {
+                try {
+                    output.close();
+                } catch (final IOException e) {
+                    // The write already failed and was logged
+                }
+            }
+            if (temporary != null && !temporary.delete()) {
+                log.warning("Could not delete " + temporary);
+            }
+        }
+    }
 }
@@ -0,0 +1,157 @@
+package org.marble.level;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+
+/**
+ * Loads levels that are likely to be played soon in the background, so that
+ * switching to them doesn't require waiting for them to load.
+ * 
+ * <p>
+ * Prefetched levels hold on to all of their built geometry, so a level is only
+ * prefetched while the heap has a certain amount of headroom, and a finished
+ * prefetch is dropped if the headroom has shrunk below that amount in the
+ * meantime. This class must only be used from a single thread.
+ */
+public class LevelPrefetcher {
+    /**
+     * Loads a level and builds its entities.
+     */
+    public interface Loader {
+        /**
+         * @return the level, with built, but not initialized, entities
+         */
+        public LoadedLevel load(MetaLevel level) throws Exception;
+    }
+
+    private static final Logger log = Logger.getLogger(LevelPrefetcher.class
+            .getName());
+
+    // The executor to load levels on
+    private final ExecutorService executor;
+
+    // How much free heap space is required to prefetch a level
+    private final long headroom;
+
+    private final Loader loader;
+
+    // The levels that are being or have been prefetched, by UUID
+    private final Map<UUID, Future<Optional<LoadedLevel>>> prefetched =
+            Maps.newHashMap();
+
+    /**
+     * Creates a new level prefetcher.
+     * 
+     * @param executor
+     *            The executor to load levels on.
+     * @param loader
+     *            The way to load levels.
+     * @param headroom
+     *            The number of bytes of free heap space that are required to
+     *            start or keep a prefetch.
+     */
+    public LevelPrefetcher(final ExecutorService executor,
+            final Loader loader, final long headroom) {
+        this.executor = executor;
+        this.loader = loader;
+        this.headroom = headroom;
+    }
+
+    /**
+     * Drops all prefetched levels, cancelling the prefetches that haven't
+     * started yet.
+     */
+    public void clear() {
+        for (final Future<?> future : prefetched.values()) {
+            future.cancel(false);
+        }
+        prefetched.clear();
+    }
+
+    /**
+     * Prefetches the specified levels. Prefetches of other levels are dropped.
+     * 
+     * @param levels
+     *            The levels that are likely to be played next, most likely
+     *            first.
+     */
+    public void prefetch(final Iterable<MetaLevel> levels) {
+        final ImmutableSet.Builder<UUID> wantedBuilder = ImmutableSet.builder();
+        for (final MetaLevel level : levels) {
+            wantedBuilder.add(level.getUUID());
+        }
+        final ImmutableSet<UUID> wanted = wantedBuilder.build();
+
+        final Iterator<Map.Entry<UUID, Future<Optional<LoadedLevel>>>> iterator =
+                prefetched.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<UUID, Future<Optional<LoadedLevel>>> entry =
+                    iterator.next();
+            if (!wanted.contains(entry.getKey())) {
+                entry.getValue().cancel(false);
+                iterator.remove();
+            }
+        }
+
+        for (final MetaLevel level : levels) {
+            if (prefetched.containsKey(level.getUUID())) {
+                continue;
+            }
+            if (getHeadroom() < headroom) {
+                log.fine("Not prefetching " + level.getName()
+                        + ": Not enough free memory");
+                break;
+            }
+            prefetched.put(level.getUUID(),
+                    executor.submit(new Prefetch(level)));
+        }
+    }
+
+    /**
+     * Takes the result of prefetching a level, if it has been prefetched. The
+     * result can only be taken once. Waiting for the result from a task on
+     * the executor that levels are prefetched on is only safe if that executor
+     * runs a single thread.
+     * 
+     * @return A future that produces the loaded level, or nothing if the level
+     *         was dropped because there wasn't enough memory.
+     */
+    public Optional<Future<Optional<LoadedLevel>>> take(final MetaLevel level) {
+        return Optional.fromNullable(prefetched.remove(level.getUUID()));
+    }
+
+    private static long getHeadroom() {
+        final Runtime runtime = Runtime.getRuntime();
+        return runtime.maxMemory()
+                - (runtime.totalMemory() - runtime.freeMemory());
+    }
+
+    private final class Prefetch implements Callable<Optional<LoadedLevel>> {
+        private final MetaLevel level;
+
+        public Prefetch(final MetaLevel level) {
+            this.level = level;
+        }
+
+        @Override
+        public Optional<LoadedLevel> call() throws Exception {
+            final LoadedLevel loaded = loader.load(level);
+            if (getHeadroom() < headroom) {
+                log.fine("Dropping prefetched " + level.getName()
+                        + ": Not enough free memory");
+                return Optional.absent();
+            }
+            log.fine("Prefetched " + level.getName());
+            return Optional.of(loaded);
+        }
+    }
+}
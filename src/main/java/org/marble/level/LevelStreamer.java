@@ -0,0 +1,398 @@
+package org.marble.level;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.jme3.math.Vector3f;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import org.marble.entity.Entity;
+import org.marble.entity.EntityManager;
+
+/**
+ * Keeps only the parts of a large level that are close to a point of
+ * interest, usually the player ball, active.
+ * 
+ * <p>
+ * The level is divided into square cells on the horizontal plane, and every
+ * entity belongs to the cell that contains its origin. The entities of a cell
+ * are only constructed and built in the background when the cell comes within
+ * the deactivation distance. Cells are activated when they come within the
+ * activation distance, and deactivated again when they are farther away than
+ * the deactivation distance. The gap between the two distances keeps cells at
+ * the border from being toggled back and forth. Deactivated cells keep their
+ * entities, so returning to them is cheap, until they are farther away than
+ * the eviction distance; then their entities are destroyed and dropped, and
+ * only the records to re-create them from are kept.
+ * 
+ * <p>
+ * Entities are assigned to cells by their origin only, so the activation
+ * distance should be larger than the largest entity in the level.
+ */
+public class LevelStreamer {
+    /**
+     * Creates and builds the entities of a cell.
+     */
+    public interface Builder {
+        /**
+         * Creates and builds the entities of some of the records of the level.
+         * This is called on the executor of the streamer, or on the thread
+         * that calls {@link LevelStreamer#prepare(Vector3f)}.
+         * 
+         * @param cell
+         *            The records of the entities to create.
+         * @return The created entities in the order of the records, which
+         *         have been built but not initialized.
+         */
+        public ImmutableSet<Entity> build(CompiledLevel cell) throws Exception;
+    }
+
+    /**
+     * The default distance within which cells are activated.
+     */
+    public static final float DEFAULT_ACTIVATION_DISTANCE = 96;
+
+    /**
+     * The default size of a cell.
+     */
+    public static final float DEFAULT_CELL_SIZE = 32;
+
+    /**
+     * The default distance beyond which cells are deactivated.
+     */
+    public static final float DEFAULT_DEACTIVATION_DISTANCE = 128;
+
+    /**
+     * The default distance beyond which the entities of cells are destroyed.
+     */
+    public static final float DEFAULT_EVICTION_DISTANCE = 256;
+
+    private enum State {
+        // Only the records of the cell exist
+        Unbuilt,
+        // The entities of the cell are being created and built
+        Building,
+        // The entities have been built, but aren't managed yet
+        Built,
+        // The entities are managed and handled by the engines
+        Active,
+        // The entities are managed, but not handled by the engines
+        Inactive
+    }
+
+    private static final class Cell {
+        Future<ImmutableSet<Entity>> build;
+        ImmutableSet<Entity> entities;
+        final CompiledLevel records;
+        State state = State.Unbuilt;
+        final int x, y;
+
+        Cell(final int x, final int y, final CompiledLevel records) {
+            this.x = x;
+            this.y = y;
+            this.records = records;
+        }
+    }
+
+    private final float activationDistance;
+
+    private final Builder builder;
+
+    private final float cellSize;
+
+    private final Map<Long, Cell> cells = Maps.newHashMap();
+
+    private final float deactivationDistance;
+
+    private final float evictionDistance;
+
+    // The executor that cells are built on
+    private final ExecutorService executor;
+
+    // The hash of the source of the streamed level
+    private final String sourceHash;
+
+    /**
+     * Creates a new level streamer with the default cell size and distances.
+     * 
+     * @see #LevelStreamer(CompiledLevel, Builder, ExecutorService, float,
+     *      float, float, float)
+     */
+    public LevelStreamer(final CompiledLevel level, final Builder builder,
+            final ExecutorService executor) {
+        this(level, builder, executor, DEFAULT_CELL_SIZE,
+                DEFAULT_ACTIVATION_DISTANCE, DEFAULT_DEACTIVATION_DISTANCE,
+                DEFAULT_EVICTION_DISTANCE);
+    }
+
+    /**
+     * Creates a new level streamer.
+     * 
+     * @param level
+     *            The compiled level to stream.
+     * @param builder
+     *            The way to create and build the entities of a cell.
+     * @param executor
+     *            The executor to build cells on. Cells are built one at a
+     *            time.
+     * @param cellSize
+     *            The width and depth of a cell.
+     * @param activationDistance
+     *            The distance within which cells are activated.
+     * @param deactivationDistance
+     *            The distance beyond which cells are deactivated. Must be
+     *            larger than the activation distance.
+     * @param evictionDistance
+     *            The distance beyond which the entities of cells are
+     *            destroyed. Must be larger than the deactivation distance.
+     */
+    public LevelStreamer(final CompiledLevel level, final Builder builder,
+            final ExecutorService executor, final float cellSize,
+            final float activationDistance, final float deactivationDistance,
+            final float evictionDistance) {
+        if (deactivationDistance <= activationDistance)
+            throw new IllegalArgumentException(
+                    "The deactivation distance must be larger than the "
+                            + "activation distance");
+        if (evictionDistance <= deactivationDistance)
+            throw new IllegalArgumentException(
+                    "The eviction distance must be larger than the "
+                            + "deactivation distance");
+        this.builder = builder;
+        this.executor = executor;
+        this.cellSize = cellSize;
+        this.activationDistance = activationDistance;
+        this.deactivationDistance = deactivationDistance;
+        this.evictionDistance = evictionDistance;
+        sourceHash = level.getSourceHash();
+
+        final Map<Long, ImmutableList.Builder<CompiledLevel.Record>> records =
+                Maps.newHashMap();
+        for (final CompiledLevel.Record record : level.getRecords()) {
+            final Vector3f translation = record.getTransform().getTranslation();
+            final Long key =
+                    keyOf((int) Math.floor(translation.x / cellSize),
+                            (int) Math.floor(translation.y / cellSize));
+            ImmutableList.Builder<CompiledLevel.Record> cellRecords =
+                    records.get(key);
+            if (cellRecords == null) {
+                cellRecords = ImmutableList.builder();
+                records.put(key, cellRecords);
+            }
+            cellRecords.add(record);
+        }
+        for (final Long key : records.keySet()) {
+            cells.put(key, new Cell((int) (key >> 32), key.intValue(),
+                    new CompiledLevel(sourceHash, records.get(key).build())));
+        }
+    }
+
+    /**
+     * The entities that are active right now.
+     */
+    public ImmutableSet<Entity> getActiveEntities() {
+        final ImmutableSet.Builder<Entity> active = ImmutableSet.builder();
+        for (final Cell cell : cells.values()) {
+            if (cell.state == State.Active) {
+                active.addAll(cell.entities);
+            }
+        }
+        return active.build();
+    }
+
+    /**
+     * The number of cells that the level was divided into.
+     */
+    public int getCellCount() {
+        return cells.size();
+    }
+
+    /**
+     * The number of cells whose entities exist right now.
+     */
+    public int getLoadedCellCount() {
+        int count = 0;
+        for (final Cell cell : cells.values()) {
+            if (cell.entities != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Creates and builds the cells that are within the activation distance of
+     * a point on the calling thread, and marks them as active. This is meant
+     * to be done while loading the level; the entities of the active cells
+     * should then be handed to the entity manager.
+     * 
+     * @param position
+     *            The point that the level is first played around.
+     * @see #getActiveEntities()
+     */
+    public void prepare(final Vector3f position) throws Exception {
+        final ImmutableList.Builder<CompiledLevel.Record> toBuild =
+                ImmutableList.builder();
+        final Set<Cell> prepared = Sets.newLinkedHashSet();
+        for (final Cell cell : cells.values()) {
+            if (cell.state == State.Unbuilt
+                    && distanceTo(cell, position) <= activationDistance) {
+                toBuild.addAll(cell.records.getRecords());
+                prepared.add(cell);
+            }
+        }
+
+        // Build all of the cells in one go, so that they are built in
+        // parallel
+        final ImmutableList<Entity> built =
+                builder.build(new CompiledLevel(sourceHash, toBuild.build()))
+                        .asList();
+        int next = 0;
+        for (final Cell cell : prepared) {
+            final int count = cell.records.getRecords().size();
+            cell.entities =
+                    ImmutableSet.copyOf(built.subList(next, next + count));
+            cell.state = State.Active;
+            next += count;
+        }
+    }
+
+    /**
+     * Activates, deactivates, starts building and evicts cells depending on
+     * their distance to a point. The entities of all of the cells that change
+     * are handed to the entity manager in one go. Must be called on the game
+     * thread.
+     * 
+     * @param position
+     *            The point of interest.
+     * @param entityManager
+     *            The entity manager that manages the entities of the level.
+     * @throws Exception
+     *             if building a cell failed.
+     */
+    public void update(final Vector3f position,
+            final EntityManager entityManager) throws Exception {
+        final Set<Entity> added = Sets.newHashSet();
+        final Set<Entity> activated = Sets.newHashSet();
+        final Set<Entity> deactivated = Sets.newHashSet();
+        final Set<Entity> evicted = Sets.newHashSet();
+        Exception failure = null;
+
+        for (final Cell cell : cells.values()) {
+            final float distance = distanceTo(cell, position);
+            switch (cell.state) {
+            case Unbuilt:
+                if (distance <= deactivationDistance) {
+                    startBuilding(cell);
+                }
+                break;
+            case Building:
+                if (cell.build.isDone()) {
+                    try {
+                        finishBuilding(cell);
+                    } catch (final Exception e) {
+                        failure = e;
+                    }
+                }
+                break;
+            case Built:
+                if (distance <= activationDistance) {
+                    added.addAll(cell.entities);
+                    cell.state = State.Active;
+                } else if (distance > evictionDistance) {
+                    // Nothing has been initialized yet
+                    cell.entities = null;
+                    cell.state = State.Unbuilt;
+                }
+                break;
+            case Active:
+                if (distance > deactivationDistance) {
+                    deactivated.addAll(cell.entities);
+                    cell.state = State.Inactive;
+                }
+                break;
+            case Inactive:
+                if (distance <= activationDistance) {
+                    activated.addAll(cell.entities);
+                    cell.state = State.Active;
+                } else if (distance > evictionDistance) {
+                    evicted.addAll(cell.entities);
+                    cell.entities = null;
+                    cell.state = State.Unbuilt;
+                }
+                break;
+            }
+        }
+
+        if (!evicted.isEmpty()) {
+            entityManager.removeEntities(evicted);
+        }
+        if (!deactivated.isEmpty()) {
+            entityManager.deactivateEntities(deactivated);
+        }
+        if (!activated.isEmpty()) {
+            entityManager.activateEntities(activated);
+        }
+        if (!added.isEmpty()) {
+            entityManager.swapEntities(ImmutableSet.<Entity> of(), added);
+        }
+        if (failure != null)
+            throw failure;
+    }
+
+    /**
+     * The distance on the horizontal plane from a point to the closest point
+     * of a cell.
+     */
+    private float distanceTo(final Cell cell, final Vector3f position) {
+        final float minX = cell.x * cellSize, minY = cell.y * cellSize;
+        final float dx =
+                Math.max(0, Math.max(minX - position.x, position.x - minX
+                        - cellSize));
+        final float dy =
+                Math.max(0, Math.max(minY - position.y, position.y - minY
+                        - cellSize));
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+
+    private void finishBuilding(final Cell cell) throws Exception {
+        final ImmutableSet<Entity> entities;
+        try {
+            entities = cell.build.get();
+        } catch (final ExecutionException e) {
+            // Try again if the cell comes within range again
+            cell.build = null;
+            cell.state = State.Unbuilt;
+            final Throwable cause = e.getCause();
+            if (cause instanceof Exception)
+                throw (Exception) cause;
+            else
+                throw e;
+        }
+        cell.build = null;
+        cell.entities = entities;
+        cell.state = State.Built;
+    }
+
+    private static Long keyOf(final int x, final int y) {
+        return ((long) x << 32) | (y & 0xffffffffL);
+    }
+
+    private void startBuilding(final Cell cell) {
+        cell.state = State.Building;
+        cell.build = executor.submit(new Callable<ImmutableSet<Entity>>() {
+            @Override
+            public ImmutableSet<Entity> call() throws Exception {
+                return builder.build(cell.records);
+            }
+        });
+    }
+}
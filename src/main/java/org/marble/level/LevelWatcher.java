@@ -0,0 +1,164 @@
+package org.marble.level;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.List;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.codehaus.jparsec.error.ParserException;
+
+import org.marble.entity.Entity;
+
+/**
+ * Watches the file of a level for changes, so that a level can be edited
+ * while it is being played. When the file changes, only the entities whose
+ * records changed are re-created; see {@link LevelDiff}.
+ */
+public final class LevelWatcher {
+    /**
+     * The entities that have to be exchanged to bring a level up to date.
+     */
+    public static final class Reload {
+        private final ImmutableSet<Entity> added;
+        private final ImmutableSet<Entity> removed;
+        private final LevelWatcher watcher;
+
+        Reload(final ImmutableSet<Entity> added,
+                final ImmutableSet<Entity> removed,
+                final LevelWatcher watcher) {
+            this.added = added;
+            this.removed = removed;
+            this.watcher = watcher;
+        }
+
+        /**
+         * The new entities, which have been constructed but not built.
+         */
+        public ImmutableSet<Entity> getAdded() {
+            return added;
+        }
+
+        /**
+         * The entities that should be destroyed.
+         */
+        public ImmutableSet<Entity> getRemoved() {
+            return removed;
+        }
+
+        /**
+         * The watcher that watches the reloaded level.
+         */
+        public LevelWatcher getWatcher() {
+            return watcher;
+        }
+    }
+
+    private final CompiledLevel compiled;
+    private final ImmutableList<Entity> entities;
+    private final File file;
+    private long lastModified;
+    private final URL url;
+
+    private LevelWatcher(final URL url, final File file,
+            final long lastModified, final CompiledLevel compiled,
+            final ImmutableList<Entity> entities) {
+        this.url = url;
+        this.file = file;
+        this.lastModified = lastModified;
+        this.compiled = compiled;
+        this.entities = entities;
+    }
+
+    /**
+     * Starts watching a level that has just been loaded.
+     * 
+     * @param url
+     *            The URL that the level was loaded from. Only levels that are
+     *            files can be watched.
+     * @param compiled
+     *            The compiled form of the level.
+     * @param entities
+     *            The entities of the level, in declaration order.
+     * @return The watcher, or nothing if the level isn't a file.
+     */
+    public static Optional<LevelWatcher> watch(final URL url,
+            final CompiledLevel compiled, final List<Entity> entities) {
+        if (entities.size() != compiled.getRecords().size())
+            throw new IllegalArgumentException(
+                    "The entities don't match the compiled level");
+        if (!"file".equals(url.getProtocol()))
+            return Optional.absent();
+
+        final File file;
+        try {
+            file = new File(url.toURI());
+        } catch (final URISyntaxException e) {
+            return Optional.absent();
+        }
+        return Optional.of(new LevelWatcher(url, file, file.lastModified(),
+                compiled, ImmutableList.copyOf(entities)));
+    }
+
+    /**
+     * The URL of the watched level.
+     */
+    public URL getURL() {
+        return url;
+    }
+
+    /**
+     * Checks whether the file of the level has been modified since it was
+     * last checked.
+     */
+    public boolean poll() {
+        final long modified = file.lastModified();
+        if (modified == lastModified)
+            return false;
+        lastModified = modified;
+        return true;
+    }
+
+    /**
+     * Loads the modified level, and constructs the entities that were added
+     * or changed. This may be called on any thread, but the watcher must not
+     * be polled at the same time.
+     * 
+     * @param loader
+     *            The loader to load the level with.
+     * @return The entities to exchange, and the watcher that should replace
+     *         this one once they have been exchanged.
+     * @throws ParserException
+     *             if the level file contained syntax errors.
+     * @throws LevelLoadException
+     *             if the level could not be loaded for logical reasons.
+     * @throws IOException
+     *             if the level file could not be read.
+     */
+    public Reload reload(final LevelLoader loader) throws ParserException,
+            LevelLoadException, IOException {
+        final CompiledLevel updated = loader.loadCompiledLevel(url);
+        final LevelDiff diff = LevelDiff.between(compiled, updated);
+
+        final ImmutableList.Builder<CompiledLevel.Record> addedRecords =
+                ImmutableList.builder();
+        for (final int index : diff.getAdded()) {
+            addedRecords.add(updated.getRecords().get(index));
+        }
+        final ImmutableSet<Entity> added =
+                loader.runCompiledLevel(new CompiledLevel(updated
+                        .getSourceHash(), addedRecords.build()));
+
+        final ImmutableSet.Builder<Entity> removed = ImmutableSet.builder();
+        for (final int index : diff.getRemoved()) {
+            removed.add(entities.get(index));
+        }
+
+        return new Reload(added, removed.build(), new LevelWatcher(url, file,
+                lastModified, updated, diff.apply(entities, added.asList())));
+    }
+}
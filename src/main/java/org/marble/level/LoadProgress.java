@@ -0,0 +1,91 @@
+package org.marble.level;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The progress of a level that is being loaded in the background. It is
+ * updated by the threads that load the level, and may be read from any thread.
+ */
+public class LoadProgress {
+    /**
+     * The steps of loading a level.
+     */
+    public enum Stage {
+        Reading("Reading level"), Building("Building level"), Starting(
+                "Starting level");
+        private final String description;
+
+        private Stage(final String description) {
+            this.description = description;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    // The number of entities that have been built
+    private final AtomicInteger built = new AtomicInteger();
+
+    // The current step
+    private volatile Stage stage = Stage.Reading;
+
+    // The number of entities that have to be built
+    private volatile int toBuild = 0;
+
+    /**
+     * Enters the building stage.
+     * 
+     * @param toBuild
+     *            The number of entities that are going to be built.
+     */
+    public void beginBuilding(final int toBuild) {
+        this.toBuild = toBuild;
+        built.set(0);
+        stage = Stage.Building;
+    }
+
+    /**
+     * Enters the starting stage.
+     */
+    public void beginStarting() {
+        stage = Stage.Starting;
+    }
+
+    /**
+     * Records that an entity has been built.
+     */
+    public void entityBuilt() {
+        built.incrementAndGet();
+    }
+
+    /**
+     * The number of entities that have been built so far.
+     */
+    public int getBuilt() {
+        return built.get();
+    }
+
+    /**
+     * The current step of loading the level.
+     */
+    public Stage getStage() {
+        return stage;
+    }
+
+    /**
+     * The number of entities that have to be built.
+     */
+    public int getToBuild() {
+        return toBuild;
+    }
+
+    @Override
+    public String toString() {
+        if (stage == Stage.Building && toBuild > 0)
+            return stage.getDescription() + " (" + built.get() + "/"
+                    + toBuild + ")";
+        else
+            return stage.getDescription();
+    }
+}
@@ -0,0 +1,77 @@
+package org.marble.level;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+
+import org.marble.entity.Entity;
+
+/**
+ * A level that has been loaded, but whose entities haven't been handed to the
+ * entity manager yet.
+ */
+public class LoadedLevel {
+    private final ImmutableSet<Entity> entities;
+    private final Optional<LevelStreamer> streamer;
+    private final Optional<LevelWatcher> watcher;
+
+    /**
+     * Creates a new loaded level.
+     * 
+     * @param entities
+     *            The entities of the level that should be managed right away,
+     *            which have been built. If the level is streamed, these are
+     *            the entities of the cells around the start position.
+     * @param streamer
+     *            The streamer that creates the other entities of the level
+     *            when they are needed, if the level is streamed.
+     */
+    public LoadedLevel(final ImmutableSet<Entity> entities,
+            final Optional<LevelStreamer> streamer) {
+        this(entities, streamer, Optional.<LevelWatcher> absent());
+    }
+
+    /**
+     * Creates a new loaded level.
+     * 
+     * @param entities
+     *            The entities of the level that should be managed right away,
+     *            which have been built. If the level is streamed, these are
+     *            the entities of the cells around the start position.
+     * @param streamer
+     *            The streamer that creates the other entities of the level
+     *            when they are needed, if the level is streamed.
+     * @param watcher
+     *            The watcher that reloads the level when its file changes, if
+     *            it should be reloaded.
+     */
+    public LoadedLevel(final ImmutableSet<Entity> entities,
+            final Optional<LevelStreamer> streamer,
+            final Optional<LevelWatcher> watcher) {
+        this.entities = entities;
+        this.streamer = streamer;
+        this.watcher = watcher;
+    }
+
+    /**
+     * The entities of the level that should be managed right away.
+     */
+    public ImmutableSet<Entity> getEntities() {
+        return entities;
+    }
+
+    /**
+     * The streamer that creates and activates the other entities of the
+     * level, if the level is streamed.
+     */
+    public Optional<LevelStreamer> getStreamer() {
+        return streamer;
+    }
+
+    /**
+     * The watcher that reloads the level when its file changes, if it should
+     * be reloaded.
+     */
+    public Optional<LevelWatcher> getWatcher() {
+        return watcher;
+    }
+}
@@ -0,0 +1,166 @@
+package org.marble.level;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+import java.util.UUID;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.io.Resources;
+
+/**
+ * The levels of a level pack, read from an index file and parsed only when
+ * they are accessed.
+ * 
+ * <p>
+ * An index file has one level per line, with tab-separated fields:
+ * 
+ * <pre>
+ * uuid	uri	name	[previewUri]
+ * </pre>
+ * 
+ * URIs are relative to the index file. Empty lines and lines starting with
+ * {@code #} are ignored. Opening an index only locates the lines, so a pack
+ * with thousands of levels opens quickly, and only the levels that are shown
+ * or played are ever parsed. Each level is parsed once, so the same
+ * {@link MetaLevel} instance is returned every time.
+ */
+public class MetaLevelIndex extends AbstractList<MetaLevel> implements
+        RandomAccess {
+    private final Optional<URL> baseURL;
+
+    private final byte[] data;
+
+    // The end offset of each level line
+    private final int[] ends;
+
+    // The levels that have been parsed so far
+    private final MetaLevel[] levels;
+
+    // The start offset of each level line
+    private final int[] starts;
+
+    /**
+     * Creates a new level index.
+     * 
+     * @param data
+     *            The contents of the index file, encoded in UTF-8.
+     * @param baseURL
+     *            The URL that level URIs are relative to.
+     */
+    public MetaLevelIndex(final byte[] data, final Optional<URL> baseURL) {
+        this.data = data;
+        this.baseURL = baseURL;
+
+        final int[] lineStarts = new int[countLines(data)];
+        final int[] lineEnds = new int[lineStarts.length];
+        int count = 0;
+        int start = 0;
+        while (start < data.length) {
+            int end = start;
+            while (end < data.length && data[end] != '\n') {
+                end++;
+            }
+            int trimmedEnd = end;
+            if (trimmedEnd > start && data[trimmedEnd - 1] == '\r') {
+                trimmedEnd--;
+            }
+            if (trimmedEnd > start && data[start] != '#') {
+                lineStarts[count] = start;
+                lineEnds[count] = trimmedEnd;
+                count++;
+            }
+            start = end + 1;
+        }
+
+        starts = Arrays.copyOf(lineStarts, count);
+        ends = Arrays.copyOf(lineEnds, count);
+        levels = new MetaLevel[count];
+    }
+
+    /**
+     * Reads a level index file.
+     * 
+     * @param url
+     *            The location of the index file.
+     */
+    public static MetaLevelIndex read(final URL url) throws IOException {
+        return new MetaLevelIndex(Resources.toByteArray(url), Optional.of(url));
+    }
+
+    /**
+     * Gets a level, parsing it if it hasn't been accessed before.
+     * 
+     * @throws IllegalStateException
+     *             if the line of the level is malformed.
+     */
+    @Override
+    public MetaLevel get(final int index) {
+        if (levels[index] == null) {
+            levels[index] = parse(index);
+        }
+        return levels[index];
+    }
+
+    @Override
+    public int indexOf(final Object object) {
+        // Levels are only ever equal to themselves, so levels that haven't
+        // been parsed can't match
+        for (int i = 0; i < levels.length; i++) {
+            if (levels[i] != null && levels[i].equals(object))
+                return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public int size() {
+        return levels.length;
+    }
+
+    private static int countLines(final byte[] data) {
+        int lines = 1;
+        for (final byte b : data) {
+            if (b == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    private MetaLevel parse(final int index) {
+        final String line =
+                new String(data, starts[index], ends[index] - starts[index],
+                        Charsets.UTF_8);
+        final String[] fields = line.split("\t");
+        if (fields.length < 3 || fields.length > 4)
+            throw new IllegalStateException("Malformed level index entry "
+                    + index + ": Expected 3 or 4 fields, got "
+                    + fields.length);
+        try {
+            final UUID uuid = UUID.fromString(fields[0]);
+            final URL uri = makeURL(fields[1]);
+            final Optional<URL> previewURI =
+                    fields.length > 3 ? Optional.of(makeURL(fields[3]))
+                            : Optional.<URL> absent();
+            return new MetaLevel(fields[2], uri, previewURI, uuid);
+        } catch (final IllegalArgumentException e) {
+            throw new IllegalStateException("Malformed level index entry "
+                    + index + ": Invalid UUID", e);
+        } catch (final MalformedURLException e) {
+            throw new IllegalStateException("Malformed level index entry "
+                    + index + ": Invalid URI", e);
+        }
+    }
+
+    private URL makeURL(final String uri) throws MalformedURLException {
+        if (baseURL.isPresent())
+            return new URL(baseURL.get(), uri);
+        else
+            return new URL(uri);
+    }
+}
@@ -1,18 +1,19 @@
 package org.marble.level;
 
+import java.util.List;
+
 import com.google.common.base.Optional;
-import com.google.common.collect.ImmutableList;
 
 public class MetaLevelPack {
     private final Optional<String> author;
     private final Optional<String> description;
-    private final ImmutableList<MetaLevel> levels;
+    private final List<MetaLevel> levels;
     private final String name;
     private final Optional<String> version;
 
     public MetaLevelPack(final String name, final Optional<String> version,
             final Optional<String> description, final Optional<String> author,
-            final ImmutableList<MetaLevel> levels) {
+            final List<MetaLevel> levels) {
         this.name = name;
         this.version = version;
         this.description = description;
@@ -29,7 +30,11 @@ public class MetaLevelPack {
         return description;
     }
 
-    public ImmutableList<MetaLevel> getLevels() {
+    /**
+     * The levels of the pack. The list may parse levels lazily when they are
+     * accessed, so avoid iterating over all of it when possible.
+     */
+    public List<MetaLevel> getLevels() {
         return levels;
     }
 
@@ -0,0 +1,302 @@
+package org.marble.level;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import com.jme3.math.Vector3f;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * Generates large levels with configurable numbers of entities, for
+ * measuring how loading and the engines scale with the size of a level.
+ * 
+ * <p>
+ * The generated level has a spawn platform at the origin. Slabs, rails and
+ * spirals are shuffled and connected end to end into chains, and the chains
+ * start on a grid around the spawn platform. Lanterns and orbs are placed on
+ * top of random pieces of the chains. The same seed always produces the same
+ * level.
+ */
+public final class StressLevelGenerator {
+    // The distance between the starting points of neighbouring chains
+    private static final float CHAIN_SPACING = 64;
+
+    private int chainLength = 8;
+    private int lanternCount = 0;
+    private int orbCount = 0;
+    private int railCount = 0;
+    private final long seed;
+    private int slabCount = 0;
+    private int spiralCount = 0;
+
+    /**
+     * Creates a new generator that generates no entities besides the spawn
+     * platform until it is configured.
+     * 
+     * @param seed
+     *            The seed of the random choices of the generator.
+     */
+    public StressLevelGenerator(final long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Creates a generator for a level with roughly the specified number of
+     * entities, with a fixed mix of the different kinds of entities.
+     * 
+     * @param entityCount
+     *            The number of entities to generate, besides the spawn
+     *            platform.
+     * @param seed
+     *            The seed of the random choices of the generator.
+     */
+    public static StressLevelGenerator withEntityCount(final int entityCount,
+            final long seed) {
+        final StressLevelGenerator generator = new StressLevelGenerator(seed);
+        generator.setRailCount(entityCount / 5);
+        generator.setSpiralCount(entityCount / 10);
+        generator.setLanternCount(entityCount / 10);
+        generator.setOrbCount(entityCount / 5);
+        generator.setSlabCount(entityCount - generator.railCount
+                - generator.spiralCount - generator.lanternCount
+                - generator.orbCount);
+        return generator;
+    }
+
+    /**
+     * Generates the statements of the level.
+     * 
+     * @return The statements, which may be run by
+     *         {@link LevelLoader#runStatements}.
+     */
+    public ImmutableList<LevelStatement> generate() {
+        final Random random = new Random(seed);
+        final List<LevelStatement> statements = Lists.newArrayList();
+
+        statements.add(new LevelStatement.Alias(statements.size(), "Slab",
+                "org.marble.block.Slab"));
+        statements.add(new LevelStatement.Alias(statements.size(), "Rail",
+                "org.marble.block.Rail"));
+        statements.add(new LevelStatement.Alias(statements.size(), "Spiral",
+                "org.marble.block.Spiral"));
+        statements.add(new LevelStatement.Alias(statements.size(), "Lantern",
+                "org.marble.block.Lantern"));
+        statements.add(new LevelStatement.Alias(statements.size(), "PointOrb",
+                "org.marble.special.PointOrb"));
+
+        final List<String> kinds = Lists.newArrayList();
+        kinds.addAll(Collections.nCopies(slabCount, "Slab"));
+        kinds.addAll(Collections.nCopies(railCount, "Rail"));
+        kinds.addAll(Collections.nCopies(spiralCount, "Spiral"));
+        Collections.shuffle(kinds, random);
+
+        // All of the declarations come before the placements
+        final int placementLocation =
+                statements.size() + 1 + kinds.size() + lanternCount + orbCount;
+        final List<LevelStatement> placements = Lists.newArrayList();
+
+        statements.add(new LevelStatement.Declaration(statements.size(),
+                "spawn", "Slab", ImmutableList.<Object> of(5f, 5f, 1f)));
+        placements.add(new LevelStatement.Position(placementLocation,
+                "spawn", new Vector3f(), Optional.<String> absent(), Optional
+                        .<String> absent()));
+
+        // Lay the chains out on a square grid, leaving the center cell to
+        // the spawn platform
+        final int chainCount = (kinds.size() + chainLength - 1) / chainLength;
+        final int gridSize = (int) Math.ceil(Math.sqrt(chainCount + 1));
+        final int spawnCell = gridSize / 2 * gridSize + gridSize / 2;
+
+        final List<String> pieces = Lists.newArrayList();
+        for (int i = 0; i < kinds.size(); i++) {
+            final String kind = kinds.get(i);
+            final String name = kind.toLowerCase() + i;
+            statements.add(new LevelStatement.Declaration(statements.size(),
+                    name, kind, createArgs(kind, random)));
+
+            if (i % chainLength == 0) {
+                int cell = i / chainLength;
+                if (cell >= spawnCell) {
+                    cell++;
+                }
+                final int column = cell % gridSize - gridSize / 2;
+                final int row = cell / gridSize - gridSize / 2;
+                placements.add(new LevelStatement.Position(placementLocation
+                        + placements.size(), name, new Vector3f(column
+                        * CHAIN_SPACING, row * CHAIN_SPACING, 0), Optional
+                        .<String> absent(), Optional.<String> absent()));
+            } else {
+                placements.add(new LevelStatement.Connection(placementLocation
+                        + placements.size(), name, getStartConnector(kind),
+                        pieces.get(i - 1), getEndConnector(kinds.get(i - 1))));
+            }
+            pieces.add(name);
+        }
+
+        for (int i = 0; i < lanternCount; i++) {
+            final String name = "lantern" + i;
+            statements.add(new LevelStatement.Declaration(statements.size(),
+                    name, "Lantern", ImmutableList.<Object> of(new Vector3f(
+                            random.nextInt(11) / 10f,
+                            random.nextInt(11) / 10f,
+                            random.nextInt(11) / 10f))));
+            final String piece = pickPiece(pieces, random);
+            placements.add(new LevelStatement.Position(placementLocation
+                    + placements.size(), name, new Vector3f(0, 0, 2), Optional
+                    .of(piece), Optional.<String> absent()));
+        }
+
+        for (int i = 0; i < orbCount; i++) {
+            final String name = "orb" + i;
+            statements.add(new LevelStatement.Declaration(statements.size(),
+                    name, "PointOrb", ImmutableList.<Object> of()));
+            final String piece = pickPiece(pieces, random);
+            placements.add(new LevelStatement.Position(placementLocation
+                    + placements.size(), name, new Vector3f(0, 0, 1), Optional
+                    .of(piece), Optional.<String> absent()));
+        }
+
+        statements.addAll(placements);
+        return ImmutableList.copyOf(statements);
+    }
+
+    /**
+     * Generates the source code of the level, in the language that
+     * {@link LevelParser} parses. Parsing the source results in the same
+     * statements as {@link #generate()}, except for their locations.
+     */
+    public String generateSource() {
+        final StringBuilder builder = new StringBuilder();
+        for (final LevelStatement statement : generate()) {
+            if (statement instanceof LevelStatement.Alias) {
+                final LevelStatement.Alias alias =
+                        (LevelStatement.Alias) statement;
+                builder.append("using ").append(alias.getAlias())
+                        .append(" as ").append(alias.getAliasedClass());
+            } else if (statement instanceof LevelStatement.Connection) {
+                final LevelStatement.Connection connection =
+                        (LevelStatement.Connection) statement;
+                builder.append("connect ").append(connection.getNameLeft())
+                        .append('.').append(connection.getConnectorLeft())
+                        .append(" to ").append(connection.getNameRight())
+                        .append('.').append(connection.getConnectorRight());
+            } else if (statement instanceof LevelStatement.Declaration) {
+                final LevelStatement.Declaration declaration =
+                        (LevelStatement.Declaration) statement;
+                builder.append("let ").append(declaration.getName())
+                        .append(" be ").append(declaration.getClassName())
+                        .append('(');
+                final ImmutableList<Object> args = declaration.getInitArgs();
+                for (int i = 0; i < args.size(); i++) {
+                    if (i > 0) {
+                        builder.append(", ");
+                    }
+                    appendValue(builder, args.get(i));
+                }
+                builder.append(')');
+            } else if (statement instanceof LevelStatement.Position) {
+                final LevelStatement.Position position =
+                        (LevelStatement.Position) statement;
+                builder.append("position ").append(position.getName())
+                        .append(" at ");
+                appendValue(builder, position.getPosition());
+                if (position.getRelativeTo().isPresent()) {
+                    builder.append(" from ").append(
+                            position.getRelativeTo().get());
+                    if (position.getConnector().isPresent()) {
+                        builder.append('.').append(
+                                position.getConnector().get());
+                    }
+                }
+            }
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Sets how many pieces are connected end to end in each chain. A length
+     * of one places every piece on its own.
+     */
+    public void setChainLength(final int chainLength) {
+        if (chainLength < 1)
+            throw new IllegalArgumentException(
+                    "Chains must have at least one piece");
+        this.chainLength = chainLength;
+    }
+
+    public void setLanternCount(final int lanternCount) {
+        this.lanternCount = lanternCount;
+    }
+
+    public void setOrbCount(final int orbCount) {
+        this.orbCount = orbCount;
+    }
+
+    public void setRailCount(final int railCount) {
+        this.railCount = railCount;
+    }
+
+    public void setSlabCount(final int slabCount) {
+        this.slabCount = slabCount;
+    }
+
+    public void setSpiralCount(final int spiralCount) {
+        this.spiralCount = spiralCount;
+    }
+
+    private static void appendValue(final StringBuilder builder,
+            final Object value) {
+        if (value instanceof Float) {
+            final float number = (Float) value;
+            if (number == Math.round(number)) {
+                builder.append(Math.round(number));
+            } else {
+                builder.append(number);
+            }
+        } else if (value instanceof Vector3f) {
+            final Vector3f vector = (Vector3f) value;
+            builder.append('(');
+            appendValue(builder, vector.x);
+            builder.append(", ");
+            appendValue(builder, vector.y);
+            builder.append(", ");
+            appendValue(builder, vector.z);
+            builder.append(')');
+        } else {
+            builder.append('[').append(value).append(']');
+        }
+    }
+
+    private static ImmutableList<Object> createArgs(final String kind,
+            final Random random) {
+        if (kind.equals("Slab"))
+            return ImmutableList.<Object> of(3f + random.nextInt(6),
+                    3f + random.nextInt(6), 1f);
+        else if (kind.equals("Rail"))
+            return ImmutableList.<Object> of(5f + random.nextInt(11));
+        else
+            return ImmutableList.<Object> of(3f, 2f + random.nextInt(4),
+                    90f * (1 + random.nextInt(4)));
+    }
+
+    private static String getEndConnector(final String kind) {
+        return kind.equals("Slab") ? "north_middle" : "end_middle";
+    }
+
+    private static String getStartConnector(final String kind) {
+        return kind.equals("Slab") ? "south_middle" : "start_middle";
+    }
+
+    private static String pickPiece(final List<String> pieces,
+            final Random random) {
+        if (pieces.isEmpty())
+            return "spawn";
+        else
+            return pieces.get(random.nextInt(pieces.size()));
+    }
+}
@@ -46,15 +46,21 @@ public class Settings {
             new IntegerEntry(prefs, "graphics/samples_per_pixel", 0);
     public final MutableReactive<Integer> framerate = new IntegerEntry(prefs,
             "graphics/framerate", 60);
+    public final MutableReactive<Boolean> adaptiveQuality = new BooleanEntry(
+            prefs, "graphics/adaptive_quality", true);
     public final MutableReactive<Boolean> stereoscopic = new BooleanEntry(
             prefs, "graphics/stereoscopic", false);
     public final MutableReactive<Quality> environmentQuality =
             new EnumEntry<Quality>(prefs, "graphics/environment_quality",
                     Quality.Medium, Quality.class);
+    public final MutableReactive<Integer> environmentDistance =
+            new IntegerEntry(prefs, "graphics/environment_distance", 64);
     public final MutableReactive<Boolean> bloom = new BooleanEntry(prefs,
             "graphics/bloom", true);
     public final MutableReactive<Boolean> ssao = new BooleanEntry(prefs,
             "graphics/ssao", true);
+    public final MutableReactive<Boolean> ssaoTemporal = new BooleanEntry(
+            prefs, "graphics/ssao/temporal", true);
     public final MutableReactive<Quality> ssaoQuality = new EnumEntry<Quality>(
             prefs, "graphics/ssao/quality", Quality.Highest, Quality.class);
     public final MutableReactive<Boolean> dof = new BooleanEntry(prefs,
@@ -65,14 +71,20 @@ public class Settings {
             prefs, "graphics/dof/depth_blur", true);
     public final MutableReactive<Boolean> dofPentagonBokeh = new BooleanEntry(
             prefs, "graphics/dof/pentagon_bokeh", false);
+    public final MutableReactive<Boolean> dofFullResolution =
+            new BooleanEntry(prefs, "graphics/dof/full_resolution", false);
     public final MutableReactive<Quality> dofQuality = new EnumEntry<Quality>(
             prefs, "graphics/dof/quality", Quality.Medium, Quality.class);
+    public final MutableReactive<Boolean> bakedTextures = new BooleanEntry(
+            prefs, "graphics/baked_textures", false);
     public final MutableReactive<Boolean> musicEnabled = new BooleanEntry(
             prefs, "audio/music/enabled", true);
     public final MutableReactive<Boolean> soundEffectsEnabled =
             new BooleanEntry(prefs, "audio/effects/enabled", true);
     public final MutableReactive<String> playerName = new StringEntry(prefs,
             "player/name", "Player");
+    public final MutableReactive<Boolean> hotReload = new BooleanEntry(prefs,
+            "developer/hot_reload", false);
 
     public final EntryMap<UUID, StatisticalMetaLevel> levelStatistics =
             new StatisticsEntryMap(prefs, "statistics");
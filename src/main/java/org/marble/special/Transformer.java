@@ -25,10 +25,8 @@ import org.marble.entity.connected.Connector;
 import org.marble.entity.graphical.Graphical;
 import org.marble.entity.physical.Collidable;
 import org.marble.entity.physical.Physical;
-import org.marble.frp.FRPUtils;
 import org.marble.graphics.EnvironmentNode;
 import org.marble.graphics.GeoSphere;
-import org.marble.util.QualityToInteger;
 
 public class Transformer extends AbstractEntity implements Physical, Graphical,
         Connected, Collidable {
@@ -50,7 +48,9 @@ public class Transformer extends AbstractEntity implements Physical, Graphical,
     @Override
     public void destroy() {
         if (environmentNode.isPresent()) {
-            environmentNode.get().destroy();
+            game.getGraphicsEngine().getEnvironmentProbes()
+                    .release(environmentNode.get());
+            environmentNode = Optional.absent();
         }
     }
 
@@ -81,6 +81,7 @@ public class Transformer extends AbstractEntity implements Physical, Graphical,
 
     @Override
     public void initialize(final Game game) throws Exception {
+        super.initialize(game);
         final AssetManager assetManager = game.getAssetManager();
 
         final Geometry graphicalBlock =
@@ -91,7 +92,7 @@ public class Transformer extends AbstractEntity implements Physical, Graphical,
         final Callable<EnvironmentNode> getEnvironment =
                 new CreateEnvironmentNode(game);
         graphicalBlock.setMaterial(targetKind.createMaterial(assetManager,
-                getEnvironment));
+                getEnvironment, game.getSettings().bakedTextures.getValue()));
         getSpatial().attachChild(graphicalBlock);
 
         physicalBox =
@@ -106,6 +107,10 @@ public class Transformer extends AbstractEntity implements Physical, Graphical,
                 .add("targetKind", targetKind).toString();
     }
 
+    /**
+     * A closure that acquires a baked environment probe when called, since
+     * transformers never move.
+     */
     private final class CreateEnvironmentNode implements
             Callable<EnvironmentNode> {
         private final Game game;
@@ -117,11 +122,10 @@ public class Transformer extends AbstractEntity implements Physical, Graphical,
         @Override
         public EnvironmentNode call() throws Exception {
             final EnvironmentNode node =
-                    new EnvironmentNode(game.getGraphicsEngine().getRootNode(),
-                            game.getGraphicsEngine().getRenderManager(),
-                            FRPUtils.map(game.getSettings().environmentQuality,
-                                    new QualityToInteger()));
-            getSpatial().attachChild(node);
+                    game.getGraphicsEngine()
+                            .getEnvironmentProbes()
+                            .acquire(getTransform().getTranslation(),
+                                    game.getEnvironmentTextureSize());
             environmentNode = Optional.of(node);
             return node;
         }
@@ -6,11 +6,8 @@ import com.jme3.asset.AssetManager;
 import com.jme3.bullet.collision.PhysicsCollisionEvent;
 import com.jme3.bullet.collision.shapes.BoxCollisionShape;
 import com.jme3.bullet.control.RigidBodyControl;
-import com.jme3.effect.ParticleEmitter;
-import com.jme3.effect.ParticleMesh;
 import com.jme3.light.Light;
 import com.jme3.light.PointLight;
-import com.jme3.material.Material;
 import com.jme3.math.ColorRGBA;
 import com.jme3.math.FastMath;
 import com.jme3.math.Quaternion;
@@ -32,6 +29,7 @@ import org.marble.entity.graphical.Emitter;
 import org.marble.entity.graphical.Graphical;
 import org.marble.entity.physical.Collidable;
 import org.marble.entity.physical.Physical;
+import org.marble.graphics.GpuParticleEmitter;
 import org.marble.util.Direction;
 
 public class WinBlock extends AbstractEntity implements Graphical, Physical,
@@ -81,7 +79,7 @@ public class WinBlock extends AbstractEntity implements Graphical, Physical,
         final Node emitter1 = new Node("emitter 1");
         emitter1.setLocalTranslation(FastMath.sqrt(2) / 2, 0, -0.4f);
 
-        final ParticleEmitter particles1 = makeWinParticles(assetManager);
+        final GpuParticleEmitter particles1 = makeWinParticles(assetManager);
         particles1.updateLogicalState(20);
         emitter1.attachChild(particles1);
 
@@ -97,7 +95,7 @@ public class WinBlock extends AbstractEntity implements Graphical, Physical,
         final Node emitter2 = new Node("emitter 1");
         emitter2.setLocalTranslation(-FastMath.sqrt(2) / 2, 0, -0.4f);
 
-        final ParticleEmitter particles2 = makeWinParticles(assetManager);
+        final GpuParticleEmitter particles2 = makeWinParticles(assetManager);
         particles2.updateLogicalState(20);
         emitter2.attachChild(particles2);
 
@@ -113,21 +111,16 @@ public class WinBlock extends AbstractEntity implements Graphical, Physical,
         getSpatial().attachChild(graphicalSpinner);
     }
 
-    private ParticleEmitter makeWinParticles(final AssetManager assetManager) {
+    private GpuParticleEmitter makeWinParticles(final AssetManager assetManager) {
 
-        final ParticleEmitter particles =
-                new ParticleEmitter("emitter", ParticleMesh.Type.Triangle, 16);
-        final Material material =
-                new Material(assetManager, "Common/MatDefs/Misc/Particle.j3md");
-        material.setTexture("Texture",
-                assetManager.loadTexture("Textures/flare.png"));
-        particles.setMaterial(material);
+        final GpuParticleEmitter particles =
+                new GpuParticleEmitter("emitter", assetManager,
+                        assetManager.loadTexture("Textures/flare.png"), 8);
         particles.setStartColor(ColorRGBA.Green);
         particles.setEndColor(ColorRGBA.Yellow);
 
-        particles.getParticleInfluencer().setInitialVelocity(
-                new Vector3f(0, 0, 2f));
-        particles.getParticleInfluencer().setVelocityVariation(0.1f);
+        particles.setInitialVelocity(new Vector3f(0, 0, 2f));
+        particles.setVelocityVariation(0.1f);
         particles.setStartSize(0.2f);
         particles.setEndSize(0.1f);
         particles.setGravity(0, 0, 0);
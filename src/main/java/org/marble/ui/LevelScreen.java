@@ -1,6 +1,6 @@
 package org.marble.ui;
 
-import java.util.UUID;
+import java.util.List;
 
 import de.lessvoid.nifty.NiftyMethodInvoker;
 import de.lessvoid.nifty.controls.dynamic.CustomControlCreator;
@@ -12,6 +12,15 @@ import org.marble.level.MetaLevel;
 import org.marble.level.MetaLevelPack;
 
 public class LevelScreen extends AbstractScreenController {
+    // How many levels are shown at a time
+    private static final int PAGE_SIZE = 8;
+
+    // The page of levels that is shown
+    private int page = 0;
+
+    // The level pack that the page belongs to
+    private MetaLevelPack shownPack;
+
     public LevelScreen(final Game game) {
         super(game);
     }
@@ -37,13 +46,25 @@ public class LevelScreen extends AbstractScreenController {
         game.gotoScreen(UIScreen.Start);
     }
 
-    public void loadLevel(final String uuidString) {
-        final UUID uuid = UUID.fromString(uuidString);
-        for (final MetaLevel level : game.getCurrentLevelPack().getLevels()) {
-            if (level.getUUID().equals(uuid)) {
-                game.playLevel(level);
-                break;
-            }
+    public void loadLevel(final String indexString) {
+        final MetaLevel level;
+        try {
+            level =
+                    game.getCurrentLevelPack().getLevels()
+                            .get(Integer.parseInt(indexString));
+        } catch (final IllegalStateException e) {
+            // The level index of the pack is malformed
+            game.handleError(e);
+            return;
+        }
+        game.playLevel(level);
+    }
+
+    public void nextPage() {
+        if ((page + 1) * PAGE_SIZE < game.getCurrentLevelPack().getLevels()
+                .size()) {
+            page++;
+            showPage();
         }
     }
 
@@ -56,22 +77,59 @@ public class LevelScreen extends AbstractScreenController {
                 .getRenderer(TextRenderer.class)
                 .setText(getLevelPackDescription());
 
+        if (game.getCurrentLevelPack() != shownPack) {
+            shownPack = game.getCurrentLevelPack();
+            page = 0;
+        }
+        showPage();
+        screen.setDefaultFocusElement("back-button");
+    }
+
+    public void previousPage() {
+        if (page > 0) {
+            page--;
+            showPage();
+        }
+    }
+
+    /**
+     * Creates the buttons for the levels on the current page only.
+     */
+    private void showPage() {
+        final List<MetaLevel> levels = game.getCurrentLevelPack().getLevels();
+        final int pageCount =
+                Math.max(1, (levels.size() + PAGE_SIZE - 1) / PAGE_SIZE);
+
         final Element levelList = screen.findElementByName("level-list");
         levelList.getElements().clear();
-        for (final MetaLevel level : game.getCurrentLevelPack().getLevels()) {
+        final int end = Math.min(levels.size(), (page + 1) * PAGE_SIZE);
+        for (int i = page * PAGE_SIZE; i < end; i++) {
+            final String levelName;
+            try {
+                levelName = levels.get(i).getName();
+            } catch (final IllegalStateException e) {
+                // The level index of the pack is malformed
+                game.handleError(e);
+                return;
+            }
             final CustomControlCreator levelButtonCreator =
                     new CustomControlCreator("level-button");
             final Element levelButton =
                     levelButtonCreator.create(nifty, screen, levelList);
             levelButton.findElementByName("#level-name")
-                    .getRenderer(TextRenderer.class).setText(level.getName());
+                    .getRenderer(TextRenderer.class)
+                    .setText(levelName);
             levelButton
                     .getElementInteraction()
                     .getPrimary()
                     .setOnClickMethod(
-                            new NiftyMethodInvoker(nifty, "loadLevel("
-                                    + level.getUUID().toString() + ")", this));
+                            new NiftyMethodInvoker(nifty, "loadLevel(" + i
+                                    + ")", this));
         }
-        screen.setDefaultFocusElement("back-button");
+
+        screen.findElementByName("level-page").getRenderer(TextRenderer.class)
+                .setText("Page " + (page + 1) + " of " + pageCount);
+        screen.findElementByName("level-pager").setVisible(pageCount > 1);
+        screen.layoutLayers();
     }
 }
@@ -0,0 +1,36 @@
+package org.marble.ui;
+
+import de.lessvoid.nifty.elements.Element;
+import de.lessvoid.nifty.elements.render.TextRenderer;
+
+import org.marble.Game;
+import org.marble.level.LoadProgress;
+
+public class LoadingScreen extends AbstractScreenController {
+    // The last progress description that was shown
+    private String shownProgress = "";
+
+    public LoadingScreen(final Game game) {
+        super(game);
+    }
+
+    @Override
+    public void onGoto() {
+        shownProgress = "";
+    }
+
+    /**
+     * Shows how far a level has been loaded.
+     */
+    public void showProgress(final LoadProgress progress) {
+        final String description = progress.toString();
+        if (screen == null || description.equals(shownProgress))
+            return;
+
+        final Element text = screen.findElementByName("loading-progress");
+        if (text != null) {
+            text.getRenderer(TextRenderer.class).setText(description + "...");
+            shownProgress = description;
+        }
+    }
+}
@@ -13,9 +13,6 @@ public class LossScreen extends AbstractScreenController {
     }
 
     public void retry() {
-        if (game.getCurrentLevel().isPresent()) {
-            game.playLevel(game.getCurrentLevel().get());
-        } else
-            throw new RuntimeException("The current level has disappeared");
+        game.restartLevel();
     }
 }
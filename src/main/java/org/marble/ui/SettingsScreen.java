@@ -45,6 +45,14 @@ public class SettingsScreen extends AbstractScreenController {
         game.gotoScreen(UIScreen.Start);
     }
 
+    @NiftyEventSubscriber(id = "bakedTextures")
+    public void onBakedTexturesChanged(final String name,
+            final CheckBoxStateChangedEvent e) {
+        if (name.equals("bakedTextures")) {
+            settings.bakedTextures.setValue(e.isChecked());
+        }
+    }
+
     @NiftyEventSubscriber(id = "bloom")
     public void onBloomChanged(final String name,
             final CheckBoxStateChangedEvent e) {
@@ -104,6 +112,8 @@ public class SettingsScreen extends AbstractScreenController {
                 screen.findNiftyControl("dofPentagonBokeh", CheckBox.class);
         dofPBBox.setChecked(settings.dofPentagonBokeh.getValue());
         dofPBBox.setEnabled(settings.dof.getValue());
+        screen.findNiftyControl("bakedTextures", CheckBox.class).setChecked(
+                settings.bakedTextures.getValue());
     }
 
     @NiftyEventSubscriber(id = "playerName")
@@ -2,8 +2,8 @@ package org.marble.ui;
 
 public enum UIScreen {
     Game("game"), Highscores("highscores"), LevelPacks("level-packs"), Levels(
-            "levels"), Loss("loss"), Pause("pause"), Settings("settings"),
-    Start("start"), Win("win");
+            "levels"), Loading("loading"), Loss("loss"), Pause("pause"),
+    Settings("settings"), Start("start"), Win("win");
     private String name;
 
     private UIScreen(final String name) {
@@ -16,7 +16,6 @@ public class WinScreen extends AbstractScreenController {
 
     public void gotoNextLevel() {
         game.loadNextLevel();
-        game.gotoScreen(UIScreen.Game);
     }
 
     @Override
@@ -27,10 +26,7 @@ public class WinScreen extends AbstractScreenController {
     }
 
     public void retry() {
-        if (game.getCurrentLevel().isPresent()) {
-            game.playLevel(game.getCurrentLevel().get());
-        } else
-            throw new RuntimeException("The current level has disappeared");
+        game.restartLevel();
     }
 
     public void showHighscores() {
@@ -1,12 +1,17 @@
 package org.marble.util;
 
+import java.util.AbstractMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import com.jme3.math.FastMath;
 import com.jme3.math.Matrix4f;
 import com.jme3.math.Quaternion;
 import com.jme3.math.Vector3f;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
 import org.marble.entity.connected.Connector;
@@ -15,84 +20,23 @@ public final class Connectors {
     private Connectors() {
     }
 
-    public static ImmutableMap<String, Connector> fromBox(final float width,
+    /**
+     * Creates the connectors of a box. The connectors are named after the
+     * side of the box that they are on ({@code top}, {@code bottom},
+     * {@code north}, {@code south}, {@code east} or {@code west}), followed by
+     * either {@code middle} or the indices of a unit cell on that side, like
+     * {@code north_3_0}.
+     * 
+     * <p>
+     * A box can have a very large number of connectors, of which a level
+     * usually uses very few, so the returned map computes each connector when
+     * it is first looked up, and remembers it afterwards. Only iterating over
+     * the map creates every connector.
+     */
+    public static Map<String, Connector> fromBox(final float width,
             final float height, final float depth, final float slopeX,
             final float slopeY) {
-        final float verticalOffset = 0.5f;
-        final int xcount = (int) width, ycount = (int) height, zcount =
-                (int) depth;
-        final float xborder = (width - xcount + 1) / 2, yborder =
-                (height - ycount + 1) / 2, zborder = (depth - zcount + 1) / 2;
-        final float xhalf = width / 2, yhalf = height / 2, zhalf = depth / 2;
-        final float pi = FastMath.PI;
-        final float pihalf = FastMath.HALF_PI;
-        final ImmutableMap.Builder<String, Connector> connectorBuilder =
-                ImmutableMap.builder();
-
-        connectorBuilder.put("top_middle", offsetBy(0, 0, zhalf, 0, pihalf, 0));
-        connectorBuilder.put("bottom_middle",
-                offsetBy(0, 0, -zhalf, 0, -pihalf, 0));
-        connectorBuilder.put(
-                "north_middle",
-                offsetBy(0, yhalf, verticalOffset + yhalf * slopeY, 0, 0,
-                        pihalf));
-        connectorBuilder.put(
-                "south_middle",
-                offsetBy(0, -yhalf, verticalOffset - yhalf * slopeY, 0, 0,
-                        -pihalf));
-        for (int x = 0; x < xcount; x++) {
-            final float xcoord = xborder + x - xhalf;
-
-            // Top/Bottom
-            for (int y = 0; y < ycount; y++) {
-                final float ycoord = yborder + y - yhalf;
-                connectorBuilder.put(
-                        makeConnectorName("top", x, y),
-                        offsetBy(xcoord, ycoord, zhalf + xcoord * slopeX
-                                + ycoord * slopeY, 0, pihalf, 0));
-                connectorBuilder.put(
-                        makeConnectorName("bottom", x, y),
-                        offsetBy(xcoord, ycoord, -zhalf + xcoord * slopeX
-                                + ycoord * slopeY, 0, -pihalf, 0));
-            }
-
-            // North/South
-            for (int z = 0; z < zcount; z++) {
-                final float zcoord = zborder + z - zhalf;
-                connectorBuilder.put(
-                        makeConnectorName("north", x, z),
-                        offsetBy(xcoord, yhalf, zcoord + verticalOffset
-                                + xcoord * slopeX + yhalf * slopeY, 0, 0,
-                                pihalf));
-                connectorBuilder.put(
-                        makeConnectorName("south", x, z),
-                        offsetBy(xcoord, -yhalf, zcoord + verticalOffset
-                                + xcoord * slopeX - yhalf * slopeY, 0, 0,
-                                -pihalf));
-            }
-        }
-
-        // East/West
-        connectorBuilder.put("east_middle",
-                offsetBy(xhalf, 0, verticalOffset + xhalf * slopeX, 0, 0, 0));
-        connectorBuilder.put("west_middle",
-                offsetBy(-xhalf, 0, verticalOffset - xhalf * slopeX, 0, 0, pi));
-        for (int y = 0; y < ycount; y++) {
-            final float ycoord = yborder + y - yhalf;
-            for (int z = 0; z < zcount; z++) {
-                final float zcoord = zborder + z - zhalf;
-                connectorBuilder.put(
-                        makeConnectorName("east", y, z),
-                        offsetBy(xhalf, ycoord, zcoord + verticalOffset
-                                + ycoord * slopeY + xhalf * slopeX, 0, 0, 0));
-                connectorBuilder.put(
-                        makeConnectorName("west", y, z),
-                        offsetBy(-xhalf, ycoord, zcoord + verticalOffset
-                                + ycoord * slopeY - xhalf * slopeX, 0, 0, pi));
-            }
-        }
-
-        return connectorBuilder.build();
+        return new BoxConnectors(width, height, depth, slopeX, slopeY);
     }
 
     public static ImmutableMap<String, Connector> fromRail(final float width,
@@ -229,4 +173,185 @@ public final class Connectors {
             final int coord1, final int coord2) {
         return base + "_" + coord1 + "_" + coord2;
     }
+
+    /**
+     * The connectors of a box, computed on demand from their names.
+     */
+    private static final class BoxConnectors extends
+            AbstractMap<String, Connector> {
+        private static final String MIDDLE = "middle";
+        private static final ImmutableList<String> SIDES = ImmutableList.of(
+                "top", "bottom", "north", "south", "east", "west");
+        private static final float VERTICAL_OFFSET = 0.5f;
+
+        private final float slopeX, slopeY;
+        private final float xborder, yborder, zborder;
+        private final int xcount, ycount, zcount;
+        private final float xhalf, yhalf, zhalf;
+
+        // The connectors that have been looked up so far
+        private final ConcurrentMap<String, Connector> resolved =
+                new ConcurrentHashMap<String, Connector>();
+
+        // Every connector, once the map has been iterated over
+        private ImmutableMap<String, Connector> all;
+
+        public BoxConnectors(final float width, final float height,
+                final float depth, final float slopeX, final float slopeY) {
+            this.slopeX = slopeX;
+            this.slopeY = slopeY;
+            xcount = (int) width;
+            ycount = (int) height;
+            zcount = (int) depth;
+            xborder = (width - xcount + 1) / 2;
+            yborder = (height - ycount + 1) / 2;
+            zborder = (depth - zcount + 1) / 2;
+            xhalf = width / 2;
+            yhalf = height / 2;
+            zhalf = depth / 2;
+        }
+
+        @Override
+        public boolean containsKey(final Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public synchronized Set<Map.Entry<String, Connector>> entrySet() {
+            if (all == null) {
+                final ImmutableMap.Builder<String, Connector> builder =
+                        ImmutableMap.builder();
+                for (final String side : SIDES) {
+                    builder.put(side + "_" + MIDDLE, get(side + "_" + MIDDLE));
+                    final int count1 = getCount1(side), count2 =
+                            getCount2(side);
+                    for (int i = 0; i < count1; i++) {
+                        for (int j = 0; j < count2; j++) {
+                            final String name = makeConnectorName(side, i, j);
+                            builder.put(name, get(name));
+                        }
+                    }
+                }
+                all = builder.build();
+            }
+            return all.entrySet();
+        }
+
+        @Override
+        public Connector get(final Object key) {
+            if (!(key instanceof String))
+                return null;
+            final String name = (String) key;
+
+            final Connector cached = resolved.get(name);
+            if (cached != null)
+                return cached;
+
+            final Connector connector = resolve(name);
+            if (connector != null) {
+                resolved.putIfAbsent(name, connector);
+            }
+            return connector;
+        }
+
+        @Override
+        public int size() {
+            int size = 0;
+            for (final String side : SIDES) {
+                size += 1 + getCount1(side) * getCount2(side);
+            }
+            return size;
+        }
+
+        /**
+         * The number of unit cells along the first index of a side.
+         */
+        private int getCount1(final String side) {
+            return side.equals("east") || side.equals("west") ? ycount
+                    : xcount;
+        }
+
+        /**
+         * The number of unit cells along the second index of a side.
+         */
+        private int getCount2(final String side) {
+            return side.equals("top") || side.equals("bottom") ? ycount
+                    : zcount;
+        }
+
+        /**
+         * Parses an index of a connector name, accepting only the form that
+         * {@link Connectors#makeConnectorName} produces.
+         * 
+         * @return the index, or -1 if it is invalid or out of range
+         */
+        private static int parseIndex(final String index, final int count) {
+            try {
+                final int result = Integer.parseInt(index);
+                if (result < 0 || result >= count
+                        || !Integer.toString(result).equals(index))
+                    return -1;
+                return result;
+            } catch (final NumberFormatException e) {
+                return -1;
+            }
+        }
+
+        /**
+         * Computes the connector with the specified name.
+         * 
+         * @return the connector, or {@code null} if the box doesn't have a
+         *         connector with that name
+         */
+        private Connector resolve(final String name) {
+            final String[] parts = name.split("_", -1);
+            final String side = parts[0];
+            if (!SIDES.contains(side))
+                return null;
+
+            final float coord1, coord2;
+            if (parts.length == 2 && parts[1].equals(MIDDLE)) {
+                // The middle of the side is at the origin of its coordinates
+                coord1 = 0;
+                coord2 = 0;
+            } else if (parts.length == 3) {
+                final int index1 = parseIndex(parts[1], getCount1(side));
+                final int index2 = parseIndex(parts[2], getCount2(side));
+                if (index1 < 0 || index2 < 0)
+                    return null;
+                if (side.equals("east") || side.equals("west")) {
+                    coord1 = yborder + index1 - yhalf;
+                } else {
+                    coord1 = xborder + index1 - xhalf;
+                }
+                if (side.equals("top") || side.equals("bottom")) {
+                    coord2 = yborder + index2 - yhalf;
+                } else {
+                    coord2 = zborder + index2 - zhalf;
+                }
+            } else
+                return null;
+
+            final float pi = FastMath.PI;
+            final float pihalf = FastMath.HALF_PI;
+            if (side.equals("top"))
+                return offsetBy(coord1, coord2, zhalf + coord1 * slopeX
+                        + coord2 * slopeY, 0, pihalf, 0);
+            else if (side.equals("bottom"))
+                return offsetBy(coord1, coord2, -zhalf + coord1 * slopeX
+                        + coord2 * slopeY, 0, -pihalf, 0);
+            else if (side.equals("north"))
+                return offsetBy(coord1, yhalf, coord2 + VERTICAL_OFFSET
+                        + coord1 * slopeX + yhalf * slopeY, 0, 0, pihalf);
+            else if (side.equals("south"))
+                return offsetBy(coord1, -yhalf, coord2 + VERTICAL_OFFSET
+                        + coord1 * slopeX - yhalf * slopeY, 0, 0, -pihalf);
+            else if (side.equals("east"))
+                return offsetBy(xhalf, coord1, coord2 + VERTICAL_OFFSET
+                        + coord1 * slopeY + xhalf * slopeX, 0, 0, 0);
+            else
+                return offsetBy(-xhalf, coord1, coord2 + VERTICAL_OFFSET
+                        + coord1 * slopeY - xhalf * slopeX, 0, 0, pi);
+        }
+    }
 }
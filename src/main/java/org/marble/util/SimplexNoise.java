@@ -0,0 +1,121 @@
+package org.marble.util;
+
+/**
+ * 3D simplex noise, ported from the {@code ShaderLib/Noise3D.glsllib} shader
+ * library so that procedural textures can be evaluated on the CPU with the
+ * same results as on the GPU.
+ * 
+ * <p>
+ * Copyright (C) 2011 Ashima Arts. All rights reserved. Distributed under the
+ * MIT License. https://github.com/ashima/webgl-noise
+ */
+public final class SimplexNoise {
+    private SimplexNoise() {
+    }
+
+    /**
+     * Evaluates the noise function at a point. The function has a period of
+     * 289 along each axis.
+     * 
+     * @return the noise value, roughly in the range [-1, 1]
+     */
+    public static float noise(final float x, final float y, final float z) {
+        // Skew the input space to find the simplex cell of the point
+        final float s = (x + y + z) / 3f;
+        final float ix = floor(x + s);
+        final float iy = floor(y + s);
+        final float iz = floor(z + s);
+        final float t = (ix + iy + iz) / 6f;
+        final float x0 = x - ix + t;
+        final float y0 = y - iy + t;
+        final float z0 = z - iz + t;
+
+        // Find which of the six simplices of the cell contains the point
+        final float gx = step(y0, x0);
+        final float gy = step(z0, y0);
+        final float gz = step(x0, z0);
+        final float lx = 1 - gx;
+        final float ly = 1 - gy;
+        final float lz = 1 - gz;
+        final float i1x = Math.min(gx, lz);
+        final float i1y = Math.min(gy, lx);
+        final float i1z = Math.min(gz, ly);
+        final float i2x = Math.max(gx, lz);
+        final float i2y = Math.max(gy, lx);
+        final float i2z = Math.max(gz, ly);
+
+        // The offsets of the point from the corners of the simplex
+        final float[] cx =
+                { x0, x0 - i1x + 1f / 6f, x0 - i2x + 1f / 3f, x0 - 0.5f };
+        final float[] cy =
+                { y0, y0 - i1y + 1f / 6f, y0 - i2y + 1f / 3f, y0 - 0.5f };
+        final float[] cz =
+                { z0, z0 - i1z + 1f / 6f, z0 - i2z + 1f / 3f, z0 - 0.5f };
+
+        // Hash the corners
+        final float mx = mod289(ix);
+        final float my = mod289(iy);
+        final float mz = mod289(iz);
+        final float[] ox = { 0, i1x, i2x, 1 };
+        final float[] oy = { 0, i1y, i2y, 1 };
+        final float[] oz = { 0, i1z, i2z, 1 };
+
+        final float n = 0.142857142857f;
+        final float nsx = n * 2;
+        final float nsy = n * 0.5f - 1;
+        final float nsz = n;
+
+        float result = 0;
+        for (int corner = 0; corner < 4; corner++) {
+            final float p =
+                    permute(permute(permute(mz + oz[corner]) + my
+                            + oy[corner])
+                            + mx + ox[corner]);
+
+            // Map the hash onto a gradient on an octahedron
+            final float j = p - 49 * floor(p * nsz * nsz);
+            final float gridX = floor(j * nsz);
+            final float gridY = floor(j - 7 * gridX);
+            final float a = gridX * nsx + nsy;
+            final float b = gridY * nsx + nsy;
+            final float h = 1 - Math.abs(a) - Math.abs(b);
+            final float sh = -step(h, 0);
+            final float gradX = a + (floor(a) * 2 + 1) * sh;
+            final float gradY = b + (floor(b) * 2 + 1) * sh;
+            final float gradZ = h;
+            final float norm =
+                    taylorInvSqrt(gradX * gradX + gradY * gradY + gradZ
+                            * gradZ);
+
+            float m =
+                    Math.max(0.6f - (cx[corner] * cx[corner] + cy[corner]
+                            * cy[corner] + cz[corner] * cz[corner]), 0);
+            m = m * m;
+            result +=
+                    m * m * norm
+                            * (gradX * cx[corner] + gradY * cy[corner] + gradZ
+                                    * cz[corner]);
+        }
+        return 42 * result;
+    }
+
+    private static float floor(final float value) {
+        return (float) Math.floor(value);
+    }
+
+    private static float mod289(final float value) {
+        return value - floor(value * (1f / 289f)) * 289f;
+    }
+
+    private static float permute(final float value) {
+        return mod289((value * 34 + 1) * value);
+    }
+
+    private static float step(final float edge, final float value) {
+        return value < edge ? 0 : 1;
+    }
+
+    private static float taylorInvSqrt(final float r) {
+        return 1.79284291400159f - 0.85373472095314f * r;
+    }
+}
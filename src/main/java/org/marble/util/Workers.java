@@ -0,0 +1,56 @@
+package org.marble.util;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A shared pool of worker threads for CPU-bound work, with one thread per
+ * available processor.
+ */
+public final class Workers {
+    private static final ExecutorService executor = Executors
+            .newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                    new ThreadFactoryBuilder().setNameFormat("worker-%d")
+                            .setDaemon(true).build());
+
+    private Workers() {
+    }
+
+    /**
+     * @return the executor that runs tasks on the worker threads
+     */
+    public static ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Runs a number of tasks on the worker threads and waits for all of them
+     * to finish.
+     * 
+     * @param tasks
+     *            The tasks to run.
+     * @throws Exception
+     *             the first exception thrown by a task, in task order.
+     */
+    public static void runAll(final List<Callable<Void>> tasks)
+            throws Exception {
+        final List<Future<Void>> futures = executor.invokeAll(tasks);
+        for (final Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (final ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof Exception)
+                    throw (Exception) cause;
+                else
+                    throw e;
+            }
+        }
+    }
+}
@@ -37,11 +37,19 @@ uniform bool m_DepthBlur;
 uniform float m_DepthBlurSize;
 uniform bool m_PentagonBokeh;
 uniform float m_PentagonFeather;
+uniform vec2 m_SceneResolution;
 
 varying vec2 texCoord;
 
+#ifdef GATHER
+// When gathering at a reduced resolution, sample offsets are still measured
+// in full resolution pixels so that the bokeh keeps its size
+float width  = m_SceneResolution.x;
+float height = m_SceneResolution.y;
+#else
 float width  = g_Resolution.x;
 float height = g_Resolution.y;
+#endif
 
 vec2 texel = vec2(1.0 / width, 1.0 / height);
 
@@ -224,6 +232,10 @@ void main()
         }
         col /= s;
     }
+#ifdef GATHER
+    // The upsampling pass needs the blur amount to blend with the sharp image
+    gl_FragColor = vec4(col, blur);
+#else
 #if SHOW_FOCUS
     col = debugFocus(col, blur, depthPoint);
 #endif
@@ -233,4 +245,5 @@ void main()
 #endif
 
     gl_FragColor = vec4(col, 1.0);
+#endif
 }
@@ -0,0 +1,70 @@
+// Depth-aware bilateral upsampling of a reduced resolution bokeh
+uniform sampler2D m_Texture;
+uniform sampler2D m_DepthTexture;
+uniform sampler2D m_BokehTexture;
+
+uniform vec2 m_BokehResolution;
+uniform float m_ZNear;
+uniform float m_ZFar;
+uniform float m_DepthSharpness;
+uniform float m_FStop;
+uniform float m_VignettingOuterBorder;
+uniform float m_VignettingInnerBorder;
+uniform float m_VignettingFade;
+uniform vec2 m_Focus;
+
+varying vec2 texCoord;
+
+float linearize(float depth) {
+    return -m_ZFar * m_ZNear / (depth * (m_ZFar - m_ZNear) - m_ZFar);
+}
+
+float vignette() {
+    float dist = distance(texCoord, m_Focus);
+    dist = smoothstep(m_VignettingOuterBorder + (m_FStop / m_VignettingFade), m_VignettingInnerBorder + (m_FStop / m_VignettingFade), dist);
+    return clamp(dist, 0.0, 1.0);
+}
+
+void main()
+{
+    vec2 bokehTexel = 1.0 / m_BokehResolution;
+
+    // The four low resolution texels surrounding this pixel
+    vec2 position = texCoord * m_BokehResolution - 0.5;
+    vec2 base = (floor(position) + 0.5) * bokehTexel;
+    vec2 fraction = fract(position);
+
+    float depth = linearize(texture2D(m_DepthTexture, texCoord).r);
+
+    vec4 bokeh = vec4(0.0);
+    float weights = 0.0;
+
+    int i;
+    for (i = 0; i < 4; i++) {
+        vec2 offset = vec2(mod(float(i), 2.0), floor(float(i) / 2.0));
+        vec2 uv = base + offset * bokehTexel;
+
+        vec2 bilinear = mix(1.0 - fraction, fraction, offset);
+        float sampleDepth = linearize(texture2D(m_DepthTexture, uv).r);
+
+        // Texels on the other side of a depth discontinuity barely count
+        float weight = bilinear.x * bilinear.y
+                / (0.001 + abs(depth - sampleDepth) * m_DepthSharpness);
+
+        bokeh += texture2D(m_BokehTexture, uv) * weight;
+        weights += weight;
+    }
+    bokeh /= weights;
+
+    vec3 col = texture2D(m_Texture, texCoord).rgb;
+
+    // Mirrors the full resolution filter, which leaves barely blurred pixels
+    // untouched
+    col = mix(col, bokeh.rgb, smoothstep(0.05, 0.15, bokeh.a));
+
+#if VIGNETTING
+    col *= vignette();
+#endif
+
+    gl_FragColor = vec4(col, 1.0);
+}
@@ -0,0 +1,17 @@
+#ifdef USE_TEXTURE
+uniform sampler2D m_Texture;
+#endif
+
+varying vec2 texCoord;
+varying vec4 color;
+
+void main(void) {
+    if (color.a <= 0.01)
+        discard;
+
+    #ifdef USE_TEXTURE
+        gl_FragColor = texture2D(m_Texture, texCoord) * color;
+    #else
+        gl_FragColor = color;
+    #endif
+}
@@ -0,0 +1,66 @@
+uniform mat4 g_WorldViewMatrix;
+uniform mat4 g_ProjectionMatrix;
+
+uniform float m_Time;
+
+uniform vec4 m_StartColor;
+uniform vec4 m_EndColor;
+uniform float m_StartSize;
+uniform float m_EndSize;
+
+uniform float m_LowLife;
+uniform float m_HighLife;
+
+uniform vec3 m_InitialVelocity;
+uniform float m_VelocityVariation;
+uniform vec3 m_Gravity;
+
+// The corner of the particle quad that this vertex belongs to
+attribute vec2 inTexCoord;
+
+// Per-particle random values in [0, 1): the fraction of the life span, the
+// phase of the emission cycle and a salt for the per-emission randomness
+attribute vec3 inTexCoord2;
+
+varying vec2 texCoord;
+varying vec4 color;
+
+vec3 random(float salt, float cycle) {
+    vec3 seed = vec3(salt * 12.9898, cycle * 78.233, salt + cycle);
+    return fract(sin(vec3(dot(seed, vec3(1.0, 1.0, 0.0)),
+                          dot(seed, vec3(1.0, 0.5, 1.7)),
+                          dot(seed, vec3(0.3, 1.3, 2.1)))) * 43758.5453);
+}
+
+void main(void) {
+    float life = mix(m_LowLife, m_HighLife, inTexCoord2.x);
+
+    #ifdef BURST
+        float age = m_Time;
+        float cycle = 0.0;
+    #else
+        // Every particle is re-emitted as soon as it dies, with a phase so
+        // that the particles of an emitter don't all die at once
+        float elapsed = m_Time + inTexCoord2.y * m_HighLife;
+        float cycle = floor(elapsed / life);
+        float age = elapsed - cycle * life;
+    #endif
+
+    float progress = clamp(age / life, 0.0, 1.0);
+    float alive = age < life ? 1.0 : 0.0;
+
+    // Same as the default particle influencer of jME
+    vec3 variation = (random(inTexCoord2.z, cycle) * 2.0 - 1.0)
+                   * length(m_InitialVelocity);
+    vec3 velocity = mix(m_InitialVelocity, variation, m_VelocityVariation);
+    vec3 position = velocity * age - 0.5 * m_Gravity * age * age;
+
+    float size = mix(m_StartSize, m_EndSize, progress) * alive;
+    vec4 viewPosition = g_WorldViewMatrix * vec4(position, 1.0);
+    viewPosition.xy += (inTexCoord * 2.0 - 1.0) * size;
+
+    texCoord = inTexCoord;
+    color = mix(m_StartColor, m_EndColor, progress);
+    color.a *= alive;
+    gl_Position = g_ProjectionMatrix * viewPosition;
+}
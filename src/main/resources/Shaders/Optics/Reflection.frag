@@ -1,7 +1,12 @@
 
 uniform mat4 g_ViewMatrix;
+#ifdef SINGLE_PASS_LIGHTING
+uniform vec4 g_LightPosition[NUM_LIGHTS];
+uniform vec4 g_LightColor[NUM_LIGHTS];
+#else
 uniform vec4 g_LightPosition;
 uniform vec4 g_LightColor;
+#endif
 uniform vec4 g_AmbientLightColor;
 
 uniform samplerCube m_EnvironmentMap;
@@ -27,7 +32,13 @@ void main(void) {
 
     vec4 color = Optics_GetEnvColor(m_EnvironmentMap, reflect(i, n));
 
+#ifdef SINGLE_PASS_LIGHTING
+    gl_FragColor = Lighting_ComputeAll(g_LightPosition, g_LightColor, g_AmbientLightColor,
+                                       worldPosition, n, normalize(viewIncident),
+                                       m_Ambient, m_Diffuse * color, m_Specular, m_Shininess);
+#else
     gl_FragColor = Lighting_Compute(g_LightPosition, g_LightColor, g_AmbientLightColor,
                                     worldPosition, n, normalize(viewIncident),
                                     m_Ambient, m_Diffuse * color, m_Specular, m_Shininess);
+#endif
 }
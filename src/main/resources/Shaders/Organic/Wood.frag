@@ -3,8 +3,13 @@
 #endif
 
 uniform mat4 g_ViewMatrix;
+#ifdef SINGLE_PASS_LIGHTING
+uniform vec4 g_LightPosition[NUM_LIGHTS];
+uniform vec4 g_LightColor[NUM_LIGHTS];
+#else
 uniform vec4 g_LightPosition;
 uniform vec4 g_LightColor;
+#endif
 uniform vec4 g_AmbientLightColor;
 
 uniform vec4 m_Ambient;
@@ -12,13 +17,18 @@ uniform vec4 m_Diffuse;
 uniform vec4 m_Specular;
 uniform float m_Shininess;
 
+#ifdef BAKED
+uniform sampler3D m_GrainMap;
+uniform float m_GrainExtent;
+#else
 uniform float m_DistanceWeight;
 uniform float m_NoiseScale;
 uniform float m_NoiseWeight;
-uniform float m_Roughness;
 uniform vec3 m_TrunkCenter1;
 uniform vec3 m_TrunkCenter2;
 uniform vec3 m_NoiseSeed;
+#endif
+uniform float m_Roughness;
 uniform float m_Variation;
 uniform sampler2D m_WoodGradient;
 
@@ -37,14 +47,24 @@ void main(void) {
     vec3 n = normalize(worldNormal);
     vec3 i = normalize(worldIncident);
 
+#ifdef BAKED
+    float intensity = texture3D(m_GrainMap, modelPosition / (2.0 * m_GrainExtent) + 0.5).r;
+#else
     float distance =
         length(cross(modelPosition - m_TrunkCenter1, modelPosition - m_TrunkCenter2)) /
         length(m_TrunkCenter2 - m_TrunkCenter1);
     float intensity = (1.0 + sin(distance * m_DistanceWeight +
                                  snoise(m_NoiseScale * modelPosition + m_NoiseSeed) * m_NoiseWeight)) / 2.0;
+#endif
     vec4 color = texture2D(m_WoodGradient, vec2(m_Variation, intensity));
 
+#ifdef SINGLE_PASS_LIGHTING
+    gl_FragColor = Lighting_ComputeAll(g_LightPosition, g_LightColor, g_AmbientLightColor,
+                                       worldPosition, n, normalize(viewIncident),
+                                       m_Ambient, m_Diffuse * color, m_Specular, m_Shininess);
+#else
     gl_FragColor = Lighting_Compute(g_LightPosition, g_LightColor, g_AmbientLightColor,
                                     worldPosition, n, normalize(viewIncident),
                                     m_Ambient, m_Diffuse * color, m_Specular, m_Shininess);
+#endif
 }
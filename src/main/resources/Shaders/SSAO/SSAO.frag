@@ -8,6 +8,8 @@ uniform float m_Intensity;
 uniform float m_Scale;
 uniform float m_Bias;
 uniform float m_Cutoff;
+uniform float m_FrameIndex;
+uniform float m_TemporalIterations;
 
 varying vec2 texCoord;
 
@@ -59,7 +61,13 @@ void main(void) {
     }
 
     vec3 n = getNormal(texCoord);
+#ifdef TEMPORAL
+    // Rotate the kernel differently every frame so that the accumulated
+    // history covers more directions
+    vec2 rand = getRandom(texCoord + vec2(m_FrameIndex * 0.1031));
+#else
     vec2 rand = getRandom(texCoord);
+#endif
 
     float ao = 0.0;
     float rad = m_SampleRadius / position.z;
@@ -71,8 +79,16 @@ void main(void) {
     samples[3] = vec2( 0.0, -1.0);
 
     const int iterations = 4;
-    int i;
+#ifdef TEMPORAL
+    // Only a rotating subset of the kernel is evaluated each frame; the rest
+    // is recovered from the reprojected history
+    int subset = int(m_TemporalIterations);
+    for(int k = 0; k < subset; k++) {
+        int i = int(mod(m_FrameIndex * m_TemporalIterations + float(k), float(iterations)));
+#else
+    int subset = iterations;
     for(int i = 0; i < iterations; i++) {
+#endif
         vec2 coord1 = reflection(samples[i], rand) * vec2(rad, rad);
         vec2 coord2 = vec2(coord1.x * 0.707 - coord1.y * 0.707,
                            coord1.x * 0.707 + coord1.y * 0.707);
@@ -82,7 +98,7 @@ void main(void) {
         ao += doAmbientOcclusion(texCoord + coord1 * 0.75, position, n);
         ao += doAmbientOcclusion(texCoord + coord2 * 1.00, position, n);
     }
-    ao /= float(iterations) * 4.0;
+    ao /= float(subset) * 4.0;
 
     gl_FragColor = getColor(1.0 - ao);
 }
@@ -107,6 +107,10 @@ void main(void) {
     amplitude = sum / zsum;
 #endif
 
+    // Only the red channel holds occlusion; the temporal history keeps depth
+    // in the other channels
+    amplitude = vec4(amplitude.rrr, 1.0);
+
 #ifdef SHOW_ONLY_AO
         gl_FragColor = amplitude;
 #else
@@ -0,0 +1,44 @@
+// Accumulates ambient occlusion over several frames by reprojecting the
+// previous result. The history stores occlusion in red and linear depth in
+// green.
+uniform sampler2D m_SSAOTexture;
+uniform sampler2D m_HistoryTexture;
+uniform sampler2D m_DepthTexture;
+uniform float m_ZNear;
+uniform float m_ZFar;
+uniform mat4 m_InverseViewProjection;
+uniform mat4 m_PreviousViewProjection;
+uniform float m_HistoryWeight;
+uniform float m_DepthRejection;
+
+varying vec2 texCoord;
+
+float linearize(float depthv) {
+    return (2.0 * m_ZNear) / (m_ZFar + m_ZNear - depthv * (m_ZFar - m_ZNear));
+}
+
+void main(void) {
+    float depthv = texture2D(m_DepthTexture, texCoord).r;
+    float depth = linearize(depthv);
+    float ao = texture2D(m_SSAOTexture, texCoord).r;
+
+    // Where was this point on the screen last frame?
+    vec4 world = m_InverseViewProjection * vec4(vec3(texCoord, depthv) * 2.0 - 1.0, 1.0);
+    world /= world.w;
+    vec4 previous = m_PreviousViewProjection * world;
+    previous /= previous.w;
+    vec3 previousCoord = previous.xyz * 0.5 + 0.5;
+
+    if (all(greaterThanEqual(previousCoord.xy, vec2(0.0)))
+            && all(lessThanEqual(previousCoord.xy, vec2(1.0)))) {
+        vec4 history = texture2D(m_HistoryTexture, previousCoord.xy);
+        float expectedDepth = linearize(previousCoord.z);
+
+        // Reject the history on depth discontinuities, e.g. disocclusions
+        if (abs(history.g - expectedDepth) < m_DepthRejection * expectedDepth) {
+            ao = mix(ao, history.r, m_HistoryWeight);
+        }
+    }
+
+    gl_FragColor = vec4(ao, depth, 0.0, 1.0);
+}
@@ -0,0 +1,62 @@
+package org.marble.graphics;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class AdaptiveQualityTest {
+    // The frame rate that the tests aim for, and limit frames to
+    private static final int FRAME_RATE = 60;
+
+    // The duration of a frame at the target frame rate
+    private static final float BUDGET = 1f / FRAME_RATE;
+
+    @Test
+    public void degrade() {
+        final AdaptiveQuality quality = new AdaptiveQuality(FRAME_RATE, 3);
+        run(quality, 20, 0.05f, 0.05f);
+        assertEquals(3, (int) quality.getReduction().getValue());
+    }
+
+    @Test
+    public void disable() {
+        final AdaptiveQuality quality = new AdaptiveQuality(FRAME_RATE, 3);
+        run(quality, 5, 0.05f, 0.05f);
+        quality.setEnabled(false);
+        assertEquals(0, (int) quality.getReduction().getValue());
+    }
+
+    @Test
+    public void keepWhileBusy() {
+        final AdaptiveQuality quality = new AdaptiveQuality(FRAME_RATE, 3);
+        reduceOnce(quality);
+
+        // Limited frames that use most of the budget
+        run(quality, 30, BUDGET, BUDGET * 0.9f);
+        assertEquals(1, (int) quality.getReduction().getValue());
+    }
+
+    @Test
+    public void recoverWhileLimited() {
+        final AdaptiveQuality quality = new AdaptiveQuality(FRAME_RATE, 3);
+        reduceOnce(quality);
+
+        // The limiter keeps frames at the budget, but there is work to spare
+        run(quality, 30, BUDGET, BUDGET / 2);
+        assertEquals(0, (int) quality.getReduction().getValue());
+    }
+
+    private static void reduceOnce(final AdaptiveQuality quality) {
+        while (quality.getReduction().getValue() == 0) {
+            quality.update(0.05f, 0.05f);
+        }
+    }
+
+    private static void run(final AdaptiveQuality quality,
+            final float seconds, final float timePerFrame,
+            final float workTime) {
+        for (float time = 0; time < seconds; time += timePerFrame) {
+            quality.update(timePerFrame, workTime);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package org.marble.level;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+import com.jme3.math.Quaternion;
+import com.jme3.math.Transform;
+import com.jme3.math.Vector3f;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.marble.entity.Entity;
+import org.marble.level.LevelStatement.Alias;
+import org.marble.level.LevelStatement.Declaration;
+import org.marble.level.LevelStatement.Position;
+
+public class CompiledLevelTest {
+
+    private LevelLoader loader;
+
+    @Test
+    public void compileStatements() throws LevelLoadException {
+        final String mockEntityClass = MockEntity.class.getCanonicalName();
+        final Optional<String> absent = Optional.absent();
+        final ImmutableList<LevelStatement> statements =
+                ImmutableList.of(new Alias(0, "Entity", mockEntityClass),
+                        new Declaration(0, "e1", "Entity", ImmutableList.of()),
+                        new Declaration(0, "e2", mockEntityClass, ImmutableList
+                                .of((Object) 1.0f, "bar", new Vector3f())),
+                        new Position(0, "e2", new Vector3f(1, 2, 3), absent,
+                                absent));
+
+        final ImmutableSet<Entity> entities = loader.runStatements(statements);
+        final CompiledLevel level =
+                loader.compileStatements(statements, entities, "hash");
+        assertEquals(2, level.getRecords().size());
+        assertEquals(MockEntity.class.getName(), level.getRecords().get(0)
+                .getClassName());
+
+        final ImmutableSet<Entity> compiledEntities =
+                loader.runCompiledLevel(level);
+        assertEquals(entities.size(), compiledEntities.size());
+        final Iterator<Entity> iter = entities.iterator();
+        for (final Entity compiled : compiledEntities) {
+            final Entity entity = iter.next();
+            assertEquals(entity.getName(), compiled.getName());
+            assertEquals(entity.getTransform().getTranslation(), compiled
+                    .getTransform().getTranslation());
+        }
+        assertEquals(1,
+                ((MockEntity) compiledEntities.asList().get(1)).initializerIndex);
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        final Transform transform =
+                new Transform(new Vector3f(1, 2, 3), new Quaternion(0, 0.6f,
+                        0, 0.8f), new Vector3f(1, 1, 2));
+        final CompiledLevel level =
+                new CompiledLevel("hash", ImmutableList.of(
+                        new CompiledLevel.Record("e1", "a.B", ImmutableList
+                                .of(), new Transform()),
+                        new CompiledLevel.Record("e2", "a.C", ImmutableList
+                                .of((Object) 1.5f, "foo", new Vector3f(4, 5, 6)),
+                                transform)));
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        level.write(output);
+        final CompiledLevel read =
+                CompiledLevel.read(new ByteArrayInputStream(output
+                        .toByteArray()));
+        assertEquals(level, read);
+    }
+
+    @Test(expected = IOException.class)
+    public void readFailure() throws IOException {
+        CompiledLevel.read(new ByteArrayInputStream(new byte[] { 1, 2, 3, 4,
+                5, 6, 7, 8 }));
+    }
+
+    @Before
+    public void setUp() {
+        loader = new LevelLoader();
+    }
+}
@@ -0,0 +1,58 @@
+package org.marble.level;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.jme3.math.Transform;
+import com.jme3.math.Vector3f;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Test;
+
+public class LevelDiffTest {
+    @Test
+    public void between() {
+        final CompiledLevel before =
+                level(record("a", 0), record("b", 0), record("c", 0));
+        final CompiledLevel after =
+                level(record("a", 0), record("b", 1), record("c", 0),
+                        record("d", 0));
+        final LevelDiff diff = LevelDiff.between(before, after);
+
+        assertEquals(ImmutableList.of(1, 3), diff.getAdded());
+        assertEquals(ImmutableList.of(1), diff.getRemoved());
+        assertEquals(ImmutableList.of("a", "b'", "c", "d"), diff.apply(
+                ImmutableList.of("a", "b", "c"), ImmutableList.of("b'", "d")));
+    }
+
+    @Test
+    public void duplicates() {
+        final CompiledLevel before =
+                level(record("a", 0), record("a", 0), record("a", 0));
+        final CompiledLevel after = level(record("a", 0), record("a", 0));
+        final LevelDiff diff = LevelDiff.between(before, after);
+
+        assertTrue(diff.getAdded().isEmpty());
+        assertEquals(ImmutableList.of(2), diff.getRemoved());
+        assertEquals(ImmutableList.of(1, 2), diff.apply(
+                ImmutableList.of(1, 2, 3), ImmutableList.<Integer> of()));
+    }
+
+    @Test
+    public void unchanged() {
+        final CompiledLevel level = level(record("a", 0), record("b", 0));
+        assertTrue(LevelDiff.between(level, level).isEmpty());
+    }
+
+    private static CompiledLevel level(final CompiledLevel.Record... records) {
+        return new CompiledLevel("hash", ImmutableList.copyOf(records));
+    }
+
+    private static CompiledLevel.Record record(final String name,
+            final float x) {
+        return new CompiledLevel.Record(name, "org.marble.block.Slab",
+                ImmutableList.<Object> of(5f, 5f, 1f), new Transform(
+                        new Vector3f(x, 0, 0)));
+    }
+}
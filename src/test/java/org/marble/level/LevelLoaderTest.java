@@ -1,9 +1,15 @@
 package org.marble.level;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.IOException;
+import java.net.URL;
 import java.util.Map;
+import java.util.Set;
 
 import com.jme3.math.Vector3f;
 
@@ -11,22 +17,32 @@ import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
 import com.google.common.collect.UnmodifiableIterator;
 
+import org.codehaus.jparsec.error.ParserException;
+
 import org.junit.Before;
 import org.junit.Test;
 
-import org.marble.entity.AbstractEntity;
 import org.marble.entity.Entity;
-import org.marble.entity.connected.Connected;
 import org.marble.entity.connected.Connector;
 import org.marble.level.LevelStatement.Alias;
 import org.marble.level.LevelStatement.Connection;
 import org.marble.level.LevelStatement.Declaration;
 import org.marble.level.LevelStatement.Position;
 import org.marble.util.Connectors;
+import org.marble.util.ConnectorsTest;
 
 public class LevelLoaderTest {
+    // The levels that are shipped with the game
+    private static final ImmutableList<String> SHIPPED_LEVELS = ImmutableList
+            .of("menu.level", "core/ephemeral.level",
+                    "core/starting-out.level", "core/spirals.level",
+                    "core/upthehill.level", "core/rails.level");
+
+    // The class of the slabs in the shipped levels
+    private static final String SLAB_CLASS = "org.marble.block.Slab";
 
     private LevelLoader loader;
 
@@ -76,6 +92,36 @@ public class LevelLoaderTest {
         loader.loadEntityClass("java.lang.String", 0);
     }
 
+    @Test
+    public void loadShippedSlabConnectors() throws ParserException,
+            IOException {
+        // The box connectors of every slab in the shipped levels must match
+        // the ones that used to be created up front
+        final Set<ImmutableList<Object>> checked = Sets.newHashSet();
+        for (final String level : SHIPPED_LEVELS) {
+            final URL url = LevelLoader.class.getResource(level);
+            assertNotNull(level, url);
+
+            final Set<String> slabNames = Sets.newHashSet(SLAB_CLASS);
+            for (final LevelStatement statement : loader
+                    .loadLevelStatements(url)) {
+                if (statement instanceof Alias
+                        && ((Alias) statement).getAliasedClass().equals(
+                                SLAB_CLASS)) {
+                    slabNames.add(((Alias) statement).getAlias());
+                } else if (statement instanceof Declaration
+                        && slabNames.contains(((Declaration) statement)
+                                .getClassName())
+                        && checked.add(((Declaration) statement)
+                                .getInitArgs())) {
+                    assertSameBoxConnectors(level,
+                            ((Declaration) statement).getInitArgs());
+                }
+            }
+        }
+        assertFalse(checked.isEmpty());
+    }
+
     @Test
     public void runStatements() throws LevelLoadException {
         final String mockEntityClass = MockEntity.class.getCanonicalName();
@@ -93,6 +139,23 @@ public class LevelLoaderTest {
         assertEquals(1, entities2.size());
     }
 
+    @Test
+    public void runStatementsCycle() {
+        final String mockEntityClass = MockEntity.class.getCanonicalName();
+
+        try {
+            loader.runStatements(ImmutableList.of(new Declaration(0, "e1",
+                    mockEntityClass, ImmutableList.of()), new Declaration(1,
+                    "e2", mockEntityClass, ImmutableList.of()),
+                    new Connection(2, "e1", "c1", "e2", "c2"), new Connection(
+                            3, "e2", "c1", "e1", "c2")));
+            fail();
+        } catch (final LevelLoadException e) {
+            assertEquals(LevelLoadException.Kind.CYCLIC_PLACEMENT, e.getKind());
+            assertEquals(2, e.getFailureLocation());
+        }
+    }
+
     @Test
     public void runStatementsConnectivity() throws LevelLoadException {
         final String mockEntityClass = MockEntity.class.getCanonicalName();
@@ -154,43 +217,61 @@ public class LevelLoaderTest {
         assertEquals(new Vector3f(3, 5, 7), pos);
     }
 
+    @Test
+    public void runStatementsOutOfOrder() throws LevelLoadException {
+        final String mockEntityClass = MockEntity.class.getCanonicalName();
+        final Optional<String> absent = Optional.absent();
+
+        // Enough entities to be constructed on several threads, each placed
+        // relative to the next one, which is placed later
+        final int count = 2000;
+        final ImmutableList.Builder<LevelStatement> statements =
+                ImmutableList.builder();
+        for (int i = 0; i < count; i++) {
+            statements.add(new Declaration(i, "e" + i, mockEntityClass,
+                    ImmutableList.of()));
+        }
+        for (int i = 0; i < count - 1; i++) {
+            statements.add(new Position(i, "e" + i, new Vector3f(1, 0, 0),
+                    Optional.of("e" + (i + 1)), absent));
+        }
+        statements.add(new Position(count, "e" + (count - 1), new Vector3f(0,
+                0, 1), absent, absent));
+
+        final ImmutableList<Entity> entities =
+                loader.runStatements(statements.build()).asList();
+        assertEquals(count, entities.size());
+        assertEquals("e0", entities.get(0).getName());
+        assertEquals(new Vector3f(count - 1, 0, 1), entities.get(0)
+                .getTransform().getTranslation());
+    }
+
     @Before
     public void setUp() {
         loader = new LevelLoader();
     }
 
+    private void assertSameBoxConnectors(final String level,
+            final ImmutableList<Object> args) {
+        // The slopes default to zero
+        final float[] box = new float[5];
+        for (int i = 0; i < box.length && i < args.size(); i++) {
+            box[i] = (Float) args.get(i);
+        }
+        final ImmutableMap<String, Connector> expected =
+                ConnectorsTest.eagerBox(box);
+        final Map<String, Connector> actual =
+                Connectors.fromBox(box[0], box[1], box[2], box[3], box[4]);
+        assertEquals(expected.keySet(), actual.keySet());
+        for (final String name : expected.keySet()) {
+            ConnectorsTest.assertSameConnector(level + ": " + name,
+                    expected.get(name), actual.get(name));
+        }
+    }
+
     private void roundVectorToInts(final Vector3f vector) {
         vector.x = Math.round(vector.x);
         vector.y = Math.round(vector.y);
         vector.z = Math.round(vector.z);
     }
 }
-
-class MockEntity extends AbstractEntity implements Connected {
-    int initializerIndex = -1;
-
-    public MockEntity() {
-        initializerIndex = 0;
-    }
-
-    public MockEntity(final Float foo, final String bar, final Vector3f baz) {
-        initializerIndex = 1;
-    }
-
-    public MockEntity(final Object foo, final Object bar, final Object baz) {
-        initializerIndex = 2;
-    }
-
-    public MockEntity(final String a, final String b, final String c,
-            final String d) {
-        initializerIndex = 4;
-        throw new IllegalArgumentException();
-    }
-
-    @Override
-    public Map<String, Connector> getConnectors() {
-        return ImmutableMap.of("c1", Connectors.offsetBy(-1, 0, 0, 0, 0, 0),
-                "c2", Connectors.offsetBy(1, 0, 0, 0, 0, 0), "c3",
-                Connectors.offsetBy(3, 0, 0, (float) Math.PI, 0, 0));
-    }
-}
@@ -0,0 +1,79 @@
+package org.marble.level;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.marble.entity.Entity;
+
+public class LevelPrefetcherTest {
+    private ExecutorService executor;
+    private final AtomicInteger loads = new AtomicInteger();
+    private final LevelPrefetcher.Loader loader = new LevelPrefetcher.Loader() {
+        @Override
+        public LoadedLevel load(final MetaLevel level) {
+            loads.incrementAndGet();
+            return new LoadedLevel(ImmutableSet.<Entity> of(new MockEntity()),
+                    Optional.<LevelStreamer> absent());
+        }
+    };
+
+    @Test
+    public void prefetch() throws Exception {
+        final LevelPrefetcher prefetcher =
+                new LevelPrefetcher(executor, loader, 0);
+        final MetaLevel level1 = createLevel("level1");
+        final MetaLevel level2 = createLevel("level2");
+
+        prefetcher.prefetch(ImmutableList.of(level1, level2));
+        prefetcher.prefetch(ImmutableList.of(level1));
+        final Optional<LoadedLevel> loaded =
+                prefetcher.take(level1).get().get();
+        assertTrue(loaded.isPresent());
+        assertEquals(1, loaded.get().getEntities().size());
+
+        // Results can only be taken once, and dropped levels are forgotten
+        assertFalse(prefetcher.take(level1).isPresent());
+        assertFalse(prefetcher.take(level2).isPresent());
+    }
+
+    @Test
+    public void prefetchWithoutHeadroom() {
+        final LevelPrefetcher prefetcher =
+                new LevelPrefetcher(executor, loader, Long.MAX_VALUE);
+        final MetaLevel level = createLevel("level");
+
+        prefetcher.prefetch(ImmutableList.of(level));
+        assertFalse(prefetcher.take(level).isPresent());
+        assertEquals(0, loads.get());
+    }
+
+    @Before
+    public void setUp() {
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private static MetaLevel createLevel(final String name) {
+        return new MetaLevel(name, LevelPrefetcherTest.class.getResource("/"),
+                Optional.<URL> absent(), UUID.randomUUID());
+    }
+}
@@ -0,0 +1,257 @@
+package org.marble.level;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.jme3.math.Transform;
+import com.jme3.math.Vector3f;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.marble.entity.Entity;
+import org.marble.entity.EntityManager;
+
+public class LevelStreamerTest {
+    /**
+     * Records what a level streamer asks an entity manager to do, as a list
+     * of events like "activate a", instead of doing it.
+     */
+    private static final class RecordingEntityManager extends EntityManager {
+        final List<String> events = Lists.newArrayList();
+
+        RecordingEntityManager() {
+            super(null);
+        }
+
+        @Override
+        public void activateEntities(final Set<Entity> entities) {
+            record("activate", entities);
+        }
+
+        @Override
+        public void deactivateEntities(final Set<Entity> entities) {
+            record("deactivate", entities);
+        }
+
+        @Override
+        public void removeEntities(final Set<Entity> entities) {
+            record("remove", entities);
+        }
+
+        @Override
+        public void swapEntities(final Set<Entity> removed,
+                final Set<Entity> added) {
+            record("remove", removed);
+            record("add", added);
+        }
+
+        /**
+         * Returns the events since the last call, and forgets them.
+         */
+        List<String> takeEvents() {
+            final List<String> taken = ImmutableList.copyOf(events);
+            events.clear();
+            return taken;
+        }
+
+        private void record(final String event, final Set<Entity> entities) {
+            for (final Entity entity : entities) {
+                events.add(event + " " + entity.getName());
+            }
+        }
+    }
+
+    private final List<String> built = Lists.newArrayList();
+
+    // Creates a named mock entity for every record
+    private final LevelStreamer.Builder builder = new LevelStreamer.Builder() {
+        @Override
+        public ImmutableSet<Entity> build(final CompiledLevel cell) {
+            // The builds happen on the executor, one at a time
+            final ImmutableSet.Builder<Entity> entities =
+                    ImmutableSet.builder();
+            for (final CompiledLevel.Record record : cell.getRecords()) {
+                if (failing.remove(record.getName()))
+                    throw new IllegalStateException("Failed to build "
+                            + record.getName());
+                built.add(record.getName());
+                final Entity entity = new MockEntity();
+                entity.setName(record.getName());
+                entities.add(entity);
+            }
+            return entities.build();
+        }
+    };
+
+    private ExecutorService executor;
+
+    // The names of the records whose next build should fail
+    private final Set<String> failing = Sets.newHashSet();
+
+    @Test
+    public void prepare() throws Exception {
+        final LevelStreamer streamer =
+                new LevelStreamer(createLevel(createRecord("near1", 0, 0),
+                        createRecord("far", 500, 0), createRecord("near2", 40,
+                                -10)), builder, executor, 32, 64, 96, 128);
+        assertEquals(3, streamer.getCellCount());
+        assertEquals(0, streamer.getLoadedCellCount());
+
+        streamer.prepare(new Vector3f(0, 0, 2));
+        assertEquals(ImmutableSet.of("near1", "near2"),
+                ImmutableSet.copyOf(built));
+        assertEquals(2, streamer.getLoadedCellCount());
+
+        final ImmutableSet.Builder<String> active = ImmutableSet.builder();
+        for (final Entity entity : streamer.getActiveEntities()) {
+            active.add(entity.getName());
+        }
+        assertEquals(ImmutableSet.of("near1", "near2"), active.build());
+    }
+
+    @Test
+    public void failedBuild() throws Exception {
+        final RecordingEntityManager manager = new RecordingEntityManager();
+        final LevelStreamer streamer =
+                new LevelStreamer(createLevel(createRecord("a", 16, 16)),
+                        builder, executor, 32, 64, 96, 128);
+        failing.add("a");
+
+        update(streamer, 16, manager);
+        try {
+            update(streamer, 16, manager);
+            fail();
+        } catch (final IllegalStateException e) {
+            // Expected
+        }
+        assertEquals(0, streamer.getLoadedCellCount());
+
+        // The cell is built again while it is still within range
+        update(streamer, 16, manager);
+        update(streamer, 16, manager);
+        update(streamer, 16, manager);
+        assertEquals(ImmutableList.of("a"), built);
+        assertEquals(ImmutableList.of("add a"), manager.takeEvents());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidDistances() {
+        new LevelStreamer(createLevel(), null, executor, 32, 64, 64, 128);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidEvictionDistance() {
+        new LevelStreamer(createLevel(), null, executor, 32, 64, 96, 96);
+    }
+
+    @Test
+    public void sharedCell() {
+        final LevelStreamer streamer =
+                new LevelStreamer(createLevel(createRecord("a", 1, 1),
+                        createRecord("b", 31, 31), createRecord("c", -1, 1)),
+                        null, executor, 32, 64, 96, 128);
+        assertEquals(2, streamer.getCellCount());
+        assertEquals(0, streamer.getActiveEntities().size());
+    }
+
+    @Test
+    public void walk() throws Exception {
+        final RecordingEntityManager manager = new RecordingEntityManager();
+        // The cell of a is [0, 32) and the cell of b is [96, 128) along x
+        final LevelStreamer streamer =
+                new LevelStreamer(createLevel(createRecord("a", 16, 16),
+                        createRecord("b", 112, 16)), builder, executor, 32,
+                        64, 96, 128);
+        streamer.prepare(new Vector3f(16, 16, 0));
+        final Entity a = streamer.getActiveEntities().asList().get(0);
+        assertEquals(ImmutableList.of("a"), built);
+
+        // b is within the deactivation distance, so it is built, but not
+        // activated
+        update(streamer, 16, manager);
+        update(streamer, 16, manager);
+        assertEquals(ImmutableList.of("a", "b"), built);
+        assertEquals(ImmutableList.of(), manager.takeEvents());
+        assertEquals(2, streamer.getLoadedCellCount());
+
+        update(streamer, 40, manager);
+        assertEquals(ImmutableList.of("add b"), manager.takeEvents());
+
+        // a stays active until it is farther away than 96
+        update(streamer, 110, manager);
+        assertEquals(ImmutableList.of(), manager.takeEvents());
+        update(streamer, 130, manager);
+        assertEquals(ImmutableList.of("deactivate a"), manager.takeEvents());
+
+        // ...and inactive until it is within 64 again
+        update(streamer, 100, manager);
+        assertEquals(ImmutableList.of(), manager.takeEvents());
+        update(streamer, 90, manager);
+        assertEquals(ImmutableList.of("activate a"), manager.takeEvents());
+
+        // Beyond 128, a is destroyed
+        update(streamer, 200, manager);
+        assertEquals(ImmutableList.of("deactivate a"), manager.takeEvents());
+        update(streamer, 200, manager);
+        assertEquals(ImmutableList.of("remove a"), manager.takeEvents());
+        assertEquals(1, streamer.getLoadedCellCount());
+
+        // Coming back creates a again, while b stays active
+        update(streamer, 16, manager);
+        update(streamer, 16, manager);
+        update(streamer, 16, manager);
+        assertEquals(ImmutableList.of("add a"), manager.takeEvents());
+        assertEquals(ImmutableList.of("a", "b", "a"), built);
+        assertEquals(2, streamer.getActiveEntities().size());
+        assertFalse(streamer.getActiveEntities().contains(a));
+    }
+
+    @Before
+    public void setUp() {
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private static CompiledLevel createLevel(
+            final CompiledLevel.Record... records) {
+        return new CompiledLevel("hash", ImmutableList.copyOf(records));
+    }
+
+    /**
+     * Updates a streamer at a position on the x axis, after waiting for the
+     * cells that are being built to be done.
+     */
+    private void update(final LevelStreamer streamer, final float x,
+            final EntityManager manager) throws Exception {
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).get();
+        streamer.update(new Vector3f(x, 16, 0), manager);
+    }
+
+    private static CompiledLevel.Record createRecord(final String name,
+            final float x, final float y) {
+        return new CompiledLevel.Record(name, MockEntity.class.getName(),
+                ImmutableList.<Object> of(), new Transform(new Vector3f(x, y,
+                        0)));
+    }
+}
@@ -0,0 +1,52 @@
+package org.marble.level;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.util.UUID;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+
+import org.junit.Test;
+
+public class MetaLevelIndexTest {
+    private static final String INDEX =
+            "# A comment\n"
+                    + "7f588016-da0b-4a65-a9e0-bbdb3ab58bd5\tcore/a.level\tA\n"
+                    + "\r\n"
+                    + "9ad7dca8-e234-4145-b6b5-f7586e532d0a\tcore/b.level\tB\t"
+                    + "core/b.png\r\n" + "not a level\n";
+
+    @Test
+    public void get() throws Exception {
+        final MetaLevelIndex index =
+                new MetaLevelIndex(INDEX.getBytes(Charsets.UTF_8),
+                        Optional.of(new URL("file:/packs/core.index")));
+        assertEquals(3, index.size());
+
+        final MetaLevel a = index.get(0);
+        assertEquals("A", a.getName());
+        assertEquals(new URL("file:/packs/core/a.level"), a.getUri());
+        assertFalse(a.getPreviewURI().isPresent());
+        assertEquals(UUID.fromString("7f588016-da0b-4a65-a9e0-bbdb3ab58bd5"),
+                a.getUUID());
+        assertSame(a, index.get(0));
+
+        final MetaLevel b = index.get(1);
+        assertEquals("B", b.getName());
+        assertEquals(new URL("file:/packs/core/b.png"), b.getPreviewURI()
+                .get());
+        assertEquals(1, index.indexOf(b));
+        assertTrue(index.contains(a));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void getMalformed() throws Exception {
+        new MetaLevelIndex(INDEX.getBytes(Charsets.UTF_8),
+                Optional.<URL> absent()).get(2);
+    }
+}
@@ -0,0 +1,41 @@
+package org.marble.level;
+
+import java.util.Map;
+
+import com.jme3.math.Vector3f;
+
+import com.google.common.collect.ImmutableMap;
+
+import org.marble.entity.AbstractEntity;
+import org.marble.entity.connected.Connected;
+import org.marble.entity.connected.Connector;
+import org.marble.util.Connectors;
+
+class MockEntity extends AbstractEntity implements Connected {
+    int initializerIndex = -1;
+
+    public MockEntity() {
+        initializerIndex = 0;
+    }
+
+    public MockEntity(final Float foo, final String bar, final Vector3f baz) {
+        initializerIndex = 1;
+    }
+
+    public MockEntity(final Object foo, final Object bar, final Object baz) {
+        initializerIndex = 2;
+    }
+
+    public MockEntity(final String a, final String b, final String c,
+            final String d) {
+        initializerIndex = 4;
+        throw new IllegalArgumentException();
+    }
+
+    @Override
+    public Map<String, Connector> getConnectors() {
+        return ImmutableMap.of("c1", Connectors.offsetBy(-1, 0, 0, 0, 0, 0),
+                "c2", Connectors.offsetBy(1, 0, 0, 0, 0, 0), "c3",
+                Connectors.offsetBy(3, 0, 0, (float) Math.PI, 0, 0));
+    }
+}
@@ -0,0 +1,50 @@
+package org.marble.level;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Test;
+
+import org.marble.block.Rail;
+import org.marble.block.Slab;
+import org.marble.entity.Entity;
+import org.marble.special.PointOrb;
+
+public class StressLevelGeneratorTest {
+    @Test
+    public void generate() throws LevelLoadException {
+        final StressLevelGenerator generator = new StressLevelGenerator(1);
+        generator.setSlabCount(30);
+        generator.setRailCount(20);
+        generator.setOrbCount(10);
+        generator.setChainLength(4);
+
+        final ImmutableSet<Entity> entities =
+                new LevelLoader().runStatements(generator.generate());
+        assertEquals(61, entities.size());
+        int slabs = 0, rails = 0, orbs = 0;
+        for (final Entity entity : entities) {
+            if (entity instanceof Slab) {
+                slabs++;
+            } else if (entity instanceof Rail) {
+                rails++;
+            } else if (entity instanceof PointOrb) {
+                orbs++;
+            }
+        }
+        assertEquals(31, slabs);
+        assertEquals(20, rails);
+        assertEquals(10, orbs);
+    }
+
+    @Test
+    public void generateSource() {
+        final StressLevelGenerator generator =
+                StressLevelGenerator.withEntityCount(200, 2);
+        final ImmutableList<LevelStatement> parsed =
+                new LevelParser().getParser().parse(generator.generateSource());
+        assertEquals(generator.generate(), parsed);
+    }
+}
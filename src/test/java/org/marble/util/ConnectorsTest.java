@@ -0,0 +1,165 @@
+package org.marble.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Map;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Matrix4f;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.Test;
+
+import org.marble.entity.connected.Connector;
+
+public class ConnectorsTest {
+    // The box sizes to compare: width, height, depth, slope X and slope Y
+    private static final float[][] BOXES = { { 5, 5, 1, 0, 0 },
+            { 5, 3, 1, 0, 0 }, { 1, 1, 1, 0, 0 }, { 3.5f, 2.25f, 1.5f, 0, 0 },
+            { 8, 3, 2, 0.1f, -0.25f }, { 0.5f, 4, 3, -0.3f, 0.2f } };
+
+    @Test
+    public void boxIteration() {
+        for (final float[] box : BOXES) {
+            final ImmutableMap<String, Connector> expected = eagerBox(box);
+            final Map<String, Connector> actual = fromBox(box);
+
+            assertEquals(expected.size(), actual.size());
+            assertEquals(expected.keySet(), actual.keySet());
+            for (final Map.Entry<String, Connector> entry : actual.entrySet()) {
+                assertSameConnector(entry.getKey(),
+                        expected.get(entry.getKey()), entry.getValue());
+            }
+        }
+    }
+
+    @Test
+    public void boxLookup() {
+        for (final float[] box : BOXES) {
+            final ImmutableMap<String, Connector> expected = eagerBox(box);
+            // Look connectors up before the map is ever iterated over
+            final Map<String, Connector> actual = fromBox(box);
+            for (final Map.Entry<String, Connector> entry : expected
+                    .entrySet()) {
+                final Connector connector = actual.get(entry.getKey());
+                assertNotNull(entry.getKey(), connector);
+                assertSameConnector(entry.getKey(), entry.getValue(),
+                        connector);
+            }
+        }
+    }
+
+    @Test
+    public void invalidBoxNames() {
+        final Map<String, Connector> connectors =
+                Connectors.fromBox(5, 3, 2, 0, 0);
+        for (final String name : ImmutableList.of("north_03_0", "north_+1_0",
+                "north_-1_0", "north_5_0", "north_0_2", "east_3_0",
+                "top_0_3", "top_middle_x", "top_middle_", "top_0",
+                "top_0_0_0", "top_", "top", "middle", "up_middle", "_middle",
+                "", "TOP_middle", "top_ 0_0")) {
+            assertNull(name, connectors.get(name));
+            assertFalse(name, connectors.containsKey(name));
+        }
+        assertNull(connectors.get(3));
+        assertNotNull(connectors.get("north_4_1"));
+        assertNotNull(connectors.get("east_2_1"));
+    }
+
+    /**
+     * Asserts that two connectors describe the same transform.
+     */
+    public static void assertSameConnector(final String name,
+            final Connector expected, final Connector actual) {
+        final Matrix4f expectedMatrix = new Matrix4f();
+        final Matrix4f actualMatrix = new Matrix4f();
+        final Connector identity = new Connector(Matrix4f.IDENTITY);
+        expected.transformInto(identity, expectedMatrix);
+        actual.transformInto(identity, actualMatrix);
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+                assertEquals(name, expectedMatrix.get(i, j),
+                        actualMatrix.get(i, j), 1e-6f);
+            }
+        }
+    }
+
+    /**
+     * Creates every connector of a box up front, the way it was done before
+     * box connectors were resolved from their names.
+     * 
+     * @param box
+     *            The width, height, depth, slope X and slope Y of the box.
+     */
+    public static ImmutableMap<String, Connector> eagerBox(final float[] box) {
+        final float width = box[0], height = box[1], depth = box[2];
+        final float slopeX = box[3], slopeY = box[4];
+        final float verticalOffset = 0.5f;
+        final int xcount = (int) width, ycount = (int) height, zcount =
+                (int) depth;
+        final float xborder = (width - xcount + 1) / 2, yborder =
+                (height - ycount + 1) / 2, zborder = (depth - zcount + 1) / 2;
+        final float xhalf = width / 2, yhalf = height / 2, zhalf = depth / 2;
+        final float pi = FastMath.PI;
+        final float pihalf = FastMath.HALF_PI;
+        final ImmutableMap.Builder<String, Connector> builder =
+                ImmutableMap.builder();
+
+        builder.put("top_middle",
+                Connectors.offsetBy(0, 0, zhalf, 0, pihalf, 0));
+        builder.put("bottom_middle",
+                Connectors.offsetBy(0, 0, -zhalf, 0, -pihalf, 0));
+        builder.put("north_middle", Connectors.offsetBy(0, yhalf,
+                verticalOffset + yhalf * slopeY, 0, 0, pihalf));
+        builder.put("south_middle", Connectors.offsetBy(0, -yhalf,
+                verticalOffset - yhalf * slopeY, 0, 0, -pihalf));
+        for (int x = 0; x < xcount; x++) {
+            final float xcoord = xborder + x - xhalf;
+            for (int y = 0; y < ycount; y++) {
+                final float ycoord = yborder + y - yhalf;
+                builder.put("top_" + x + "_" + y, Connectors.offsetBy(xcoord,
+                        ycoord, zhalf + xcoord * slopeX + ycoord * slopeY, 0,
+                        pihalf, 0));
+                builder.put("bottom_" + x + "_" + y, Connectors.offsetBy(
+                        xcoord, ycoord, -zhalf + xcoord * slopeX + ycoord
+                                * slopeY, 0, -pihalf, 0));
+            }
+            for (int z = 0; z < zcount; z++) {
+                final float zcoord = zborder + z - zhalf;
+                builder.put("north_" + x + "_" + z, Connectors.offsetBy(
+                        xcoord, yhalf, zcoord + verticalOffset + xcoord
+                                * slopeX + yhalf * slopeY, 0, 0, pihalf));
+                builder.put("south_" + x + "_" + z, Connectors.offsetBy(
+                        xcoord, -yhalf, zcoord + verticalOffset + xcoord
+                                * slopeX - yhalf * slopeY, 0, 0, -pihalf));
+            }
+        }
+
+        builder.put("east_middle", Connectors.offsetBy(xhalf, 0,
+                verticalOffset + xhalf * slopeX, 0, 0, 0));
+        builder.put("west_middle", Connectors.offsetBy(-xhalf, 0,
+                verticalOffset - xhalf * slopeX, 0, 0, pi));
+        for (int y = 0; y < ycount; y++) {
+            final float ycoord = yborder + y - yhalf;
+            for (int z = 0; z < zcount; z++) {
+                final float zcoord = zborder + z - zhalf;
+                builder.put("east_" + y + "_" + z, Connectors.offsetBy(xhalf,
+                        ycoord, zcoord + verticalOffset + ycoord * slopeY
+                                + xhalf * slopeX, 0, 0, 0));
+                builder.put("west_" + y + "_" + z, Connectors.offsetBy(
+                        -xhalf, ycoord, zcoord + verticalOffset + ycoord
+                                * slopeY - xhalf * slopeX, 0, 0, pi));
+            }
+        }
+        return builder.build();
+    }
+
+    private static Map<String, Connector> fromBox(final float[] box) {
+        return Connectors.fromBox(box[0], box[1], box[2], box[3], box[4]);
+    }
+}